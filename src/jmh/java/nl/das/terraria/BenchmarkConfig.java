@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Generates the settings of the benchmarks.
+ *
+ * The small configuration is the standard one: 11 devices, 25 timers, 2 rulesets with 2 rules.
+ * Larger configurations add devices "dev0011", "dev0012", ... with 3 timers each,
+ * and 2 rulesets with one rule per 10 devices, each rule switching 4 of the extra devices.
+ * All timers are spread over the day, so every minute has some timer events.
+ */
+public class BenchmarkConfig {
+
+	private static final String[] STANDARD_DEVICES = {"light1", "light2", "light3", "light4", "uvlight", "light6", "pump", "sprayer", "mist", "fan_in", "fan_out"};
+	private static final int[] STANDARD_TIMERS     = {1,         1,        1,        1,        1,         1,        3,      5,         3,      3,        3       };
+
+	public static String[] deviceList(int nrOfDevices) {
+		String[] devs = new String[Math.max(nrOfDevices, STANDARD_DEVICES.length)];
+		for (int i = 0; i < devs.length; i++) {
+			devs[i] = i < STANDARD_DEVICES.length ? STANDARD_DEVICES[i] : String.format("dev%04d", i);
+		}
+		return devs;
+	}
+
+	/**
+	 * @return the settings json for the given number of devices
+	 */
+	public static String settings(int nrOfDevices) {
+		String[] devs = deviceList(nrOfDevices);
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"deviceList\":[");
+		for (int i = 0; i < devs.length; i++) {
+			sb.append(i == 0 ? "" : ",").append('"').append(devs[i]).append('"');
+		}
+		sb.append("],\"timersPerDevice\":[");
+		for (int i = 0; i < devs.length; i++) {
+			sb.append(i == 0 ? "" : ",").append(timersPerDevice(i));
+		}
+		sb.append("],\"rulesets\":[");
+		sb.append(ruleset(devs, true, 26)).append(',').append(ruleset(devs, false, 27));
+		sb.append("],\"sprayerRule\":").append(sprayerRule());
+		sb.append(",\"timers\":[");
+		boolean first = true;
+		for (int i = 0; i < devs.length; i++) {
+			for (int j = 0; j < timersPerDevice(i); j++) {
+				sb.append(first ? "" : ",").append(timer(devs[i], i, j + 1));
+				first = false;
+			}
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	public static String timer(String device, int dev, int index) {
+		int on = ((dev * 7) + (index * 97)) % 1440;
+		if (device.equals("sprayer")) {
+			return String.format("{\"device\":\"%s\",\"index\":%d,\"hour_on\":%d,\"minute_on\":%d,\"hour_off\":0,\"minute_off\":0,\"period\":30,\"repeat\":1}",
+					device, index, on / 60, on % 60);
+		}
+		int off = (on + 30) % 1440;
+		return String.format("{\"device\":\"%s\",\"index\":%d,\"hour_on\":%d,\"minute_on\":%d,\"hour_off\":%d,\"minute_off\":%d,\"period\":0,\"repeat\":1}",
+				device, index, on / 60, on % 60, off / 60, off % 60);
+	}
+
+	public static String ruleset(String[] devs, boolean active, int ideal) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("{\"terrarium\":1,\"active\":\"%s\",\"from\":\"00:00\",\"to\":\"23:59\",\"temp_ideal\":%d,\"rules\":[", active ? "yes" : "no", ideal));
+		sb.append(rule(-(ideal - 1), "fan_in", "no device", "no device", "no device")).append(',');
+		sb.append(rule(ideal + 2, "fan_out", "no device", "no device", "no device"));
+		int extra = STANDARD_DEVICES.length;
+		for (int r = 0; r < ((devs.length - STANDARD_DEVICES.length) / 10); r++) {
+			String[] acts = new String[4];
+			for (int a = 0; a < 4; a++) {
+				acts[a] = devs[extra + (((r * 4) + a) % (devs.length - extra))];
+			}
+			sb.append(',').append(rule((r % 2) == 0 ? -(ideal - 1) : ideal + 2, acts));
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	private static String rule(int value, String... devices) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"value\":").append(value).append(",\"actions\":[");
+		for (int a = 0; a < devices.length; a++) {
+			sb.append(a == 0 ? "" : ",").append("{\"device\":\"").append(devices[a]).append("\",\"on_period\":").append(devices[a].equals("no device") ? 0 : -2).append('}');
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	public static String sprayerRule() {
+		return "{\"delay\":15,\"actions\":[{\"device\":\"fan_in\",\"on_period\":900},{\"device\":\"fan_out\",\"on_period\":900},"
+				+ "{\"device\":\"no device\",\"on_period\":0},{\"device\":\"no device\",\"on_period\":0}]}";
+	}
+
+	private static int timersPerDevice(int dev) {
+		return dev < STANDARD_TIMERS.length ? STANDARD_TIMERS[dev] : 3;
+	}
+
+	/**
+	 * Create an initialized terrarium with mock devices, fixed sensor values and its files in the given folder.
+	 */
+	public static Terrarium terrarium(int nrOfDevices, Path folder) throws IOException {
+		Terrarium t = Terrarium.fromJson(settings(nrOfDevices));
+		Files.createDirectories(folder.resolve("tracefiles"));
+		t.setSettingsFile(folder.resolve("settings.json").toString());
+		t.setLifecycleFile(folder.resolve("lifecycle.txt").toString());
+		t.setTraceFolder(folder.resolve("tracefiles").toString());
+		t.setNow(LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		t.initMockDevices();
+		t.initDeviceState();
+		t.initSensors();
+		t.setSensors(21, 26);
+		t.initTimers(t.getNow());
+		t.initRules();
+		return t;
+	}
+}
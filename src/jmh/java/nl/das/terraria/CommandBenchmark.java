@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.BTServer;
+
+/**
+ * BTServer.handleCommand for every command, from the json request to the json response.
+ *
+ * The settings, lifecycle and trace files are written to a temporary folder.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommandBenchmark {
+
+	@Param({"11", "500"})
+	public int nrOfDevices;
+
+	@Param({"getSensors", "setSensors", "setTestOff", "getState", "setDeviceOn", "setDeviceOff", "setDeviceOnFor",
+			"setDeviceManualOn", "setDeviceManualOff", "setLifecycleCounter", "getProperties", "setTraceOn", "setTraceOff",
+			"getTimersForDevice", "replaceTimers", "getRuleset", "saveRuleset", "getSprayerRule", "setSprayerRule",
+			"getTempTracefiles", "getStateTracefiles", "getTemperatureFile", "getStateFile"})
+	public String command;
+
+	private String request;
+	private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	@Setup
+	public void setup() throws IOException {
+		Path folder = Files.createTempDirectory("tcu-bench");
+		Terrarium terrarium = BenchmarkConfig.terrarium(this.nrOfDevices, folder);
+		Terrarium.register(Terrarium.DEFAULT_ENCLOSURE, terrarium);
+		// A day of trace lines to download
+		StringBuilder sb = new StringBuilder();
+		for (int m = 0; m < 1440; m++) {
+			sb.append(String.format("2021-08-02 %02d:%02d:00 r=21 t=26%n", m / 60, m % 60));
+		}
+		Files.writeString(folder.resolve("tracefiles/temp_20210802"), sb.toString());
+		Files.writeString(folder.resolve("tracefiles/state_20210802"), sb.toString());
+		Jsonb jsonb = JsonbBuilder.create();
+		String data;
+		switch (this.command) {
+		case "setSensors":
+			data = "{\"roomtemp\":21,\"terrtemp\":26}";
+			break;
+		case "setDeviceOn":
+		case "setDeviceOff":
+		case "setDeviceManualOn":
+		case "setDeviceManualOff":
+		case "getTimersForDevice":
+			data = "{\"device\":\"pump\"}";
+			break;
+		case "setDeviceOnFor":
+			data = "{\"device\":\"pump\",\"period\":60}";
+			break;
+		case "setLifecycleCounter":
+			data = "{\"device\":\"uvlight\",\"hours\":4000}";
+			break;
+		case "replaceTimers":
+			data = "{\"timers\":" + jsonb.toJson(terrarium.getTimersForDevice("pump")) + "}";
+			break;
+		case "getRuleset":
+			data = "{\"rulesetnr\":1}";
+			break;
+		case "saveRuleset":
+			data = "{\"rulesetnr\":1,\"ruleset\":" + jsonb.toJson(terrarium.getRuleset(1)) + "}";
+			break;
+		case "setSprayerRule":
+			data = BenchmarkConfig.sprayerRule();
+			break;
+		case "getTemperatureFile":
+			data = "{\"fname\":\"temp_20210802\"}";
+			break;
+		case "getStateFile":
+			data = "{\"fname\":\"state_20210802\"}";
+			break;
+		default:
+			data = null;
+		}
+		this.request = "{\"cmd\":\"" + this.command + "\"" + (data == null ? "" : ",\"data\":" + data) + "}";
+	}
+
+	@Benchmark
+	public ByteArrayOutputStream handleCommand() throws IOException {
+		this.out.reset();
+		BTServer.handleCommand(this.request, this.out);
+		return this.out;
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.BTServer;
+
+/**
+ * Several clients sending commands at the same time while the control loop runs.
+ *
+ * The "clients" group has 4 threads that each act as a session, sending getState and setDeviceOn/Off;
+ * the "control" thread runs the second and minute ticks of the terrarium.
+ * The sample time mode gives the latency distribution of both: the command latency
+ * and how much the control tick is held up by the commands.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class ConcurrentCommandBenchmark {
+
+	@Param({"11", "500"})
+	public int nrOfDevices;
+
+	private TerrariumController controller;
+	private LocalDateTime now;
+
+	@State(Scope.Thread)
+	public static class Session {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int n;
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		Path folder = Files.createTempDirectory("tcu-bench");
+		Terrarium terrarium = BenchmarkConfig.terrarium(this.nrOfDevices, folder);
+		Terrarium.register(Terrarium.DEFAULT_ENCLOSURE, terrarium);
+		this.controller = new TerrariumController();
+		this.controller.add(terrarium);
+		this.now = terrarium.getNow();
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(4)
+	public ByteArrayOutputStream clients(Session session) throws IOException {
+		session.out.reset();
+		int i = session.n++ % 3;
+		String cmd = i == 0 ? "getState" : i == 1 ? "setDeviceOn" : "setDeviceOff";
+		BTServer.handleCommand("{\"cmd\":\"" + cmd + "\",\"data\":{\"device\":\"pump\"}}", session.out);
+		return session.out;
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public void control() {
+		this.now = this.now.plusSeconds(1);
+		this.controller.second(this.now);
+		if (this.now.getSecond() == 0) {
+			this.controller.minute(this.now);
+		}
+	}
+}
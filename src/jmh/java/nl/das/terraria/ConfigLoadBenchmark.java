@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.objects.TerrariumConfig;
+
+/**
+ * Loading the settings: the JSON-B parse of TerrariumConfig with a shared Jsonb,
+ * and Terrarium.fromJson, which also creates the Jsonb and compiles timers and rules.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigLoadBenchmark {
+
+	@Param({"11", "500"})
+	public int nrOfDevices;
+
+	private String json;
+	private Jsonb jsonb;
+
+	@Setup
+	public void setup() {
+		this.json = BenchmarkConfig.settings(this.nrOfDevices);
+		this.jsonb = JsonbBuilder.create();
+	}
+
+	@Benchmark
+	public TerrariumConfig parseConfig() {
+		return this.jsonb.fromJson(this.json, TerrariumConfig.class);
+	}
+
+	@Benchmark
+	public Terrarium terrariumFromJson() {
+		return Terrarium.fromJson(this.json);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * The work of the control loop: the per second and per minute checks and the state queries.
+ *
+ * The minute benchmarks walk through the day one minute per invocation, so the timer events
+ * and rule windows of the whole day are part of the measurement.
+ * The temperature alternates between too low and too high, so rules switch devices on and off.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ControlTickBenchmark {
+
+	@Param({"11", "500"})
+	public int nrOfDevices;
+
+	private Terrarium terrarium;
+	private LocalDateTime start;
+	private int minute;
+	private int second;
+
+	@Setup
+	public void setup() throws IOException {
+		Path folder = Files.createTempDirectory("tcu-bench");
+		this.terrarium = BenchmarkConfig.terrarium(this.nrOfDevices, folder);
+		this.start = this.terrarium.getNow();
+	}
+
+	private void nextMinute() {
+		this.minute = (this.minute + 1) % 1440;
+		this.terrarium.setNow(this.start.plusMinutes(this.minute));
+		this.terrarium.setSensors(21, ((this.minute / 10) % 2) == 0 ? 22 : 30);
+	}
+
+	@Benchmark
+	public Terrarium checkTimers() {
+		nextMinute();
+		this.terrarium.checkTimers();
+		return this.terrarium;
+	}
+
+	@Benchmark
+	public Terrarium checkRules() {
+		nextMinute();
+		this.terrarium.checkRules();
+		return this.terrarium;
+	}
+
+	@Benchmark
+	public Terrarium checkDevices() {
+		this.second = (this.second + 1) % 86400;
+		this.terrarium.setNow(this.start.plusSeconds(this.second));
+		if ((this.second % 60) == 0) {
+			// Every minute all devices get an on period that ends somewhere in the coming minute
+			long now = Util.now(this.terrarium.getNow());
+			for (int i = 0; i < this.nrOfDevices; i++) {
+				this.terrarium.setDeviceOn(i, now + 1 + (i % 59));
+			}
+		}
+		this.terrarium.checkDevices();
+		return this.terrarium;
+	}
+
+	@Benchmark
+	public String getState() {
+		return this.terrarium.getState();
+	}
+
+	@Benchmark
+	public String getProperties() {
+		return this.terrarium.getProperties();
+	}
+}
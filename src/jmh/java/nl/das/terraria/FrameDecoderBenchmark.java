@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import nl.das.terraria.rest.FrameDecoder;
+
+/**
+ * Splitting a session's input into commands: the old byte-at-a-time loop against the FrameDecoder.
+ *
+ * The input is 20 large setSprayerRule or replaceTimers commands (the timers of all devices),
+ * read through a DataInputStream like the Bluetooth session does.
+ * "legacy" is the loop BTServer.serve had: read() per byte, append as char to a StringBuffer.
+ * "decoder" decodes every frame to a String; "decoderInPlace" only looks at the frames,
+ * which is what handing the bytes to the json parser costs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrameDecoderBenchmark {
+
+	private static final int NR_OF_FRAMES = 20;
+
+	@Param({"11", "500"})
+	public int nrOfDevices;
+
+	@Param({"setSprayerRule", "replaceTimers"})
+	public String command;
+
+	private byte[] input;
+	private final FrameDecoder decoder = new FrameDecoder();
+
+	@Setup
+	public void setup() {
+		String data;
+		if (this.command.equals("setSprayerRule")) {
+			data = BenchmarkConfig.sprayerRule();
+		} else {
+			String settings = BenchmarkConfig.settings(this.nrOfDevices);
+			data = "{\"timers\":" + settings.substring(settings.indexOf("\"timers\":") + 9, settings.length() - 1) + "}";
+		}
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < NR_OF_FRAMES; i++) {
+			sb.append("{\"cmd\":\"").append(this.command).append("\",\"data\":").append(data).append("}\u0003");
+		}
+		this.input = sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public void legacy(Blackhole bh) throws IOException {
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(this.input));
+		int chr;
+		StringBuffer sb = new StringBuffer();
+		while ((chr = in.read()) != -1) {
+			if (chr == 0x03) {
+				bh.consume(sb.toString());
+				sb = new StringBuffer();
+			} else {
+				sb.append((char)chr);
+			}
+		}
+	}
+
+	@Benchmark
+	public void decoder(Blackhole bh) throws IOException {
+		this.decoder.read(new DataInputStream(new ByteArrayInputStream(this.input)), new FrameDecoder.Handler() {
+			@Override
+			public void frame(byte[] buf, int off, int len) {
+				bh.consume(new String(buf, off, len, StandardCharsets.UTF_8));
+			}
+
+			@Override
+			public void oversized(int maxFrameSize) {
+			}
+		});
+	}
+
+	@Benchmark
+	public void decoderInPlace(Blackhole bh) throws IOException {
+		this.decoder.read(new DataInputStream(new ByteArrayInputStream(this.input)), new FrameDecoder.Handler() {
+			@Override
+			public void frame(byte[] buf, int off, int len) {
+				bh.consume(buf[off + len - 1]);
+			}
+
+			@Override
+			public void oversized(int maxFrameSize) {
+			}
+		});
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing trace lines: a single state line, and the state lines of all devices as written when tracing starts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TraceBenchmark {
+
+	@Param({"11", "500"})
+	public int nrOfDevices;
+
+	private String[] devices;
+	private String tracefile;
+	private LocalDateTime now = LocalDateTime.of(2021, 8, 2, 12, 0, 0);
+
+	@Setup
+	public void setup() throws IOException {
+		this.devices = BenchmarkConfig.deviceList(this.nrOfDevices);
+		Path folder = Files.createTempDirectory("tcu-bench");
+		this.tracefile = folder.resolve("state_20210802").toString();
+	}
+
+	/**
+	 * Start every iteration with an empty file, so the file size does not grow without bounds.
+	 */
+	@Setup(Level.Iteration)
+	public void truncate() throws IOException {
+		Files.writeString(Path.of(this.tracefile), "");
+	}
+
+	@Benchmark
+	public void traceStateLine() {
+		Util.traceState(this.tracefile, this.now, "%s 1 %s", "pump", "12:00:30");
+	}
+
+	@Benchmark
+	public void traceAllDevices() {
+		for (String dev : this.devices) {
+			Util.traceState(this.tracefile, this.now, "%s %s", dev, "0");
+		}
+	}
+}
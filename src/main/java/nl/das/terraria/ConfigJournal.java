@@ -0,0 +1,257 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * The changes of the settings of an enclosure since its settings file (the snapshot) has been written.
+ *
+ * A change is appended as one record to settings file + ".journal" and forced to disk, instead of
+ * writing all settings again. A record is one line: the CRC32 (8 hex digits) of the rest of the line,
+ * the operation and its json, e.g. "1c291ca3 sprayerRule {...}". The json of an operation replaces
+ * the part of the settings it names, so applying a record twice does no harm.
+ * When the journal has grown to the compaction size it is compacted: it is renamed to
+ * settings file + ".journal." + n and the settings are written as a new snapshot in the background
+ * (see SettingsStore); after that the renamed journals are removed.
+ * On startup the snapshot is read and the renamed journals and the journal are replayed over it.
+ * A record that has not been written completely (power cut) ends the replay of its journal, and is
+ * cut off the journal.
+ */
+public class ConfigJournal {
+
+	public static final int DEFAULT_COMPACT_SIZE = 64 * 1024;
+
+	private static volatile int compactSize = DEFAULT_COMPACT_SIZE;
+
+	private static final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "config-compaction");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final String settingsFile;
+	private final Path journal;
+	private FileChannel channel;
+	// The size of the journal, -1 until it is known
+	private long size = -1L;
+	private int generation = 0;
+	// The renamed journals that have not been removed yet, in order
+	private final List<Path> rotated = new ArrayList<>();
+	private Future<?> compaction = CompletableFuture.completedFuture(null);
+
+	public ConfigJournal(String settingsFile) {
+		this.settingsFile = settingsFile;
+		this.journal = Paths.get(settingsFile + ".journal");
+	}
+
+	/**
+	 * Set the size of the journal (bytes) at which it is compacted, for all enclosures.
+	 */
+	public static void setCompactSize(int bytes) {
+		compactSize = bytes;
+	}
+
+	public static int getCompactSize() {
+		return compactSize;
+	}
+
+	/**
+	 * @return the number of bytes in the journal, not counting the renamed journals that are being compacted
+	 */
+	public synchronized long size() throws IOException {
+		if (this.size < 0) {
+			this.size = Files.exists(this.journal) ? Files.size(this.journal) : 0L;
+		}
+		return this.size;
+	}
+
+	/**
+	 * @return true if there are changes that are not in the snapshot yet
+	 */
+	public synchronized boolean hasChanges() throws IOException {
+		return (size() > 0) || !this.rotated.isEmpty();
+	}
+
+	/**
+	 * Append the records ({operation, json} each) as a whole and force them to disk.
+	 * When the journal has become too large, it is compacted with the snapshot.
+	 */
+	public synchronized void append(List<String[]> records, Supplier<String> snapshot) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		CRC32 crc = new CRC32();
+		for (String[] r : records) {
+			byte[] b = (r[0] + " " + r[1]).getBytes(StandardCharsets.UTF_8);
+			crc.reset();
+			crc.update(b);
+			sb.append(String.format("%08x ", crc.getValue())).append(r[0]).append(' ').append(r[1]).append('\n');
+		}
+		ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+		long len = buf.remaining();
+		if (this.channel == null) {
+			size();
+			this.channel = FileChannel.open(this.journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		}
+		while (buf.hasRemaining()) {
+			this.channel.write(buf);
+		}
+		this.channel.force(false);
+		this.size += len;
+		if (this.size >= compactSize) {
+			compact(snapshot.get());
+		}
+	}
+
+	/**
+	 * Start a new journal and write the snapshot, which has all changes up to now, in the background.
+	 */
+	public synchronized void compact(String snapshot) throws IOException {
+		close();
+		if (Files.exists(this.journal)) {
+			Path old = Paths.get(this.journal + "." + (++this.generation));
+			Files.move(this.journal, old, StandardCopyOption.ATOMIC_MOVE);
+			this.rotated.add(old);
+		}
+		this.size = 0L;
+		List<Path> done = new ArrayList<>(this.rotated);
+		this.compaction = compactor.submit(() -> {
+			try {
+				SettingsStore.write(this.settingsFile, snapshot);
+				for (Path p : done) {
+					Files.deleteIfExists(p);
+				}
+				synchronized (this) {
+					this.rotated.removeAll(done);
+				}
+			} catch (IOException e) {
+				// The journals are kept, so the changes are replayed on startup
+				System.err.println(Util.getDateTimeString() + "Could not write " + this.settingsFile + ": " + e.getMessage());
+			}
+		});
+	}
+
+	/**
+	 * Wait until the compactions that have been started are done.
+	 */
+	public void awaitCompaction() {
+		Future<?> f;
+		synchronized (this) {
+			f = this.compaction;
+		}
+		try {
+			f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Hand the records of the renamed journals and then of the journal to apply (operation, json), in order.
+	 * The journal is cut off after its last complete record.
+	 */
+	public synchronized void replay(BiConsumer<String, String> apply) throws IOException {
+		close();
+		TreeMap<Integer, Path> old = new TreeMap<>();
+		Path dir = this.journal.toAbsolutePath().getParent();
+		String prefix = this.journal.getFileName() + ".";
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, prefix + "*")) {
+			for (Path p : ds) {
+				try {
+					old.put(Integer.parseInt(p.getFileName().toString().substring(prefix.length())), p);
+				} catch (NumberFormatException e) {
+					// Not a renamed journal
+				}
+			}
+		}
+		this.rotated.clear();
+		for (int gen : old.keySet()) {
+			replay(old.get(gen), apply);
+			this.rotated.add(old.get(gen));
+			this.generation = gen;
+		}
+		this.size = replay(this.journal, apply);
+		if (Files.exists(this.journal) && (this.size < Files.size(this.journal))) {
+			try (FileChannel ch = FileChannel.open(this.journal, StandardOpenOption.WRITE)) {
+				ch.truncate(this.size);
+				ch.force(true);
+			}
+		}
+	}
+
+	/**
+	 * @return the length of the complete records at the start of the file
+	 */
+	private static long replay(Path file, BiConsumer<String, String> apply) throws IOException {
+		byte[] b;
+		try {
+			b = Files.readAllBytes(file);
+		} catch (NoSuchFileException e) {
+			return 0L;
+		}
+		CRC32 crc = new CRC32();
+		int start = 0;
+		while (start < b.length) {
+			int end = start;
+			while ((end < b.length) && (b[end] != '\n')) {
+				end++;
+			}
+			// A record is at least "crc op json"
+			if ((end == b.length) || ((end - start) < 12) || (b[start + 8] != ' ')) {
+				break;
+			}
+			crc.reset();
+			crc.update(b, start + 9, end - start - 9);
+			String line = new String(b, start + 9, end - start - 9, StandardCharsets.UTF_8);
+			int sp = line.indexOf(' ');
+			if ((sp < 0) || !String.format("%08x", crc.getValue()).equals(new String(b, start, 8, StandardCharsets.US_ASCII))) {
+				break;
+			}
+			apply.accept(line.substring(0, sp), line.substring(sp + 1));
+			start = end + 1;
+		}
+		if (start < b.length) {
+			System.err.println(Util.getDateTimeString() + "Incomplete record at " + start + " of " + file + " ignored");
+		}
+		return start;
+	}
+
+	public synchronized void close() {
+		if (this.channel != null) {
+			try {
+				this.channel.close();
+			} catch (IOException e) {
+			}
+			this.channel = null;
+		}
+	}
+}
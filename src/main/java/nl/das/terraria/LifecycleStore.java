@@ -0,0 +1,288 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The lifecycle counters of the devices of an enclosure in a small memory-mapped file.
+ *
+ * The file has a header (magic "TCLC", version, number of slots) and one fixed slot of SLOT_SIZE bytes
+ * per device: the device name (UTF-8, padded with zeros) and two copies of (sequence number, value, CRC32).
+ * A counter is changed in place by writing the copy with the lowest sequence number, so when the
+ * power fails during that write the other copy still has the previous value.
+ * A copy is valid when its CRC32 of name, sequence number and value is right; the valid copy with
+ * the highest sequence number is the value.
+ * A file in the old text format (device=value per line) is converted when it is opened.
+ */
+public class LifecycleStore implements Closeable {
+
+	static final int MAGIC = 0x54434c43; // "TCLC"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int NAME_SIZE = 16;
+	static final int COPY_SIZE = 16;
+	static final int SLOT_SIZE = NAME_SIZE + (2 * COPY_SIZE);
+
+	private final Path file;
+	private final FileChannel channel;
+	private final MappedByteBuffer map;
+	// Device name -> slot number
+	private final Map<String, Integer> slots = new HashMap<>();
+	private final int[] values;
+	private final int[] sequence;
+	private final CRC32 crc = new CRC32();
+
+	private LifecycleStore(Path file, FileChannel channel, MappedByteBuffer map, String[] devices) {
+		this.file = file;
+		this.channel = channel;
+		this.map = map;
+		this.values = new int[devices.length];
+		this.sequence = new int[devices.length];
+		for (int i = 0; i < devices.length; i++) {
+			this.slots.put(devices[i], i);
+		}
+	}
+
+	/**
+	 * Open the counter file of the devices, which map to the counter to use when the file does not have one.
+	 * The file is created (or rebuilt, keeping the counters in it) when it does not exist, is in the text
+	 * format or has other devices.
+	 */
+	public static LifecycleStore open(String file, Map<String, Integer> counters) throws IOException {
+		Path path = Paths.get(file);
+		String[] devices = counters.keySet().toArray(new String[0]);
+		for (String device : devices) {
+			if (device.getBytes(StandardCharsets.UTF_8).length > NAME_SIZE) {
+				throw new IllegalArgumentException("Device name '" + device + "' is longer than " + NAME_SIZE + " bytes.");
+			}
+		}
+		Map<String, Integer> known = new HashMap<>(counters);
+		if (Files.exists(path)) {
+			byte[] head = new byte[4];
+			try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+				ch.read(ByteBuffer.wrap(head));
+			}
+			if (ByteBuffer.wrap(head).getInt() == MAGIC) {
+				LifecycleStore store = map(path, devices, counters);
+				if (store != null) {
+					return store;
+				}
+				known.putAll(read(path));
+			} else {
+				known.putAll(readText(path));
+			}
+		}
+		create(path, devices, known);
+		return map(path, devices, known);
+	}
+
+	/**
+	 * @return the counters of all devices in the file, by name, without the damaged ones
+	 */
+	public static Map<String, Integer> read(String file) throws IOException {
+		return read(Paths.get(file));
+	}
+
+	/**
+	 * @return the counter of the device, or 0 if it has no slot
+	 */
+	public synchronized int get(String device) {
+		Integer slot = this.slots.get(device);
+		return slot == null ? 0 : this.values[slot];
+	}
+
+	/**
+	 * Change the counter of the device in place, if it has changed.
+	 */
+	public synchronized void set(String device, int value) {
+		Integer slot = this.slots.get(device);
+		if ((slot == null) || (this.values[slot] == value)) {
+			return;
+		}
+		int seq = this.sequence[slot] + 1;
+		// Overwrite the copy that does not have the current value
+		int pos = HEADER_SIZE + (slot * SLOT_SIZE) + NAME_SIZE + ((seq % 2) * COPY_SIZE);
+		this.map.putInt(pos, seq);
+		this.map.putInt(pos + 4, value);
+		this.map.putInt(pos + 8, checksum(slot, seq, value));
+		this.map.force();
+		this.sequence[slot] = seq;
+		this.values[slot] = value;
+	}
+
+	@Override
+	public synchronized void close() {
+		try {
+			this.channel.close();
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * @return the store, or null if the file does not have exactly these devices
+	 */
+	private static LifecycleStore map(Path path, String[] devices, Map<String, Integer> counters) throws IOException {
+		FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long size = ch.size();
+			if ((size != (HEADER_SIZE + ((long) devices.length * SLOT_SIZE)))) {
+				ch.close();
+				return null;
+			}
+			MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			if ((map.getInt(0) != MAGIC) || (map.getInt(4) != VERSION) || (map.getInt(8) != devices.length)) {
+				ch.close();
+				return null;
+			}
+			LifecycleStore store = new LifecycleStore(path, ch, map, devices);
+			for (int i = 0; i < devices.length; i++) {
+				if (!devices[i].equals(name(map, i))) {
+					ch.close();
+					return null;
+				}
+				store.load(i, counters.get(devices[i]));
+			}
+			return store;
+		} catch (IOException | RuntimeException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+	private void load(int slot, int dflt) {
+		int base = HEADER_SIZE + (slot * SLOT_SIZE) + NAME_SIZE;
+		this.sequence[slot] = -1;
+		for (int c = 0; c < 2; c++) {
+			int pos = base + (c * COPY_SIZE);
+			int seq = this.map.getInt(pos);
+			int value = this.map.getInt(pos + 4);
+			if ((this.map.getInt(pos + 8) == checksum(slot, seq, value)) && (seq > this.sequence[slot])) {
+				this.sequence[slot] = seq;
+				this.values[slot] = value;
+			}
+		}
+		if (this.sequence[slot] < 0) {
+			System.err.println(Util.getDateTimeString() + "Lifecycle counter " + (slot + 1) + " of " + this.file + " is damaged, set to " + dflt);
+			this.sequence[slot] = 0;
+			this.values[slot] = dflt;
+		}
+	}
+
+	private int checksum(int slot, int seq, int value) {
+		this.crc.reset();
+		this.crc.update(this.map.duplicate().position(HEADER_SIZE + (slot * SLOT_SIZE)).limit(HEADER_SIZE + (slot * SLOT_SIZE) + NAME_SIZE));
+		this.crc.update(ByteBuffer.allocate(8).putInt(seq).putInt(value).flip());
+		return (int) this.crc.getValue();
+	}
+
+	private static String name(ByteBuffer map, int slot) {
+		byte[] b = new byte[NAME_SIZE];
+		map.duplicate().position(HEADER_SIZE + (slot * SLOT_SIZE)).get(b);
+		int len = 0;
+		while ((len < NAME_SIZE) && (b[len] != 0)) {
+			len++;
+		}
+		return new String(b, 0, len, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write a new file next to it and rename it, so there is always a complete file.
+	 */
+	private static void create(Path path, String[] devices, Map<String, Integer> values) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + (devices.length * SLOT_SIZE));
+		buf.putInt(MAGIC).putInt(VERSION).putInt(devices.length).putInt(0);
+		CRC32 crc = new CRC32();
+		for (String device : devices) {
+			byte[] name = Arrays.copyOf(device.getBytes(StandardCharsets.UTF_8), NAME_SIZE);
+			int value = values.get(device);
+			crc.reset();
+			crc.update(name);
+			crc.update(ByteBuffer.allocate(8).putInt(0).putInt(value).flip());
+			buf.put(name);
+			buf.putInt(0).putInt(value).putInt((int) crc.getValue()).putInt(0);
+			// The second copy is not valid yet
+			buf.putInt(-1).putInt(0).putInt(0).putInt(0);
+		}
+		buf.flip();
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (buf.hasRemaining()) {
+				ch.write(buf);
+			}
+			ch.force(true);
+		}
+		Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static Map<String, Integer> read(Path path) throws IOException {
+		Map<String, Integer> values = new LinkedHashMap<>();
+		byte[] b = Files.readAllBytes(path);
+		ByteBuffer buf = ByteBuffer.wrap(b);
+		if ((b.length < HEADER_SIZE) || (buf.getInt(0) != MAGIC)) {
+			return readText(path);
+		}
+		int n = Math.min(buf.getInt(8), (b.length - HEADER_SIZE) / SLOT_SIZE);
+		CRC32 crc = new CRC32();
+		for (int i = 0; i < n; i++) {
+			int base = HEADER_SIZE + (i * SLOT_SIZE) + NAME_SIZE;
+			int best = -1;
+			int value = 0;
+			for (int c = 0; c < 2; c++) {
+				int pos = base + (c * COPY_SIZE);
+				crc.reset();
+				crc.update(b, HEADER_SIZE + (i * SLOT_SIZE), NAME_SIZE);
+				crc.update(b, pos, 8);
+				if ((buf.getInt(pos + 8) == (int) crc.getValue()) && (buf.getInt(pos) > best)) {
+					best = buf.getInt(pos);
+					value = buf.getInt(pos + 4);
+				}
+			}
+			// A damaged counter is left out, so the caller's default is used
+			if (best >= 0) {
+				values.put(name(buf, i), value);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * @return the counters of the old text format
+	 */
+	private static Map<String, Integer> readText(Path path) throws IOException {
+		Map<String, Integer> values = new LinkedHashMap<>();
+		for (String ln : Files.readAllLines(path)) {
+			String[] lp = ln.split("=");
+			if (lp.length == 2) {
+				try {
+					values.put(lp[0].trim(), Integer.parseInt(lp[1].trim()));
+				} catch (NumberFormatException e) {
+					// Skip
+				}
+			}
+		}
+		return values;
+	}
+}
@@ -0,0 +1,370 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The history of the sensor values (room temperature and humidity, terrarium temperature and humidity)
+ * of an enclosure, in one file per month in its trace folder: PREFIX + yyyyMM.
+ *
+ * The file starts with a header: magic "TCTS", version, yyyyMM, the length of the valid data and an index
+ * with the offset of the block of each day of the month (0 if there is none).
+ * The blocks follow in order of day; a block holds the samples of its day, each appended as one row:
+ * the seconds since the previous sample (the first: since midnight), a byte with 0x80 and a bit per column
+ * that has changed, and the changes of those columns. The numbers are zigzag varints, so a sample
+ * in which nothing changed takes 2 bytes and a month takes less than 100 KB.
+ * The rows are forced to disk at the start of a block and every FORCE_INTERVAL samples; what was not
+ * written completely at a power cut is cut off when the file is opened again.
+ */
+public class SensorSeries implements Closeable {
+
+	public static final String PREFIX = "sensors_";
+	public static final int FORCE_INTERVAL = 60;
+
+	static final int MAGIC = 0x54435453; // "TCTS"
+	static final int VERSION = 1;
+	static final int DAYS = 31;
+	static final int HEADER_SIZE = 16 + (DAYS * 4);
+	static final int COLUMNS = 4;
+
+	private static DateTimeFormatter mfmt = DateTimeFormatter.ofPattern("yyyyMM");
+	private static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	/**
+	 * One sample of the sensors.
+	 */
+	public static class Sample {
+		private final LocalDateTime time;
+		private final int[] values;
+
+		Sample(LocalDateTime time, int[] values) {
+			this.time = time;
+			this.values = values;
+		}
+
+		public LocalDateTime getTime() {
+			return this.time;
+		}
+		public int getRoomTemperature() {
+			return this.values[0];
+		}
+		public int getRoomHumidity() {
+			return this.values[1];
+		}
+		public int getTerrariumTemperature() {
+			return this.values[2];
+		}
+		public int getTerrariumHumidity() {
+			return this.values[3];
+		}
+	}
+
+	private final String folder;
+	// The file of the month that is appended to
+	private FileChannel channel;
+	private YearMonth month;
+	private final int[] index = new int[DAYS];
+	private int end;
+	// The day of month of the last block (0 if none), and its last sample: second of day and columns
+	private int day;
+	private final int[] last = new int[COLUMNS + 1];
+	private int unforced;
+	private final ByteBuffer row = ByteBuffer.allocate(6 + (COLUMNS * 5));
+	private final ByteBuffer header = ByteBuffer.allocate(4);
+
+	public SensorSeries(String folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Append a sample with the values room temperature, room humidity, terrarium temperature and terrarium humidity.
+	 * A sample of an earlier day than the last one is ignored.
+	 */
+	public synchronized void append(LocalDateTime time, int[] values) throws IOException {
+		YearMonth ym = YearMonth.from(time);
+		if ((this.month != null) && ym.isBefore(this.month)) {
+			return;
+		}
+		if (!ym.equals(this.month)) {
+			open(ym);
+		}
+		int d = time.getDayOfMonth();
+		if (d < this.day) {
+			return;
+		}
+		boolean block = d != this.day;
+		if (block) {
+			this.index[d - 1] = this.end;
+			this.day = d;
+			Arrays.fill(this.last, 0);
+		}
+		int sec = time.toLocalTime().toSecondOfDay();
+		this.row.clear();
+		putVarint(this.row, sec - this.last[0]);
+		int mask = 0x80;
+		for (int c = 0; c < COLUMNS; c++) {
+			if (values[c] != this.last[c + 1]) {
+				mask |= 1 << c;
+			}
+		}
+		this.row.put((byte) mask);
+		for (int c = 0; c < COLUMNS; c++) {
+			if (values[c] != this.last[c + 1]) {
+				putVarint(this.row, values[c] - this.last[c + 1]);
+			}
+		}
+		this.row.flip();
+		int len = this.row.remaining();
+		while (this.row.hasRemaining()) {
+			this.channel.write(this.row, this.end + this.row.position());
+		}
+		this.end += len;
+		this.last[0] = sec;
+		System.arraycopy(values, 0, this.last, 1, COLUMNS);
+		if (block || (++this.unforced >= FORCE_INTERVAL)) {
+			this.channel.force(false);
+			this.unforced = 0;
+		}
+		// The header after the rows, so it never has more than has been written
+		if (block) {
+			putInt(16 + ((d - 1) * 4), this.index[d - 1]);
+		}
+		putInt(12, this.end);
+	}
+
+	/**
+	 * Hand the samples from 'from' up to 'to' (not included) to the action, in order of time.
+	 * Only the blocks of the days in that range are read.
+	 */
+	public void scan(LocalDateTime from, LocalDateTime to, Consumer<Sample> action) throws IOException {
+		for (YearMonth ym = YearMonth.from(from); !ym.isAfter(YearMonth.from(to)); ym = ym.plusMonths(1)) {
+			ByteBuffer hdr = ByteBuffer.allocate(HEADER_SIZE);
+			try (FileChannel ch = FileChannel.open(file(ym), StandardOpenOption.READ)) {
+				while (hdr.hasRemaining() && (ch.read(hdr, hdr.position()) >= 0)) {
+				}
+				if (hdr.hasRemaining() || (hdr.getInt(0) != MAGIC) || (hdr.getInt(8) != Integer.parseInt(ym.format(mfmt)))) {
+					continue;
+				}
+				int size = (int) Math.min(hdr.getInt(12), ch.size());
+				for (int d = 1; d <= ym.lengthOfMonth(); d++) {
+					LocalDate date = ym.atDay(d);
+					int start = hdr.getInt(16 + ((d - 1) * 4));
+					if ((start < HEADER_SIZE) || !date.plusDays(1).atStartOfDay().isAfter(from) || !date.atStartOfDay().isBefore(to)) {
+						continue;
+					}
+					// The block ends where the block of a later day starts
+					int stop = size;
+					for (int e = d + 1; e <= DAYS; e++) {
+						int next = hdr.getInt(16 + ((e - 1) * 4));
+						if (next >= HEADER_SIZE) {
+							stop = Math.min(stop, next);
+							break;
+						}
+					}
+					if (stop <= start) {
+						continue;
+					}
+					ByteBuffer b = ByteBuffer.allocate(stop - start);
+					while (b.hasRemaining() && (ch.read(b, start + b.position()) >= 0)) {
+					}
+					b.flip();
+					int[] sample = new int[COLUMNS + 1];
+					while (b.hasRemaining() && decode(b, sample)) {
+						LocalDateTime t = date.atStartOfDay().plusSeconds(sample[0]);
+						if (!t.isBefore(from) && t.isBefore(to)) {
+							action.accept(new Sample(t, Arrays.copyOfRange(sample, 1, COLUMNS + 1)));
+						}
+					}
+				}
+			} catch (NoSuchFileException e) {
+				// No samples in that month
+			}
+		}
+	}
+
+	/**
+	 * @return the temperatures from 'from' up to 'to' (not included) in the format of the temperature tracefiles
+	 */
+	public String export(LocalDateTime from, LocalDateTime to) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		scan(from, to, s -> sb.append(s.getTime().format(dtfmt))
+				.append(" r=").append(s.getRoomTemperature())
+				.append(" t=").append(s.getTerrariumTemperature())
+				.append('\n'));
+		return sb.toString();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (this.channel != null) {
+			try {
+				this.channel.force(true);
+				this.channel.close();
+			} catch (IOException e) {
+			}
+			this.channel = null;
+			this.month = null;
+		}
+	}
+
+	/**
+	 * Open (or create) the file of the month and continue after its last complete sample.
+	 */
+	private void open(YearMonth ym) throws IOException {
+		close();
+		Files.createDirectories(Paths.get(this.folder));
+		Path file = file(ym);
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.month = ym;
+		this.day = 0;
+		this.unforced = 0;
+		Arrays.fill(this.index, 0);
+		Arrays.fill(this.last, 0);
+		int yyyymm = Integer.parseInt(ym.format(mfmt));
+		ByteBuffer hdr = ByteBuffer.allocate(HEADER_SIZE);
+		while (hdr.hasRemaining() && (this.channel.read(hdr, hdr.position()) >= 0)) {
+		}
+		if (hdr.hasRemaining() || (hdr.getInt(0) != MAGIC) || (hdr.getInt(4) != VERSION) || (hdr.getInt(8) != yyyymm)) {
+			if (this.channel.size() > 0) {
+				System.err.println(Util.getDateTimeString() + file + " is damaged, its samples are removed");
+			}
+			hdr.clear();
+			hdr.putInt(MAGIC).putInt(VERSION).putInt(yyyymm).putInt(HEADER_SIZE);
+			hdr.rewind();
+			this.channel.truncate(0);
+			while (hdr.hasRemaining()) {
+				this.channel.write(hdr, hdr.position());
+			}
+			this.channel.force(true);
+			this.end = HEADER_SIZE;
+			return;
+		}
+		for (int d = 0; d < DAYS; d++) {
+			this.index[d] = hdr.getInt(16 + (d * 4));
+			if (this.index[d] >= HEADER_SIZE) {
+				this.day = d + 1;
+			}
+		}
+		int size = (int) Math.min(hdr.getInt(12), this.channel.size());
+		this.end = size;
+		if (this.day > 0) {
+			// Continue the last block: find its last complete sample
+			int start = this.index[this.day - 1];
+			ByteBuffer b = ByteBuffer.allocate(Math.max(0, size - start));
+			while (b.hasRemaining() && (this.channel.read(b, start + b.position()) >= 0)) {
+			}
+			b.flip();
+			int valid = 0;
+			while (b.hasRemaining() && decode(b, this.last)) {
+				valid = b.position();
+			}
+			this.end = start + valid;
+			if (valid == 0) {
+				// Not one complete sample
+				this.index[this.day - 1] = 0;
+				putInt(16 + ((this.day - 1) * 4), 0);
+				this.day = 0;
+				Arrays.fill(this.last, 0);
+			}
+		}
+		if ((this.end != hdr.getInt(12)) || (this.channel.size() > this.end)) {
+			this.channel.truncate(this.end);
+			putInt(12, this.end);
+			this.channel.force(true);
+		}
+	}
+
+	private Path file(YearMonth ym) {
+		return Paths.get(this.folder, PREFIX + ym.format(mfmt));
+	}
+
+	private void putInt(int pos, int value) throws IOException {
+		this.header.clear();
+		this.header.putInt(value).flip();
+		while (this.header.hasRemaining()) {
+			this.channel.write(this.header, pos + this.header.position());
+		}
+	}
+
+	/**
+	 * Decode the row at the position of the buffer into sample (second of day and columns), which has the previous sample.
+	 *
+	 * @return false if there is no complete row; sample is then not changed
+	 */
+	private static boolean decode(ByteBuffer b, int[] sample) {
+		int[] s = sample.clone();
+		long v = getVarint(b);
+		if ((v < 0) || !b.hasRemaining()) {
+			return false;
+		}
+		s[0] += unzigzag(v);
+		int mask = b.get() & 0xff;
+		if ((mask & 0x80) == 0) {
+			return false;
+		}
+		for (int c = 0; c < COLUMNS; c++) {
+			if ((mask & (1 << c)) != 0) {
+				v = getVarint(b);
+				if (v < 0) {
+					return false;
+				}
+				s[c + 1] += unzigzag(v);
+			}
+		}
+		System.arraycopy(s, 0, sample, 0, s.length);
+		return true;
+	}
+
+	private static void putVarint(ByteBuffer b, int value) {
+		long v = ((long) value << 1) ^ ((long) value >> 63);
+		while ((v & ~0x7fL) != 0) {
+			b.put((byte) ((v & 0x7f) | 0x80));
+			v >>>= 7;
+		}
+		b.put((byte) v);
+	}
+
+	/**
+	 * @return the zigzag value, or -1 if the buffer ends before it or it is too long
+	 */
+	private static long getVarint(ByteBuffer b) {
+		long v = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (!b.hasRemaining()) {
+				return -1;
+			}
+			int x = b.get() & 0xff;
+			v |= (long) (x & 0x7f) << shift;
+			if ((x & 0x80) == 0) {
+				return v;
+			}
+		}
+		return -1;
+	}
+
+	private static int unzigzag(long v) {
+		return (int) ((v >>> 1) ^ -(v & 1));
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Writes the settings files of the enclosures crash-safe and not more often than needed.
+ *
+ * save() only keeps the new content; it is written when no new content has been saved for the
+ * quiet period, so a burst of changes is one write. flush() writes it right away.
+ * A write goes to file + ".tmp", which is forced to disk and then renamed to the file, which is atomic,
+ * so after a power cut there is either the old or the new file. The file it replaces is kept as
+ * file + ".bak", which load() uses when the file turns out to be damaged.
+ */
+public class SettingsStore {
+
+	public static final long DEFAULT_QUIET_PERIOD_MS = 2000;
+
+	private static volatile long quietPeriod = DEFAULT_QUIET_PERIOD_MS;
+
+	private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "settings-writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private static class Pending {
+		// Guarded by SettingsStore.class
+		byte[] content;
+		ScheduledFuture<?> task;
+	}
+
+	// Guarded by SettingsStore.class
+	private static final Map<Path, Pending> files = new HashMap<>();
+
+	/**
+	 * Set the time without new saves after which the content of a file is written (0 writes at once).
+	 */
+	public static void setQuietPeriod(long millis) {
+		quietPeriod = millis;
+	}
+
+	public static long getQuietPeriod() {
+		return quietPeriod;
+	}
+
+	/**
+	 * Save the content of the file; it replaces the content saved before that has not been written yet.
+	 */
+	public static void save(String file, String content) {
+		Path path = Paths.get(file).toAbsolutePath();
+		long delay = quietPeriod;
+		synchronized (SettingsStore.class) {
+			Pending p = files.computeIfAbsent(path, k -> new Pending());
+			p.content = content.getBytes(StandardCharsets.UTF_8);
+			if (p.task != null) {
+				p.task.cancel(false);
+				p.task = null;
+			}
+			if (delay > 0) {
+				p.task = writer.schedule(() -> flush(path), delay, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (delay <= 0) {
+			flush(path);
+		}
+	}
+
+	/**
+	 * Write the saved content of the file now, if it has not been written yet.
+	 * When another thread is writing the file, wait until it is done.
+	 */
+	public static void flush(String file) {
+		flush(Paths.get(file).toAbsolutePath());
+	}
+
+	/**
+	 * Write the saved content of all files now, e.g. when the program stops.
+	 */
+	public static void flushAll() {
+		List<Path> paths;
+		synchronized (SettingsStore.class) {
+			paths = new ArrayList<>(files.keySet());
+		}
+		for (Path path : paths) {
+			flush(path);
+		}
+	}
+
+	/**
+	 * Write the content of the file now, in place of the saved content that has not been written yet.
+	 *
+	 * @throws IOException if it could not be written
+	 */
+	public static void write(String file, String content) throws IOException {
+		Path path = Paths.get(file).toAbsolutePath();
+		Pending p;
+		synchronized (SettingsStore.class) {
+			p = files.computeIfAbsent(path, k -> new Pending());
+		}
+		synchronized (p) {
+			synchronized (SettingsStore.class) {
+				p.content = null;
+				if (p.task != null) {
+					p.task.cancel(false);
+					p.task = null;
+				}
+			}
+			write(path, content.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static void flush(Path path) {
+		Pending p;
+		synchronized (SettingsStore.class) {
+			p = files.get(path);
+		}
+		if (p == null) {
+			return;
+		}
+		// One writer per file; the one that takes the content writes it before another one gets the lock
+		synchronized (p) {
+			byte[] content;
+			synchronized (SettingsStore.class) {
+				content = p.content;
+				p.content = null;
+				if (p.task != null) {
+					p.task.cancel(false);
+					p.task = null;
+				}
+			}
+			if (content != null) {
+				try {
+					write(path, content);
+				} catch (IOException e) {
+					System.err.println(Util.getDateTimeString() + "Could not write " + path + ": " + e.getMessage());
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replace the file atomically with the content, keeping the file it replaces as backup.
+	 */
+	static void write(Path file, byte[] content) throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer b = ByteBuffer.wrap(content);
+			while (b.hasRemaining()) {
+				ch.write(b);
+			}
+			ch.force(true);
+		}
+		if (Files.exists(file)) {
+			Path bak = backup(file);
+			Files.deleteIfExists(bak);
+			try {
+				Files.createLink(bak, file);
+			} catch (IOException | UnsupportedOperationException e) {
+				Files.copy(file, bak, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		// Get the rename itself on disk
+		try (FileChannel dir = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+			dir.force(true);
+		} catch (IOException e) {
+			// Not possible on every platform
+		}
+	}
+
+	/**
+	 * Read and parse the file. When it cannot be read or parsed, the backup is used if there is one.
+	 *
+	 * @throws NoSuchFileException if the file does not exist
+	 * @throws IOException if the file cannot be read and there is no backup
+	 */
+	public static <T> T load(String file, Function<String, T> parser) throws IOException {
+		Path path = Paths.get(file);
+		try {
+			return parser.apply(Files.readString(path));
+		} catch (NoSuchFileException e) {
+			throw e;
+		} catch (IOException | RuntimeException e) {
+			Path bak = backup(path);
+			if (!Files.exists(bak)) {
+				throw e;
+			}
+			System.err.println(Util.getDateTimeString() + file + " is damaged (" + e.getMessage() + "), using " + bak);
+			return parser.apply(Files.readString(bak));
+		}
+	}
+
+	/**
+	 * @return the file with the last content before the current one
+	 */
+	public static Path backup(Path file) {
+		return file.resolveSibling(file.getFileName() + ".bak");
+	}
+}
@@ -10,11 +10,9 @@ package nl.das.terraria;
 
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
-import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 
 import javax.bluetooth.UUID;
 
@@ -23,6 +21,9 @@ import com.pi4j.system.NetworkInfo;
 import nl.das.terraria.hw.LCD;
 import nl.das.terraria.objects.Terrarium;
 import nl.das.terraria.rest.BTServer;
+import nl.das.terraria.rest.Subscriptions;
+import nl.das.terraria.rest.TcpServer;
+import nl.das.terraria.rest.Transport;
 
 public class TCU {
 
@@ -35,60 +36,36 @@ public class TCU {
 			e1.printStackTrace();
 		}
 
-		LocalDateTime now = LocalDateTime.now();
+		LocalDateTime now = Util.now();
 		System.out.println(Util.getDateTimeString() + "Start Initialization ...");
 		System.err.println(Util.getDateTimeString() + "System started.");
+		// Get the queued trace lines on disk when the program stops
+		Runtime.getRuntime().addShutdownHook(new Thread(Util::shutdownTraces, "trace-shutdown"));
+		// and the settings that have not been written yet
+		SettingsStore.setQuietPeriod(Long.parseLong(props.getProperty("settingsQuietPeriod", "" + SettingsStore.DEFAULT_QUIET_PERIOD_MS)));
+		ConfigJournal.setCompactSize(Integer.parseInt(props.getProperty("journalCompactSize", "" + ConfigJournal.DEFAULT_COMPACT_SIZE)));
+		Runtime.getRuntime().addShutdownHook(new Thread(SettingsStore::flushAll, "settings-shutdown"));
 
 		// Initialize the LCD
 		LCD lcd = new LCD();
 		lcd.init(2, 16);
 		lcd.write(0, "Initialize....");
 
-		System.out.println(Util.getDateTimeString() + "Starting the Bluetooth service");
-		Thread svr = new Thread() {
-		    @Override
-			public void run(){
-		        try {
-					new BTServer(props.getProperty("host"), new UUID(props.getProperty("uuid"), false)).start();
-				} catch (IOException e) {
-					System.out.println(Util.getDateTimeString() + e.getMessage());
-					e.printStackTrace();
-				};
-		      }
-
-		};
-		svr.start();
-		// Retrieve the settings from disk
-		Terrarium terrarium = null;
-		try {
-			String json = new String(Files.readAllBytes(Paths.get("settings.json")));
-			terrarium = Terrarium.getInstance(json);
-		} catch (NoSuchFileException e) {
-			terrarium = Terrarium.getInstance();
-			terrarium.init();
-		} catch (IOException e) {
-			e.printStackTrace();
+		// Start the command transports
+		int maxSessions = Integer.parseInt(props.getProperty("maxSessions", "" + BTServer.DEFAULT_MAX_SESSIONS));
+		Subscriptions.setMinInterval(Integer.parseInt(props.getProperty("minPushInterval", "" + Subscriptions.DEFAULT_MIN_INTERVAL)));
+		if (Boolean.parseBoolean(props.getProperty("bluetooth", "true"))) {
+			startTransport("Bluetooth", () -> new BTServer(props.getProperty("host"), new UUID(props.getProperty("uuid"), false), maxSessions));
 		}
-		terrarium.setNow(now);
-		// Initialize the devices
-		terrarium.initDevices();
-		// Initialize device state
-		terrarium.initDeviceState();
-		// Retrieve the lifecycle values from disk
-		try {
-			String json = new String(Files.readAllBytes(Paths.get("lifecycle.txt")));
-			String lns[] = json.split("\n");
-			for (String ln : lns) {
-				String lp[] = ln.split("=");
-				terrarium.setDeviceLifecycle(lp[0], Integer.parseInt(lp[1]));
-			}
-		} catch (NoSuchFileException e) {
-		} catch (IOException e) {
-			System.out.println(Util.getDateTimeString() + e.getMessage());
-			e.printStackTrace();
+		if (props.getProperty("tcp.port") != null) {
+			startTransport("TCP", () -> new TcpServer(props.getProperty("tcp.host", "127.0.0.1"), Integer.parseInt(props.getProperty("tcp.port")), maxSessions));
+		}
+		// Load the enclosures and their settings from disk
+		TerrariumController controller = TerrariumController.fromProperties(props, now);
+		Terrarium terrarium = Terrarium.getInstance(Terrarium.DEFAULT_ENCLOSURE);
+		if (terrarium == null) {
+			terrarium = controller.getTerraria().get(0);
 		}
-		// Initialize the Temperature sensors
-		terrarium.initSensors();
 		int tterr = terrarium.getTerrariumTemperature();
 		int troom =  terrarium.getRoomTemperature();
 		lcd.displayLine1(troom, tterr);
@@ -103,57 +80,45 @@ public class TCU {
 			e.printStackTrace();
 		}
 		lcd.write(1, ip);
-		// Check timers if devices should be on
-		terrarium.initTimers(now);
-		terrarium.initRules();
-		// Get the current datetime
-		int currentSec = now.getSecond();
-		int currentMin = now.getMinute();
-		int currentHour = now.getHour();
 		// Start the loop
 		System.out.println(Util.getDateTimeString() + " Initialization done, start loop");
-		while (true) {
-			now = LocalDateTime.now();
-			terrarium.setNow(now);
-			if (now.getSecond() != currentSec) {
-				currentSec = now.getSecond();
-				// A second has passed
-				// Each second check devices
-				terrarium.checkDevices();
-				if (now.getMinute() != currentMin) {
-					currentMin = now.getMinute();
-					// A minute has passed
-//					System.out.println(now.format(dtfmt) + " A minute has passed");
-					// Each minute
-					// - display temperature on LCD line 1
-					terrarium.readSensorValues();
-					tterr = terrarium.getTerrariumTemperature();
-					troom = terrarium.getRoomTemperature();
-					lcd.displayLine1(troom, tterr);
-					Util.traceTemperature(Terrarium.traceFolder + "/" +  Terrarium.traceTempFilename, now, "r=%d t=%d", troom, tterr);
-					// - check timers
-					terrarium.checkTimers();
-					// - check sprayerrule
-					terrarium.checkSprayerRule();
-					// - check rulesets
-					terrarium.checkRules();
-					// Check if tracing should be switched off (max 1 day)
-					terrarium.checkTrace();
-				}
-				if (now.getHour() != currentHour) {
-					// An hour has passed
-//					System.out.println(now.format(dtfmt) + " An hour has passed");
-					currentHour = now.getHour();
-					if (!terrarium.isTraceOn()) {
-						// Start trace on the whole hour
-						terrarium.setTrace(true);
-					}
-					// Each hour
-					// - decrement lifecycle value
-					terrarium.decreaseLifetime(1);
-					terrarium.saveLifecycleCounters();
-				}
+		final Terrarium terr = terrarium;
+		TickScheduler scheduler = new TickScheduler(new TickScheduler.TickListener() {
+			@Override
+			public void second(LocalDateTime now) {
+				controller.second(now);
 			}
-		}
+
+			@Override
+			public void minute(LocalDateTime now) {
+				// Each minute
+				// - check all enclosures
+				controller.minute(now);
+				// - display temperature on LCD line 1
+				lcd.displayLine1(terr.getRoomTemperature(), terr.getTerrariumTemperature());
+			}
+
+			@Override
+			public void hour(LocalDateTime now) {
+				controller.hour(now);
+			}
+		});
+		scheduler.run();
+	}
+
+	/**
+	 * Create and run a transport on its own thread.
+	 */
+	private static void startTransport(String name, Callable<Transport> transport) {
+		System.out.println(Util.getDateTimeString() + "Starting the " + name + " service");
+		Thread svr = new Thread(() -> {
+			try {
+				transport.call().start();
+			} catch (Exception e) {
+				System.out.println(Util.getDateTimeString() + e.getMessage());
+				e.printStackTrace();
+			}
+		}, name);
+		svr.start();
 	}
 }
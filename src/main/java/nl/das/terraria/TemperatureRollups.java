@@ -0,0 +1,308 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The minimum, maximum, average and number of minutes above and below the ideal temperature
+ * of the room and terrarium temperature per hour (the last HOURS) and per day (the last DAYS),
+ * updated with every sample and kept in a small memory-mapped file.
+ *
+ * The file has a header (magic "TCRU", version, HOURS, DAYS) and a fixed slot per hour and per day,
+ * used round-robin: the key of the hour or day, per sensor min, max, count, sum, above and below,
+ * and a CRC32. A slot with another key or a wrong CRC (power cut while it was written) is started again.
+ * The slots are forced to disk every FORCE_INTERVAL samples.
+ */
+public class TemperatureRollups implements Closeable {
+
+	public static final int HOURS = 7 * 24;
+	public static final int DAYS = 92;
+	public static final int FORCE_INTERVAL = 60;
+	/** The ideal temperature when no ruleset is active */
+	public static final int NO_IDEAL = Integer.MIN_VALUE;
+
+	static final int MAGIC = 0x54435255; // "TCRU"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int SENSORS = 2;
+	static final int STATS_SIZE = 20;
+	static final int SLOT_SIZE = 4 + (SENSORS * STATS_SIZE) + 4;
+
+	/**
+	 * The statistics of one sensor in an hour or day.
+	 */
+	public static class Stats {
+		private final int min;
+		private final int max;
+		private final int count;
+		private final long sum;
+		private final int above;
+		private final int below;
+
+		Stats(int min, int max, int count, long sum, int above, int below) {
+			this.min = min;
+			this.max = max;
+			this.count = count;
+			this.sum = sum;
+			this.above = above;
+			this.below = below;
+		}
+
+		public int getMin() {
+			return this.min;
+		}
+		public int getMax() {
+			return this.max;
+		}
+		public int getCount() {
+			return this.count;
+		}
+		/**
+		 * @return the average, rounded to 1 decimal
+		 */
+		public double getAvg() {
+			return this.count == 0 ? 0.0 : Math.round((this.sum * 10.0) / this.count) / 10.0;
+		}
+		/**
+		 * @return the number of minutes (samples) above the ideal temperature
+		 */
+		public int getAbove() {
+			return this.above;
+		}
+		/**
+		 * @return the number of minutes (samples) below the ideal temperature
+		 */
+		public int getBelow() {
+			return this.below;
+		}
+	}
+
+	/**
+	 * The statistics of an hour or day.
+	 */
+	public static class Rollup {
+		private final LocalDateTime start;
+		private final Stats room;
+		private final Stats terrarium;
+
+		Rollup(LocalDateTime start, Stats room, Stats terrarium) {
+			this.start = start;
+			this.room = room;
+			this.terrarium = terrarium;
+		}
+
+		public LocalDateTime getStart() {
+			return this.start;
+		}
+		public Stats getRoom() {
+			return this.room;
+		}
+		public Stats getTerrarium() {
+			return this.terrarium;
+		}
+	}
+
+	private final FileChannel channel;
+	private final MappedByteBuffer map;
+	private final CRC32 crc = new CRC32();
+	private int unforced;
+
+	private TemperatureRollups(FileChannel channel, MappedByteBuffer map) {
+		this.channel = channel;
+		this.map = map;
+	}
+
+	/**
+	 * Open the rollup file; it is created when it does not exist or is not a rollup file of this size.
+	 */
+	public static TemperatureRollups open(String file) throws IOException {
+		Path path = Paths.get(file);
+		long size = HEADER_SIZE + ((long) (HOURS + DAYS) * SLOT_SIZE);
+		if (!valid(path, size)) {
+			if (Files.exists(path)) {
+				System.err.println(Util.getDateTimeString() + file + " is not a rollup file, it is started again");
+			}
+			create(path, size);
+		}
+		FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			return new TemperatureRollups(ch, ch.map(FileChannel.MapMode.READ_WRITE, 0, size));
+		} catch (IOException | RuntimeException e) {
+			ch.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Add a sample to the hour and the day of its time. The terrarium temperature is compared with the ideal.
+	 */
+	public synchronized void add(LocalDateTime time, int room, int terrarium, int ideal) {
+		int[] values = { room, terrarium };
+		int[] ideals = { NO_IDEAL, ideal };
+		int hour = hourKey(time);
+		int day = (int) time.toLocalDate().toEpochDay();
+		update(HEADER_SIZE + ((hour % HOURS) * SLOT_SIZE), hour, values, ideals);
+		update(HEADER_SIZE + ((HOURS + (day % DAYS)) * SLOT_SIZE), day, values, ideals);
+		if (++this.unforced >= FORCE_INTERVAL) {
+			this.map.force();
+			this.unforced = 0;
+		}
+	}
+
+	/**
+	 * @return the rollups of the last 'count' hours up to and including the hour of 'now', oldest first;
+	 *         hours without samples are left out
+	 */
+	public synchronized List<Rollup> getHours(LocalDateTime now, int count) {
+		List<Rollup> res = new ArrayList<>();
+		int last = hourKey(now);
+		for (int key = last - Math.min(count, HOURS) + 1; key <= last; key++) {
+			Rollup r = get(HEADER_SIZE + ((key % HOURS) * SLOT_SIZE), key, LocalDateTime.ofEpochSecond(key * 3600L, 0, ZoneOffset.UTC));
+			if (r != null) {
+				res.add(r);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return the rollups of the last 'count' days up to and including the day of 'now', oldest first;
+	 *         days without samples are left out
+	 */
+	public synchronized List<Rollup> getDays(LocalDateTime now, int count) {
+		List<Rollup> res = new ArrayList<>();
+		int last = (int) now.toLocalDate().toEpochDay();
+		for (int key = last - Math.min(count, DAYS) + 1; key <= last; key++) {
+			Rollup r = get(HEADER_SIZE + ((HOURS + (key % DAYS)) * SLOT_SIZE), key, LocalDate.ofEpochDay(key).atStartOfDay());
+			if (r != null) {
+				res.add(r);
+			}
+		}
+		return res;
+	}
+
+	@Override
+	public synchronized void close() {
+		try {
+			this.map.force();
+			this.channel.close();
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * The hours are counted in local time, so an hour is never split by a change of the zone offset.
+	 */
+	private static int hourKey(LocalDateTime time) {
+		return (int) (time.toEpochSecond(ZoneOffset.UTC) / 3600);
+	}
+
+	private void update(int pos, int key, int[] values, int[] ideals) {
+		if ((this.map.getInt(pos) != key) || !intact(pos)) {
+			this.map.putInt(pos, key);
+			for (int s = 0; s < SENSORS; s++) {
+				int p = pos + 4 + (s * STATS_SIZE);
+				this.map.putShort(p, Short.MAX_VALUE);
+				this.map.putShort(p + 2, Short.MIN_VALUE);
+				this.map.putInt(p + 4, 0);
+				this.map.putInt(p + 8, 0);
+				this.map.putInt(p + 12, 0);
+				this.map.putInt(p + 16, 0);
+			}
+		}
+		for (int s = 0; s < SENSORS; s++) {
+			int p = pos + 4 + (s * STATS_SIZE);
+			int v = values[s];
+			this.map.putShort(p, (short) Math.min(this.map.getShort(p), v));
+			this.map.putShort(p + 2, (short) Math.max(this.map.getShort(p + 2), v));
+			this.map.putInt(p + 4, this.map.getInt(p + 4) + 1);
+			this.map.putInt(p + 8, this.map.getInt(p + 8) + v);
+			if (ideals[s] != NO_IDEAL) {
+				if (v > ideals[s]) {
+					this.map.putInt(p + 12, this.map.getInt(p + 12) + 1);
+				} else if (v < ideals[s]) {
+					this.map.putInt(p + 16, this.map.getInt(p + 16) + 1);
+				}
+			}
+		}
+		this.map.putInt(pos + SLOT_SIZE - 4, checksum(pos));
+	}
+
+	private Rollup get(int pos, int key, LocalDateTime start) {
+		if ((key <= 0) || (this.map.getInt(pos) != key) || !intact(pos)) {
+			return null;
+		}
+		Stats[] stats = new Stats[SENSORS];
+		for (int s = 0; s < SENSORS; s++) {
+			int p = pos + 4 + (s * STATS_SIZE);
+			stats[s] = new Stats(this.map.getShort(p), this.map.getShort(p + 2), this.map.getInt(p + 4),
+					this.map.getInt(p + 8), this.map.getInt(p + 12), this.map.getInt(p + 16));
+		}
+		return new Rollup(start, stats[0], stats[1]);
+	}
+
+	private boolean intact(int pos) {
+		return this.map.getInt(pos + SLOT_SIZE - 4) == checksum(pos);
+	}
+
+	private int checksum(int pos) {
+		this.crc.reset();
+		this.crc.update(this.map.duplicate().position(pos).limit(pos + SLOT_SIZE - 4));
+		return (int) this.crc.getValue();
+	}
+
+	private static boolean valid(Path path, long size) throws IOException {
+		if (!Files.exists(path) || (Files.size(path) != size)) {
+			return false;
+		}
+		ByteBuffer hdr = ByteBuffer.allocate(HEADER_SIZE);
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			while (hdr.hasRemaining() && (ch.read(hdr, hdr.position()) >= 0)) {
+			}
+		}
+		return (hdr.getInt(0) == MAGIC) && (hdr.getInt(4) == VERSION) && (hdr.getInt(8) == HOURS) && (hdr.getInt(12) == DAYS);
+	}
+
+	/**
+	 * Write an empty rollup file next to it and rename it, so there is always a complete file.
+	 */
+	private static void create(Path path, long size) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate((int) size);
+		buf.putInt(MAGIC).putInt(VERSION).putInt(HOURS).putInt(DAYS);
+		buf.rewind();
+		if (path.toAbsolutePath().getParent() != null) {
+			Files.createDirectories(path.toAbsolutePath().getParent());
+		}
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (buf.hasRemaining()) {
+				ch.write(buf);
+			}
+			ch.force(true);
+		}
+		Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+}
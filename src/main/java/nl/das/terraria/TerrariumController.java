@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.pi4j.io.gpio.Pin;
+import com.pi4j.io.gpio.RaspiPin;
+
+import nl.das.terraria.objects.Sensors;
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Hosts the enclosures (Terrarium instances) of one controller and drives their ticks.
+ *
+ * The enclosures are defined in config.properties:
+ *   enclosures=1,2
+ *   enclosure.2.settings=settings_2.json
+ *   enclosure.2.lifecycle=lifecycle_2.txt
+ *   enclosure.2.tracefolder=tracefiles_2
+ *   enclosure.2.pins=light1:26,light2:27,...  (device:wiringPi pin number)
+ *   threads=2
+ * Without an 'enclosures' property there is one enclosure (1) with settings.json, lifecycle.txt,
+ * tracefiles and the default device pins, as before.
+ *
+ * Every tick is handed to a small shared thread pool, one task per enclosure,
+ * and the controller waits until all enclosures have handled it, so the ticks of one
+ * enclosure never overlap. With a single enclosure the tick is handled on the scheduler thread.
+ */
+public class TerrariumController implements TickScheduler.TickListener {
+
+	private final List<Terrarium> terraria = new ArrayList<>();
+	private ExecutorService pool;
+	private final List<Callable<Object>> secondTasks = new ArrayList<>();
+	private final List<Callable<Object>> minuteTasks = new ArrayList<>();
+	private final List<Callable<Object>> hourTasks = new ArrayList<>();
+	private volatile LocalDateTime tickTime;
+	// The values of the sensors of the current minute tick, read once for all enclosures
+	private volatile int[] sensorValues;
+
+	/**
+	 * Create the enclosures defined in the properties and register them.
+	 */
+	public static TerrariumController fromProperties(Properties props, LocalDateTime now) {
+		TerrariumController ctl = new TerrariumController();
+		String ids = props.getProperty("enclosures", "" + Terrarium.DEFAULT_ENCLOSURE);
+		for (String sid : ids.split(",")) {
+			int id = Integer.parseInt(sid.trim());
+			String prefix = "enclosure." + id + ".";
+			boolean dflt = id == Terrarium.DEFAULT_ENCLOSURE;
+			ctl.add(load(id,
+					props.getProperty(prefix + "settings", dflt ? "settings.json" : "settings_" + id + ".json"),
+					props.getProperty(prefix + "lifecycle", dflt ? "lifecycle.txt" : "lifecycle_" + id + ".txt"),
+					props.getProperty(prefix + "tracefolder", dflt ? "tracefiles" : "tracefiles_" + id),
+					parsePins(props.getProperty(prefix + "pins")),
+					now));
+		}
+		int threads = Integer.parseInt(props.getProperty("threads", "" + Math.min(ctl.terraria.size(), Runtime.getRuntime().availableProcessors())));
+		ctl.start(threads);
+		return ctl;
+	}
+
+	/**
+	 * Load an enclosure from its settings file (or create empty settings) and initialize
+	 * its devices, lifecycle counters, sensors, timers and rules.
+	 */
+	public static Terrarium load(int id, String settingsFile, String lifecycleFile, String traceFolder, Map<String, Pin> pins, LocalDateTime now) {
+		Terrarium terrarium;
+		try {
+			// Falls back to the last good settings when the file is damaged
+			terrarium = SettingsStore.load(settingsFile, Terrarium::fromJson);
+			terrarium.setSettingsFile(settingsFile);
+			// and the changes since it has been written
+			try {
+				terrarium.replayJournal();
+			} catch (IOException e) {
+				System.out.println(Util.getDateTimeString() + "Journal of " + settingsFile + " not replayed: " + e.getMessage());
+			}
+		} catch (IOException e) {
+			if (!(e instanceof NoSuchFileException)) {
+				e.printStackTrace();
+			}
+			terrarium = new Terrarium();
+			terrarium.setSettingsFile(settingsFile);
+			terrarium.init();
+		}
+		terrarium.setLifecycleFile(lifecycleFile);
+		terrarium.setTraceFolder(traceFolder);
+		if (pins != null) {
+			terrarium.setDevicePin(pins);
+		}
+		Terrarium.register(id, terrarium);
+		terrarium.setNow(now);
+		// Initialize the devices
+		terrarium.initDevices();
+		// Initialize device state
+		terrarium.initDeviceState();
+		// Retrieve the lifecycle values from disk
+		try {
+			terrarium.loadLifecycleCounters();
+		} catch (IOException e) {
+			System.out.println(Util.getDateTimeString() + e.getMessage());
+			e.printStackTrace();
+		}
+		// Initialize the Temperature sensors
+		terrarium.initSensors();
+		// Check timers if devices should be on
+		terrarium.initTimers(now);
+		terrarium.initRules();
+		return terrarium;
+	}
+
+	private static Map<String, Pin> parsePins(String spec) {
+		if ((spec == null) || spec.isBlank()) {
+			return null;
+		}
+		Map<String, Pin> pins = new HashMap<>();
+		for (String dp : spec.split(",")) {
+			String[] kv = dp.split(":");
+			pins.put(kv[0].trim(), RaspiPin.getPinByAddress(Integer.parseInt(kv[1].trim())));
+		}
+		return Collections.unmodifiableMap(pins);
+	}
+
+	/**
+	 * Add an enclosure. Its ticks are handled while holding the lock of the terrarium,
+	 * so they never run at the same time as a command for that terrarium.
+	 */
+	public void add(Terrarium terrarium) {
+		this.terraria.add(terrarium);
+		this.secondTasks.add(() -> {
+			synchronized (terrarium) {
+				terrarium.setNow(this.tickTime);
+				// Each second check devices
+				terrarium.checkDevices();
+			}
+			return null;
+		});
+		this.minuteTasks.add(() -> {
+			synchronized (terrarium) {
+				// - read the sensors, trace the temperatures and add them to the history
+				terrarium.readSensorValues(this.sensorValues);
+				terrarium.traceTemperature("r=%d t=%d", terrarium.getRoomTemperature(), terrarium.getTerrariumTemperature());
+				terrarium.recordSensors();
+				// - check timers
+				terrarium.checkTimers();
+				// - check sprayerrule
+				terrarium.checkSprayerRule();
+				// - check rulesets
+				terrarium.checkRules();
+				// Check if tracing should be switched off (max 1 day)
+				terrarium.checkTrace();
+			}
+			return null;
+		});
+		this.hourTasks.add(() -> {
+			synchronized (terrarium) {
+				if (!terrarium.isTraceOn()) {
+					// Start trace on the whole hour
+					terrarium.setTrace(true);
+				}
+				// - decrement lifecycle value
+				terrarium.decreaseLifetime(1);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Start the shared thread pool for the ticks.
+	 */
+	public void start(int nrOfThreads) {
+		if ((this.terraria.size() > 1) && (nrOfThreads > 0)) {
+			this.pool = Executors.newFixedThreadPool(nrOfThreads, r -> {
+				Thread t = new Thread(r, "enclosure-tick");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	public void stop() {
+		if (this.pool != null) {
+			this.pool.shutdown();
+		}
+	}
+
+	public List<Terrarium> getTerraria() {
+		return Collections.unmodifiableList(this.terraria);
+	}
+
+	@Override
+	public void second(LocalDateTime now) {
+		this.tickTime = now;
+		run(this.secondTasks);
+	}
+
+	@Override
+	public void minute(LocalDateTime now) {
+		this.tickTime = now;
+		// The sensors are shared by the enclosures: read them once, before the enclosures handle the tick
+		this.sensorValues = Sensors.readHardware();
+		run(this.minuteTasks);
+	}
+
+	@Override
+	public void hour(LocalDateTime now) {
+		this.tickTime = now;
+		run(this.hourTasks);
+	}
+
+	private void run(List<Callable<Object>> tasks) {
+		if (this.pool == null) {
+			for (Callable<Object> task : tasks) {
+				try {
+					task.call();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+			return;
+		}
+		try {
+			for (Future<Object> f : this.pool.invokeAll(tasks)) {
+				try {
+					f.get();
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
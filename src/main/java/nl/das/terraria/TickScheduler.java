@@ -0,0 +1,126 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * Fires second, minute and hour ticks on wall-clock boundaries.
+ *
+ * The scheduler sleeps until the next whole second instead of polling the clock,
+ * and the sleep time is recomputed from the clock after every wake-up so it never drifts.
+ * When a wake-up comes late (GC pause, busy system, small forward clock step)
+ * the missed seconds are replayed in order, so no minute tick (and thus no timer) is lost.
+ * A forward step of more than MAX_CATCHUP_SECONDS (e.g. the first NTP sync after boot)
+ * or a backward step of more than MAX_CATCHUP_SECONDS rebases the scheduler on the new time:
+ * the new second is treated as a new minute, and as a new hour only when it is in the first minute of the hour.
+ * A small backward step is absorbed by waiting until the clock has passed the last tick again.
+ */
+public class TickScheduler {
+
+	public static final long MAX_CATCHUP_SECONDS = 3600;
+
+	/**
+	 * Receives the ticks. Every tick gets the local time of the second it belongs to,
+	 * which may be in the past when missed ticks are replayed.
+	 * Minute and hour ticks are fired after the second tick of the same second.
+	 */
+	public interface TickListener {
+		default void second(LocalDateTime now) { }
+		default void minute(LocalDateTime now) { }
+		default void hour(LocalDateTime now) { }
+	}
+
+	private final TickListener listener;
+	private final Clock clock;
+	private long lastSecond = Long.MIN_VALUE;
+	private volatile boolean running = false;
+
+	public TickScheduler(TickListener listener) {
+		this(listener, Util.getClock());
+	}
+
+	public TickScheduler(TickListener listener, Clock clock) {
+		this.listener = listener;
+		this.clock = clock;
+	}
+
+	/**
+	 * Run the tick loop on the calling thread until stop() is called.
+	 */
+	public void run() throws InterruptedException {
+		this.running = true;
+		start(this.clock.millis() / 1000L);
+		while (this.running) {
+			long millis = this.clock.millis();
+			Thread.sleep(1000L - (millis % 1000L));
+			advance(this.clock.millis() / 1000L);
+		}
+	}
+
+	public void stop() {
+		this.running = false;
+	}
+
+	/**
+	 * Set the epoch second of the last tick without firing anything.
+	 */
+	public void start(long epochSecond) {
+		this.lastSecond = epochSecond;
+	}
+
+	/**
+	 * Fire all ticks for the seconds after the last tick up to and including the given epoch second.
+	 *
+	 * @param epochSecond the current time in Epoch seconds
+	 */
+	public void advance(long epochSecond) {
+		if (this.lastSecond == Long.MIN_VALUE) {
+			this.lastSecond = epochSecond - 1;
+		}
+		long diff = epochSecond - this.lastSecond;
+		if ((diff > MAX_CATCHUP_SECONDS) || (diff < -MAX_CATCHUP_SECONDS)) {
+			// Clock has been set; start over and treat this second as a new minute
+			this.lastSecond = epochSecond;
+			LocalDateTime now = toLocal(epochSecond);
+			this.listener.second(now);
+			this.listener.minute(now);
+			if (now.getMinute() == 0) {
+				this.listener.hour(now);
+			}
+			return;
+		}
+		while (this.lastSecond < epochSecond) {
+			this.lastSecond++;
+			fire(this.lastSecond);
+		}
+	}
+
+	public long getLastSecond() {
+		return this.lastSecond;
+	}
+
+	private void fire(long epochSecond) {
+		LocalDateTime now = toLocal(epochSecond);
+		this.listener.second(now);
+		if (now.getSecond() == 0) {
+			this.listener.minute(now);
+			if (now.getMinute() == 0) {
+				this.listener.hour(now);
+			}
+		}
+	}
+
+	private LocalDateTime toLocal(long epochSecond) {
+		return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), this.clock.getZone());
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Creates the tracefile of a new trace day without stalling the control thread.
+ *
+ * The control thread only queues the new file with the trace writer (see TraceWriter.close), which
+ * closes the file of a previous trace of that day and then creates the new file, before it writes
+ * the lines traced after it.
+ * The file of the next day is prepared ahead of time as a hidden file ("." + prefix + yyyyMMdd),
+ * so on rollover the trace writer only renames it, which is atomic.
+ * If there is no prepared file (first trace, or a restart of the trace on the same day)
+ * the file is created directly.
+ * Removing the tracefiles beyond Terrarium.maxNrOfTraceDays and preparing the next day
+ * is done afterwards on a single housekeeping thread; the tracefile in use is never removed,
+ * also not when the clock has been set back and it is not the newest.
+ */
+public class TraceRollover {
+
+	private static DateTimeFormatter tffmt = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+	private static Thread housekeepingThread;
+	private static final ExecutorService housekeeping = Executors.newSingleThreadExecutor(r -> {
+		housekeepingThread = new Thread(r, "trace-housekeeping");
+		housekeepingThread.setDaemon(true);
+		return housekeepingThread;
+	});
+
+	/**
+	 * Start a new tracefile for the day of 'now'. An existing file of that day is replaced.
+	 * The file is created on the trace writer thread; when it cannot be created that is reported there.
+	 *
+	 * @return the name of the tracefile (without folder)
+	 */
+	public static String create(String dir, String prefix, LocalDateTime now) {
+		String name = prefix + now.format(tffmt);
+		LocalDate next = now.toLocalDate().plusDays(1);
+		// The trace writer may still have the file of a previous trace of today open
+		Util.closeTrace(dir + "/" + name, () -> {
+			Path p = Paths.get(dir, name);
+			Path prepared = Paths.get(dir, "." + name);
+			try {
+				if (Files.exists(prepared)) {
+					Files.move(prepared, p, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+				} else {
+					Files.deleteIfExists(p);
+					Files.createFile(p);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				return;
+			}
+			housekeeping.execute(() -> {
+				try {
+					removeOldFiles(dir, prefix, Terrarium.maxNrOfTraceDays, name, next);
+					prepare(dir, prefix, next);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			});
+		});
+		return name;
+	}
+
+	/**
+	 * Wait until the tracefiles that have been started so far are created and their housekeeping is done.
+	 * Does not wait when called from the housekeeping itself.
+	 */
+	public static void awaitHousekeeping() {
+		if (Thread.currentThread() == housekeepingThread) {
+			return;
+		}
+		Util.flushTraces();
+		try {
+			housekeeping.submit(() -> { }).get();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Create the hidden file for the given day, unless the tracefile of that day already exists.
+	 */
+	static void prepare(String dir, String prefix, LocalDate day) throws IOException {
+		String name = prefix + day.format(tffmt);
+		Path prepared = Paths.get(dir, "." + name);
+		if (!Files.exists(Paths.get(dir, name)) && !Files.exists(prepared)) {
+			Files.createFile(prepared);
+		}
+	}
+
+	/**
+	 * Remove the oldest tracefiles other than the current one until there are no more than max left
+	 * (including the current one), and the prepared files of other days than the next.
+	 */
+	static void removeOldFiles(String dir, String prefix, int max, String current, LocalDate next) throws IOException {
+		List<String> files = list(dir, prefix);
+		files.remove(current);
+		for (int i = 0; i < (files.size() - (max - 1)); i++) {
+			Files.deleteIfExists(Paths.get(dir, files.get(i)));
+		}
+		String prepared = "." + prefix + next.format(tffmt);
+		for (String hidden : list(dir, "." + prefix)) {
+			if (!hidden.equals(prepared)) {
+				Files.deleteIfExists(Paths.get(dir, hidden));
+			}
+		}
+	}
+
+	/**
+	 * @return the names of the files in the folder that start with the prefix, sorted
+	 */
+	static List<String> list(String dir, String prefix) throws IOException {
+		List<String> fileList = new ArrayList<>();
+		try (DirectoryStream<Path> ds = Files.newDirectoryStream(Paths.get(dir), prefix + "*")) {
+			for (Path file : ds) {
+				if (!Files.isDirectory(file)) {
+					fileList.add(file.getFileName().toString());
+				}
+			}
+		}
+		Collections.sort(fileList);
+		return fileList;
+	}
+}
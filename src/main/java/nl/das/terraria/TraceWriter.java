@@ -0,0 +1,374 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes trace lines on a background thread.
+ *
+ * The control thread only puts the line (file, time, format and arguments) on a lock-free queue;
+ * formatting and writing is done by the writer thread.
+ * The trace files are kept open with a buffer, which is written when it is full,
+ * and at the latest FLUSH_INTERVAL_MS after the first line that has not been written yet.
+ * The queue is bounded: when it is full the line is dropped and counted, the control thread never waits for the disk.
+ *
+ * flush() and shutdown() wait until everything queued before them has been written;
+ * close(file) is queued like a line and does not wait.
+ */
+public class TraceWriter {
+
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final long FLUSH_INTERVAL_MS = 1000;
+	private static final int BUFFER_SIZE = 8192;
+	private static final int WAKEUP_SIZE = 256;
+
+	private static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+	private static final int LINE = 0;
+	private static final int FLUSH = 1;
+	private static final int CLOSE = 2;
+	private static final int SHUTDOWN = 3;
+
+	private static class Entry {
+		final int type;
+		final String file;
+		final LocalDateTime now;
+		final String fmt;
+		final Object[] args;
+		final Runnable then;
+		final CountDownLatch done;
+
+		Entry(int type, String file, LocalDateTime now, String fmt, Object[] args) {
+			this(type, file, now, fmt, args, null);
+		}
+
+		Entry(int type, String file, LocalDateTime now, String fmt, Object[] args, Runnable then) {
+			this.type = type;
+			this.file = file;
+			this.now = now;
+			this.fmt = fmt;
+			this.args = args;
+			this.then = then;
+			this.done = type == LINE ? null : new CountDownLatch(1);
+		}
+	}
+
+	private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong dropped = new AtomicLong();
+	private final int capacity;
+	private final Map<String, BufferedWriter> files = new HashMap<>();
+	// The files that could not be opened, reported once
+	private final Set<String> failed = new HashSet<>();
+	private Thread thread;
+	private volatile boolean stopped = false;
+	// Set by the writer thread when it has written the last queued lines, guarded by drainLock
+	private final Object drainLock = new Object();
+	private boolean drained = false;
+	private long firstUnflushed = -1L;
+	private long reportedDropped = 0L;
+
+	public TraceWriter() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public TraceWriter(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Queue a trace line. The line is written as "yyyy-MM-dd HH:mm:ss " + String.format(fmt, args).
+	 *
+	 * @return false if the line has been dropped because the queue is full
+	 */
+	public boolean append(String file, LocalDateTime now, String fmt, Object... args) {
+		if (this.stopped) {
+			// No writer anymore, write it directly
+			writeDirect(file, now, fmt, args);
+			return true;
+		}
+		int n = this.size.incrementAndGet();
+		if (n > this.capacity) {
+			this.size.decrementAndGet();
+			this.dropped.incrementAndGet();
+			return false;
+		}
+		if (!enqueue(new Entry(LINE, file, now, fmt, args))) {
+			return true;
+		}
+		Thread t = start();
+		if (n == WAKEUP_SIZE) {
+			LockSupport.unpark(t);
+		}
+		return true;
+	}
+
+	/**
+	 * Write all queued lines to disk.
+	 */
+	public void flush() {
+		await(FLUSH, null);
+	}
+
+	/**
+	 * Close the file after the lines queued before, e.g. before it is deleted. Does not wait.
+	 */
+	public void close(String file) {
+		close(file, null);
+	}
+
+	/**
+	 * Close the file after the lines queued before and then run 'then' on the writer thread,
+	 * before the lines queued after it are written, e.g. to replace the file when the trace rolls over.
+	 * Does not wait.
+	 */
+	public void close(String file, Runnable then) {
+		Entry e = new Entry(CLOSE, file, null, null, null, then);
+		if (this.stopped) {
+			run(e);
+			return;
+		}
+		if (enqueue(e)) {
+			LockSupport.unpark(start());
+		}
+	}
+
+	/**
+	 * Write all queued lines, close all files and stop the writer thread.
+	 * Lines that are traced afterwards are written directly.
+	 */
+	public void shutdown() {
+		if (!this.stopped) {
+			// Set first, so no line is queued after the writer thread has written the last ones
+			this.stopped = true;
+			send(SHUTDOWN, null);
+		}
+	}
+
+	public long getDropped() {
+		return this.dropped.get();
+	}
+
+	/**
+	 * Queue the entry for the writer thread.
+	 *
+	 * @return false if it has been shut down meanwhile, the entry has then been handled
+	 */
+	private boolean enqueue(Entry e) {
+		this.queue.offer(e);
+		if (this.stopped) {
+			// If the writer thread has already handled the last entries, handle it here
+			synchronized (this.drainLock) {
+				if (this.drained) {
+					drainDirect();
+				}
+			}
+			return false;
+		}
+		return true;
+	}
+
+	private void await(int type, String file) {
+		if (!this.stopped) {
+			send(type, file);
+		}
+	}
+
+	private void send(int type, String file) {
+		Entry e = new Entry(type, file, null, null, null);
+		this.queue.offer(e);
+		LockSupport.unpark(start());
+		try {
+			while (!e.done.await(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+				if (!this.thread.isAlive()) {
+					return;
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized Thread start() {
+		if (this.thread == null) {
+			this.thread = new Thread(this::run, "trace-writer");
+			this.thread.setDaemon(true);
+			this.thread.start();
+		}
+		return this.thread;
+	}
+
+	private void run() {
+		while (true) {
+			Entry e = this.queue.poll();
+			if (e == null) {
+				if ((this.firstUnflushed >= 0) && ((System.currentTimeMillis() - this.firstUnflushed) >= FLUSH_INTERVAL_MS)) {
+					flushAll();
+				}
+				LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(this.firstUnflushed >= 0 ? FLUSH_INTERVAL_MS / 10 : FLUSH_INTERVAL_MS));
+				continue;
+			}
+			switch (e.type) {
+			case LINE:
+				this.size.decrementAndGet();
+				write(e);
+				break;
+			case FLUSH:
+				flushAll();
+				e.done.countDown();
+				break;
+			case CLOSE:
+				closeFile(e);
+				break;
+			case SHUTDOWN:
+				synchronized (this.drainLock) {
+					// The lines queued by appends that had not yet seen 'stopped'
+					for (Entry l = this.queue.poll(); l != null; l = this.queue.poll()) {
+						if (l.type == LINE) {
+							this.size.decrementAndGet();
+							write(l);
+						} else if (l.type == CLOSE) {
+							closeFile(l);
+						} else {
+							l.done.countDown();
+						}
+					}
+					this.drained = true;
+				}
+				flushAll();
+				for (BufferedWriter bw : this.files.values()) {
+					try {
+						bw.close();
+					} catch (IOException ex) {
+						ex.printStackTrace();
+					}
+				}
+				this.files.clear();
+				e.done.countDown();
+				return;
+			}
+		}
+	}
+
+	private void write(Entry e) {
+		try {
+			BufferedWriter w = this.files.get(e.file);
+			if (w == null) {
+				w = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Paths.get(e.file), StandardOpenOption.APPEND), StandardCharsets.UTF_8), BUFFER_SIZE);
+				this.files.put(e.file, w);
+				this.failed.remove(e.file);
+			}
+			w.write(format(e.now, e.fmt, e.args));
+			if (this.firstUnflushed < 0) {
+				this.firstUnflushed = System.currentTimeMillis();
+			}
+		} catch (IOException ex) {
+			if (this.failed.add(e.file)) {
+				System.err.println(Util.getDateTimeString() + "Could not write tracefile " + e.file + ": " + ex);
+			}
+		}
+	}
+
+	/**
+	 * Write the queued lines of the file, close it and run the action of the entry.
+	 */
+	private void closeFile(Entry e) {
+		BufferedWriter w = this.files.remove(e.file);
+		if (w != null) {
+			try {
+				w.close();
+			} catch (IOException ex) {
+				ex.printStackTrace();
+			}
+		}
+		this.failed.remove(e.file);
+		run(e);
+	}
+
+	private static void run(Entry e) {
+		try {
+			if (e.then != null) {
+				e.then.run();
+			}
+		} catch (RuntimeException ex) {
+			ex.printStackTrace();
+		} finally {
+			e.done.countDown();
+		}
+	}
+
+	/**
+	 * Write the lines that have been queued after the writer thread has stopped.
+	 */
+	private void drainDirect() {
+		for (Entry e = this.queue.poll(); e != null; e = this.queue.poll()) {
+			if (e.type == LINE) {
+				this.size.decrementAndGet();
+				writeDirect(e.file, e.now, e.fmt, e.args);
+			} else {
+				run(e);
+			}
+		}
+	}
+
+	private void flushAll() {
+		for (Iterator<Map.Entry<String, BufferedWriter>> it = this.files.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, BufferedWriter> f = it.next();
+			try {
+				f.getValue().flush();
+			} catch (IOException ex) {
+				ex.printStackTrace();
+				try {
+					f.getValue().close();
+				} catch (IOException e) {
+				}
+				it.remove();
+			}
+		}
+		this.firstUnflushed = -1L;
+		long d = this.dropped.get();
+		if (d != this.reportedDropped) {
+			System.err.println(Util.getDateTimeString() + (d - this.reportedDropped) + " trace lines dropped, trace queue full");
+			this.reportedDropped = d;
+		}
+	}
+
+	private static String format(LocalDateTime now, String fmt, Object[] args) {
+		return String.format(now.format(dtfmt) + " " + fmt + "\n", args);
+	}
+
+	private static void writeDirect(String file, LocalDateTime now, String fmt, Object[] args) {
+		try {
+			Files.writeString(Paths.get(file), format(now, fmt, args), StandardOpenOption.APPEND);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
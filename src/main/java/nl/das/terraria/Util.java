@@ -15,19 +15,15 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
-import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
-
-import nl.das.terraria.objects.Terrarium;
 
 /**
  *
@@ -37,6 +33,9 @@ public class Util {
 	static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 	static DateTimeFormatter tffmt = DateTimeFormatter.ofPattern("yyyyMMdd");
 
+	private static volatile Clock clock = Clock.systemDefaultZone();
+	private static final TraceWriter traceWriter = new TraceWriter();
+
 
 	public static String cvtPeriodToString(long l) {
 		if (l == -1) {
@@ -56,19 +55,48 @@ public class Util {
 		return (Long.parseLong(hhmm.split(":")[0]) * 60L) + (Long.parseLong(hhmm.split(":")[1]));
 	}
 
+	/**
+	 * @return the clock that defines the current time and the time zone of all local times
+	 */
+	public static Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Replace the clock, e.g. by a VirtualClock for a simulation.
+	 */
+	public static void setClock(Clock c) {
+		clock = c;
+	}
+
+	/**
+	 * @return the current local time of the clock
+	 */
+	public static LocalDateTime now() {
+		return LocalDateTime.now(clock);
+	}
+
+	/**
+	 * Convert a local time to Epoch seconds, using the zone offset that is valid at that local time
+	 * (and not the offset of today), so times on the other side of a DST change convert correctly.
+	 */
 	public static long now(LocalDateTime now) {
-		return now.toEpochSecond(ZoneId.systemDefault().getRules().getOffset(Instant.now()));
+		return now.atZone(clock.getZone()).toEpochSecond();
 	}
 
 	public static LocalDateTime ofEpochSecond(long epochseconds) {
-		return LocalDateTime.ofEpochSecond(epochseconds, 0, ZoneId.systemDefault().getRules().getOffset(Instant.now()));
+		return LocalDateTime.ofInstant(Instant.ofEpochSecond(epochseconds), clock.getZone());
 	}
 
 	public static String getDateTimeString() {
 		return LocalDateTime.now().format(dtfmt) + " ";
 	}
 
+	/**
+	 * @return the tracefiles with the given prefix, after the pending removal of old tracefiles
+	 */
 	public static List<String> listTraceFiles(String folder, String prefix) throws IOException {
+		TraceRollover.awaitHousekeeping();
 	    List<String> fileList = new ArrayList<>();
 	    Files.walkFileTree(Paths.get(folder), new SimpleFileVisitor<Path>() {
 	        @Override
@@ -83,75 +111,62 @@ public class Util {
 	    return fileList;
 	}
 
+	/**
+	 * Start a new state tracefile for the day of 'now'.
+	 * Old tracefiles are removed in the background (see TraceRollover).
+	 */
 	public static String createStateTraceFile(String dir, LocalDateTime now) {
-		// Count the number of tracefiles.
-		// If > Terrarium.maxNrOfTraceDays delete oldest first
-		// If file exists, delete it first
-		try {
-			List<String> files = listTraceFiles(dir, "state_");
-			if (files.size() == Terrarium.maxNrOfTraceDays) {
-				Files.deleteIfExists(Paths.get(dir + "/" + files.get(0)));
-			}
-			Path p = Paths.get(dir + "/state_" + now.format(tffmt));
-			Files.deleteIfExists(p);
-			Files.createFile(p);
-			TimeUnit.SECONDS.sleep(1);
-			return p.getFileName().toString();
-		} catch (IOException | InterruptedException e) {
-			e.printStackTrace();
-			return "";
-		}
+		return TraceRollover.create(dir, "state_", now);
 	}
 
+	/**
+	 * Start a new temperature tracefile for the day of 'now'.
+	 * Old tracefiles are removed in the background (see TraceRollover).
+	 */
 	public static String createTemperatureTraceFile(String dir, LocalDateTime now) {
-		// Count the number of tracefiles.
-		// If > Terrarium.maxNrOfTraceDays delete oldest first
-		// If file exists, delete it first
-		try {
-			List<String> files = listTraceFiles(dir, "temp_");
-			if (files.size() == Terrarium.maxNrOfTraceDays) {
-				Files.deleteIfExists(Paths.get(dir + "/" + files.get(0)));
-			}
-			Path p = Paths.get(dir + "/temp_" + now.format(tffmt));
-			Files.deleteIfExists(p);
-			Files.createFile(p);
-			TimeUnit.SECONDS.sleep(1);
-			return p.getFileName().toString();
-		} catch (IOException | InterruptedException e) {
-			e.printStackTrace();
-			return "";
-		}
+		return TraceRollover.create(dir, "temp_", now);
 	}
 
+	/**
+	 * Queue a line for the state tracefile; it is written by the trace writer thread.
+	 */
 	public static void traceState(String tracefile, LocalDateTime now, String fmt, Object ...args) {
-		try {
-			if (Terrarium.getInstance().isTraceOn()) {
-				String nowstr = now.format(dtfmt);
-				String format = nowstr + " " + fmt;
-				Files.writeString(
-						Paths.get(tracefile),
-						String.format(format + "\n", args),
-						StandardOpenOption.APPEND
-				);
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		traceWriter.append(tracefile, now, fmt, args);
 	}
 
+	/**
+	 * Queue a line for the temperature tracefile; it is written by the trace writer thread.
+	 */
 	public static void traceTemperature(String tracefile, LocalDateTime now, String fmt, Object ...args) {
-		try {
-			if (Terrarium.getInstance().isTraceOn()) {
-				String nowstr = now.format(dtfmt);
-				String format = nowstr + " " + fmt;
-				Files.writeString(
-						Paths.get(tracefile),
-						String.format(format + "\n", args),
-						StandardOpenOption.APPEND
-				);
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		traceWriter.append(tracefile, now, fmt, args);
+	}
+
+	/**
+	 * Write all queued trace lines to disk.
+	 */
+	public static void flushTraces() {
+		traceWriter.flush();
+	}
+
+	/**
+	 * Close the tracefile after the trace lines queued before; does not wait.
+	 */
+	public static void closeTrace(String tracefile) {
+		traceWriter.close(tracefile);
+	}
+
+	/**
+	 * Close the tracefile after the trace lines queued before and then run 'then' on the trace writer thread,
+	 * before the lines queued after it are written; does not wait.
+	 */
+	public static void closeTrace(String tracefile, Runnable then) {
+		traceWriter.close(tracefile, then);
+	}
+
+	/**
+	 * Write all queued trace lines, close all tracefiles and stop the trace writer thread.
+	 */
+	public static void shutdownTraces() {
+		traceWriter.shutdown();
 	}
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.objects;
+
+import java.util.Arrays;
+
+/**
+ * Min-heap of (deadline in Epoch seconds, device index) pairs.
+ *
+ * Entries are never removed when a device is switched off or gets a new end time;
+ * the owner has to check on removal whether the deadline is still the current one.
+ * The heap is kept in two primitive arrays, so adding and polling do not allocate
+ * once the arrays have grown to the number of pending deadlines.
+ */
+public class DeadlineQueue {
+
+	private long[] deadlines = new long[16];
+	private int[] devices = new int[16];
+	private int size = 0;
+
+	public void add(long deadline, int device) {
+		if (this.size == this.deadlines.length) {
+			this.deadlines = Arrays.copyOf(this.deadlines, this.size * 2);
+			this.devices = Arrays.copyOf(this.devices, this.size * 2);
+		}
+		int i = this.size++;
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!less(deadline, device, this.deadlines[parent], this.devices[parent])) {
+				break;
+			}
+			this.deadlines[i] = this.deadlines[parent];
+			this.devices[i] = this.devices[parent];
+			i = parent;
+		}
+		this.deadlines[i] = deadline;
+		this.devices[i] = device;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the earliest deadline, or Long.MAX_VALUE if the queue is empty
+	 */
+	public long peekDeadline() {
+		return this.size == 0 ? Long.MAX_VALUE : this.deadlines[0];
+	}
+
+	/**
+	 * @return the device of the earliest deadline, or -1 if the queue is empty
+	 */
+	public int peekDevice() {
+		return this.size == 0 ? -1 : this.devices[0];
+	}
+
+	/**
+	 * Remove the earliest deadline.
+	 */
+	public void poll() {
+		if (this.size == 0) {
+			return;
+		}
+		this.size--;
+		long deadline = this.deadlines[this.size];
+		int device = this.devices[this.size];
+		int i = 0;
+		int half = this.size >>> 1;
+		while (i < half) {
+			int child = (2 * i) + 1;
+			int right = child + 1;
+			if ((right < this.size) && less(this.deadlines[right], this.devices[right], this.deadlines[child], this.devices[child])) {
+				child = right;
+			}
+			if (!less(this.deadlines[child], this.devices[child], deadline, device)) {
+				break;
+			}
+			this.deadlines[i] = this.deadlines[child];
+			this.devices[i] = this.devices[child];
+			i = child;
+		}
+		this.deadlines[i] = deadline;
+		this.devices[i] = device;
+	}
+
+	public void clear() {
+		this.size = 0;
+	}
+
+	private static boolean less(long d1, int dev1, long d2, int dev2) {
+		return (d1 < d2) || ((d1 == d2) && (dev1 < dev2));
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.objects;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the device names of a TerrariumConfig to stable integer handles.
+ *
+ * The handle of a device is its index in the device list, so it can be used directly
+ * on the devices, devStates and ruleActiveForDevice arrays.
+ * Names are matched case insensitive, like getDeviceIndex always did.
+ * "no device" and unknown names resolve to NO_DEVICE.
+ */
+public class DeviceRegistry {
+
+	public static final int NO_DEVICE = -1;
+
+	private final String[] names;
+	private final Map<String, Integer> handles = new HashMap<>();
+
+	public DeviceRegistry(String[] deviceList) {
+		this.names = deviceList.clone();
+		for (int i = 0; i < this.names.length; i++) {
+			this.handles.putIfAbsent(this.names[i].toLowerCase(), i);
+		}
+	}
+
+	public int handle(String device) {
+		if (device == null) {
+			return NO_DEVICE;
+		}
+		Integer h = this.handles.get(device.toLowerCase());
+		return h == null ? NO_DEVICE : h;
+	}
+
+	public String name(int handle) {
+		return this.names[handle];
+	}
+
+	public int size() {
+		return this.names.length;
+	}
+}
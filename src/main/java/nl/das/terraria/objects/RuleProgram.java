@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.objects;
+
+/**
+ * The rulesets and the sprayer rule compiled into flat primitive arrays.
+ *
+ * Ruleset r owns the rules rsFirstRule[r] .. rsFirstRule[r] + rsNrOfRules[r] - 1,
+ * rule n owns the actions ruleFirstAction[n] .. ruleFirstAction[n] + ruleNrOfActions[n] - 1.
+ * The sprayer rule actions come after the ruleset actions, starting at sprayerFirstAction.
+ * The from/to times of a ruleset are parsed once into minutes of the day.
+ * A ruleset that is not active, or whose times cannot be parsed, never has its window open.
+ *
+ * The program is immutable; a configuration change compiles a new one.
+ */
+public class RuleProgram {
+
+	final int nrOfRulesets;
+	final boolean[] rsEnabled;
+	final int[] rsFrom;
+	final int[] rsTo;
+	final int[] rsIdeal;
+	final int[] rsFirstRule;
+	final int[] rsNrOfRules;
+
+	final int[] ruleValue;
+	final int[] ruleFirstAction;
+	final int[] ruleNrOfActions;
+
+	final int[] actDevice;
+	final int[] actOnPeriod;
+
+	final int sprayerFirstAction;
+	final int sprayerNrOfActions;
+
+	private RuleProgram(int nrOfRulesets, int nrOfRules, int nrOfActions, int sprayerFirstAction, int sprayerNrOfActions) {
+		this.nrOfRulesets = nrOfRulesets;
+		this.rsEnabled = new boolean[nrOfRulesets];
+		this.rsFrom = new int[nrOfRulesets];
+		this.rsTo = new int[nrOfRulesets];
+		this.rsIdeal = new int[nrOfRulesets];
+		this.rsFirstRule = new int[nrOfRulesets];
+		this.rsNrOfRules = new int[nrOfRulesets];
+		this.ruleValue = new int[nrOfRules];
+		this.ruleFirstAction = new int[nrOfRules];
+		this.ruleNrOfActions = new int[nrOfRules];
+		this.actDevice = new int[nrOfActions];
+		this.actOnPeriod = new int[nrOfActions];
+		this.sprayerFirstAction = sprayerFirstAction;
+		this.sprayerNrOfActions = sprayerNrOfActions;
+	}
+
+	public static RuleProgram compile(Ruleset[] rulesets, SprayerRule sprayerRule, DeviceRegistry registry) {
+		Ruleset[] rss = rulesets == null ? new Ruleset[0] : rulesets;
+		Action[] sprayerActions = (sprayerRule == null) || (sprayerRule.getActions() == null) ? new Action[0] : sprayerRule.getActions();
+		// Count the sizes first
+		int nrOfRules = 0;
+		int nrOfActions = 0;
+		for (Ruleset rs : rss) {
+			if ((rs != null) && (rs.getRules() != null)) {
+				for (Rule r : rs.getRules()) {
+					nrOfRules++;
+					nrOfActions += r.getActions() == null ? 0 : r.getActions().length;
+				}
+			}
+		}
+		RuleProgram p = new RuleProgram(rss.length, nrOfRules, nrOfActions + sprayerActions.length, nrOfActions, sprayerActions.length);
+		int rn = 0;
+		int an = 0;
+		for (int i = 0; i < rss.length; i++) {
+			Ruleset rs = rss[i];
+			p.rsFirstRule[i] = rn;
+			p.rsFrom[i] = -1;
+			p.rsTo[i] = -1;
+			if (rs == null) {
+				continue;
+			}
+			p.rsEnabled[i] = (rs.getActive() != null) && rs.getActive().equalsIgnoreCase("yes");
+			p.rsIdeal[i] = rs.getTemp_ideal();
+			if (p.rsEnabled[i]) {
+				p.rsFrom[i] = toMinutes(rs.getFrom());
+				p.rsTo[i] = toMinutes(rs.getTo());
+			}
+			if (rs.getRules() != null) {
+				for (Rule r : rs.getRules()) {
+					p.ruleValue[rn] = r.getValue();
+					p.ruleFirstAction[rn] = an;
+					if (r.getActions() != null) {
+						for (Action a : r.getActions()) {
+							p.actDevice[an] = registry.handle(a.getDevice());
+							p.actOnPeriod[an] = a.getOn_period();
+							an++;
+						}
+					}
+					p.ruleNrOfActions[rn] = an - p.ruleFirstAction[rn];
+					rn++;
+				}
+			}
+			p.rsNrOfRules[i] = rn - p.rsFirstRule[i];
+		}
+		for (Action a : sprayerActions) {
+			p.actDevice[an] = registry.handle(a.getDevice());
+			p.actOnPeriod[an] = a.getOn_period();
+			an++;
+		}
+		return p;
+	}
+
+	/**
+	 * @return true if the ruleset is active and the given minute of the day is within its from/to window
+	 */
+	boolean inWindow(int rs, int minuteOfDay) {
+		return this.rsEnabled[rs] && (this.rsFrom[rs] >= 0) && (this.rsTo[rs] >= 0)
+				&& (minuteOfDay >= this.rsFrom[rs]) && (minuteOfDay <= this.rsTo[rs]);
+	}
+
+	private static int toMinutes(String hhmm) {
+		if (hhmm == null) {
+			return -1;
+		}
+		String[] parts = hhmm.split(":");
+		if (parts.length < 2) {
+			return -1;
+		}
+		try {
+			return (Integer.parseInt(parts[0]) * 60) + Integer.parseInt(parts[1]);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+}
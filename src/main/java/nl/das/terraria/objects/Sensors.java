@@ -28,11 +28,18 @@ public class Sensors {
 	@SuppressWarnings("unused")
 	private String clock;
 	private Sensor[] sensors = new Sensor[2];
+
+	/** The minimum time between two reads of the sensors; within it the values of the last read are used */
+	public static final long MIN_READ_INTERVAL_MS = DHT22.MIN_MILLISECS_BETWEEN_READS;
+
+	// The sensors are connected once and shared by all enclosures; they are only read with the lock of this class
 	// Initialize the W1 bus (connected on GPIO 7)
-	@JsonbTransient private W1Master w1Master = new W1Master();
+	private static final W1Master w1Master = new W1Master();
 	// Initialize the Temperature sensor
-	@JsonbTransient private DS18B20 terrarium = new DS18B20(this.w1Master);
-	@JsonbTransient private DHT22 room = new DHT22(RaspiPin.GPIO_27);
+	private static final DS18B20 terrarium = new DS18B20(w1Master);
+	private static final DHT22 room = new DHT22(RaspiPin.GPIO_27);
+	private static long lastRead = -1L;
+	private static int[] lastValues;
 
 	public Sensors() {
 		this.clock = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-y HH:mm"));
@@ -40,11 +47,37 @@ public class Sensors {
 		this.sensors[1] = new Sensor("terrarium", 0, 0);
 	}
 
+	/**
+	 * Read the sensors, one thread at a time and not more often than once per MIN_READ_INTERVAL_MS,
+	 * as the bit-banged reads on the shared pins disturb each other.
+	 *
+	 * @return room temperature, room humidity and terrarium temperature
+	 */
+	public static synchronized int[] readHardware() {
+		long now = System.currentTimeMillis();
+		if ((lastValues == null) || ((now - lastRead) >= MIN_READ_INTERVAL_MS)) {
+			lastValues = new int[] {
+				(int) Math.round(room.getTemperature()),
+				(int) Math.round(room.getHumidity()),
+				(int) Math.round(terrarium.getTemperature())
+			};
+			lastRead = now;
+		}
+		return lastValues.clone();
+	}
+
 	public void readSensorValues() {
+		setSensorValues(readHardware());
+	}
+
+	/**
+	 * Set the values of a read of the sensors (see readHardware()).
+	 */
+	public void setSensorValues(int[] values) {
 		this.clock = LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd-MM-y HH:mm"));
-		this.sensors[0].setTemperature((int) Math.round(this.room.getTemperature()));
-		this.sensors[0].setHumidity((int) Math.round(this.room.getHumidity()));
-		this.sensors[1].setTemperature((int) Math.round(this.terrarium.getTemperature()));
+		this.sensors[0].setTemperature(values[0]);
+		this.sensors[0].setHumidity(values[1]);
+		this.sensors[1].setTemperature(values[2]);
 	}
 
 	@JsonbTransient
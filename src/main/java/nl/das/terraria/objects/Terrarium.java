@@ -10,14 +10,19 @@
 package nl.das.terraria.objects;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.json.bind.Jsonb;
 import javax.json.bind.JsonbBuilder;
@@ -30,6 +35,11 @@ import com.pi4j.io.gpio.Pin;
 import com.pi4j.io.gpio.PinState;
 import com.pi4j.io.gpio.RaspiPin;
 
+import nl.das.terraria.ConfigJournal;
+import nl.das.terraria.LifecycleStore;
+import nl.das.terraria.SensorSeries;
+import nl.das.terraria.SettingsStore;
+import nl.das.terraria.TemperatureRollups;
 import nl.das.terraria.Util;
 
 /**
@@ -58,8 +68,10 @@ public class Terrarium {
 	private static Logger log = LoggerFactory.getLogger(Terrarium.class);
 
 	private static DateTimeFormatter dtfmt = DateTimeFormatter.ofPattern("HH:mm:ss");
+	private static final Jsonb settingsJsonb = JsonbBuilder.create(new JsonbConfig().withFormatting(true).withNullValues(true));
+	// One line per record of the journal
+	private static final Jsonb recordJsonb = JsonbBuilder.create(new JsonbConfig().withNullValues(true));
 
-	public static int NR_OF_DEVICES = 11;
 	public static final int NR_OF_RULESETS = 2;
 	public static final int NR_OF_RULES = 2;
 	public static final int NR_OF_ACTIONS_PER_RULE = 2;
@@ -67,27 +79,74 @@ public class Terrarium {
 	public static final int ONPERIOD_ENDLESS = -1;
 	public static final int ONPERIOD_UNTIL_IDEAL = -2;
 	public static final int ONPERIOD_OFF = 0;
+	public static final int DEFAULT_ENCLOSURE = 1;
+	public static final Map<String, Pin> DEFAULT_DEVICE_PINS;
 	public static int maxNrOfTraceDays = 30;
 
-	public static TerrariumConfig cfg = new TerrariumConfig();
-	private static Map<String, Pin> devicePin;
+	private static Map<Integer, Terrarium> enclosures = new ConcurrentHashMap<>();
+
+	/**
+	 * Gets notified when a device is switched and when a rule switches on a device,
+	 * e.g. to collect statistics. The device is given by its handle.
+	 * Also gets notified when a sensor read gives other values and when tracing is switched.
+	 * The methods are called while holding the lock of the terrarium, so they must be quick.
+	 */
+	public interface Observer {
+		default void deviceOn(int device) { }
+		default void deviceOff(int device) { }
+		default void ruleFired(int device) { }
+		default void sensorsChanged() { }
+		default void traceChanged(boolean on) { }
+	}
+
+	private int id = DEFAULT_ENCLOSURE;
+	private TerrariumConfig cfg;
+	private int nrOfDevices;
+	private Map<String, Pin> devicePin = DEFAULT_DEVICE_PINS;
 	private boolean sprayerRuleActive = false;
 	private long sprayerRuleDelayEndtime;
-	private static Device[] devices = new Device[NR_OF_DEVICES];
-	private static DeviceState[] devStates = new DeviceState[NR_OF_DEVICES];
+	private Device[] devices;
+	private DeviceState[] devStates;
+	// Raised on every change of the state (see getState(long)); starts at the start time so a
+	// version of before a restart is always older
+	private long stateVersion = System.currentTimeMillis();
+	private long[] deviceVersion;
 	private boolean test = false;
 	private Sensors sensors = new Sensors();
 	private LocalDateTime now;
 	private boolean traceOn = false;
 	private long traceStartTime;
-	private static int[] ruleActiveForDevice;
+	private int[] ruleActiveForDevice;
 	private boolean fan_in_state = false;
 	private boolean fan_out_state = false;
-	private static Terrarium instance = null;
-
-	public static String traceFolder = "tracefiles";
-	public static String traceStateFilename;
-	public static String traceTempFilename;
+	private TimerEngine timerEngine = new TimerEngine();
+	private DeadlineQueue deadlines = new DeadlineQueue();
+	private DeviceRegistry registry;
+	private RuleProgram rules;
+	private Observer observer;
+	private final List<Observer> observers = new CopyOnWriteArrayList<>();
+	private int hMist;
+	private int hFanIn;
+	private int hFanOut;
+	private int hSprayer;
+
+	// The state at the start of the current transaction, null if there is none
+	private String txSettings;
+	private DeviceState[] txStates;
+	private int[] txRuleActive;
+	private boolean txSettingsChanged;
+	private boolean txLifecycleChanged;
+	private List<String[]> txRecords;
+	private ConfigJournal journal;
+	private LifecycleStore lifecycle;
+	private SensorSeries series;
+	private TemperatureRollups rollups;
+
+	private String settingsFile = "settings.json";
+	private String lifecycleFile = "lifecycle.txt";
+	private String traceFolder = "tracefiles";
+	private String traceStateFilename;
+	private String traceTempFilename;
 
 	static {
         Map<String, Pin> aMap = new HashMap<>();
@@ -102,36 +161,132 @@ public class Terrarium {
         aMap.put("mist",    RaspiPin.GPIO_23);
         aMap.put("fan_in",  RaspiPin.GPIO_24);
         aMap.put("fan_out", RaspiPin.GPIO_25);
-        devicePin = Collections.unmodifiableMap(aMap);
+        DEFAULT_DEVICE_PINS = Collections.unmodifiableMap(aMap);
     };
 
+	/**
+	 * An enclosure with the default device list and no timers, rulesets or sprayer rule yet (see init()).
+	 */
 	public Terrarium() {
+		this(defaultConfig());
+	}
+
+	public Terrarium(TerrariumConfig cfg) {
+		this.cfg = cfg;
+		this.nrOfDevices = cfg.getDeviceList().length;
+		this.devices = new Device[this.nrOfDevices];
+		this.devStates = new DeviceState[this.nrOfDevices];
+		this.deviceVersion = new long[this.nrOfDevices];
+		this.ruleActiveForDevice = new int[this.nrOfDevices];
+		for (int i = 0; i < this.nrOfDevices; i++) {
+			this.ruleActiveForDevice[i] = -1;
+		}
+		resolveDevices();
+		if (cfg.getTimers() != null) {
+			this.timerEngine.rebuild(cfg.getTimers());
+		}
+	}
+
+	private static TerrariumConfig defaultConfig() {
+		TerrariumConfig cfg = new TerrariumConfig();
 		String[] deviceList   = {"light1", "light2", "light3", "light4", "uvlight", "light6", "pump", "sprayer", "mist", "fan_in", "fan_out"};
 		int[] timersPerDevice = {1,         1,        1,        1,        1,         1,        3,      5,         3,      3,        3       };
-		Terrarium.cfg.setDeviceList(deviceList);
-		Terrarium.cfg.setTimersPerDevice(timersPerDevice);
-		Terrarium.cfg.setRulesets(new Ruleset[NR_OF_RULESETS]);
+		cfg.setDeviceList(deviceList);
+		cfg.setTimersPerDevice(timersPerDevice);
+		cfg.setRulesets(new Ruleset[NR_OF_RULESETS]);
+		return cfg;
 	}
 
+	public static Terrarium fromJson(String json) {
+		return new Terrarium(settingsJsonb.fromJson(json, TerrariumConfig.class));
+	}
+
+	/**
+	 * @return the default enclosure, created with the default device list if there is none yet
+	 */
 	public static Terrarium getInstance() {
-		if (instance == null) {
-			instance = new Terrarium();
-		}
-		return instance;
+		return enclosures.computeIfAbsent(DEFAULT_ENCLOSURE, id -> new Terrarium());
 	}
 
+	/**
+	 * Replace the default enclosure by one with the given settings.
+	 */
 	public static Terrarium getInstance(String json) {
-		instance = new Terrarium();
-		Jsonb jsonb = JsonbBuilder.create();
-		cfg = jsonb.fromJson(json, TerrariumConfig.class);
-		NR_OF_DEVICES = Terrarium.cfg.getDeviceList().length;
-		devices = new Device[NR_OF_DEVICES];
-		devStates = new DeviceState[NR_OF_DEVICES];
-		ruleActiveForDevice = new int[NR_OF_DEVICES];
-		for (int i = 0; i < NR_OF_DEVICES; i++) {
-			ruleActiveForDevice[i] = -1;
+		Terrarium t = fromJson(json);
+		register(DEFAULT_ENCLOSURE, t);
+		return t;
+	}
+
+	/**
+	 * @return the enclosure with the given id or null if there is none
+	 */
+	public static Terrarium getInstance(int id) {
+		return enclosures.get(id);
+	}
+
+	public static void register(int id, Terrarium t) {
+		t.id = id;
+		enclosures.put(id, t);
+	}
+
+	public static Set<Integer> getEnclosureIds() {
+		return new TreeSet<>(enclosures.keySet());
+	}
+
+	public int getId() {
+		return this.id;
+	}
+
+	public TerrariumConfig getConfig() {
+		return this.cfg;
+	}
+
+	public String getSettingsFile() {
+		return this.settingsFile;
+	}
+
+	public void setSettingsFile(String settingsFile) {
+		if (this.journal != null) {
+			this.journal.close();
+			this.journal = null;
 		}
-		return instance;
+		this.settingsFile = settingsFile;
+	}
+
+	public String getLifecycleFile() {
+		return this.lifecycleFile;
+	}
+
+	public void setLifecycleFile(String lifecycleFile) {
+		if (this.lifecycle != null) {
+			this.lifecycle.close();
+			this.lifecycle = null;
+		}
+		this.lifecycleFile = lifecycleFile;
+	}
+
+	public String getTraceFolder() {
+		return this.traceFolder;
+	}
+
+	public void setTraceFolder(String traceFolder) {
+		if (this.series != null) {
+			this.series.close();
+			this.series = null;
+		}
+		if (this.rollups != null) {
+			this.rollups.close();
+			this.rollups = null;
+		}
+		this.traceFolder = traceFolder;
+	}
+
+	public String getTraceStateFilename() {
+		return this.traceStateFilename;
+	}
+
+	public String getTraceTempFilename() {
+		return this.traceTempFilename;
 	}
 
 	/******************************** Special methods ******************************************/
@@ -144,79 +299,125 @@ public class Terrarium {
 		return this.now;
 	}
 
+	/**
+	 * Replace the observer that has been set before (null to remove it).
+	 */
+	public void setObserver(Observer observer) {
+		if (this.observer != null) {
+			this.observers.remove(this.observer);
+		}
+		this.observer = observer;
+		if (observer != null) {
+			this.observers.add(observer);
+		}
+	}
+
+	/**
+	 * Add an observer next to the others, e.g. for a client that has subscribed to the changes.
+	 */
+	public void addObserver(Observer observer) {
+		this.observers.add(observer);
+	}
+
+	public void removeObserver(Observer observer) {
+		this.observers.remove(observer);
+	}
+
 	public void init() {
 		// Count total number of timers
 		int nrOfTimers = 0;
-		for (int i : Terrarium.cfg.getTimersPerDevice()) {
+		for (int i : this.cfg.getTimersPerDevice()) {
 			nrOfTimers += i;
 		}
-		Terrarium.cfg.setTimers(new Timer[nrOfTimers]);
+		this.cfg.setTimers(new Timer[nrOfTimers]);
 		// Initialize Timers
 		int timerIndex = 0;
-		for (int i = 0; i < NR_OF_DEVICES; i++) {
-			for (int dix = 0; dix < Terrarium.cfg.getTimersPerDevice()[i]; dix++) {
-				Terrarium.cfg.setTimer(timerIndex, new Timer(Terrarium.cfg.getDeviceList()[i], dix + 1, "00:00", "00:00", 0, 0));
+		for (int i = 0; i < this.nrOfDevices; i++) {
+			for (int dix = 0; dix < this.cfg.getTimersPerDevice()[i]; dix++) {
+				this.cfg.setTimer(timerIndex, new Timer(this.cfg.getDeviceList()[i], dix + 1, "00:00", "00:00", 0, 0));
 				timerIndex++;
 			}
 		}
 		// Initialize rulesets
-		Terrarium.cfg.setRuleset(0, new Ruleset(1, "no", "", "", 0,
+		this.cfg.setRuleset(0, new Ruleset(1, "no", "", "", 0,
 			new Rule[] {
 				new Rule(0, new Action[] { new Action("no device", 0), new Action("no device", 0) }),
 				new Rule(0, new Action[] { new Action("no device", 0), new Action("no device", 0) })
 			}
 		));
-		Terrarium.cfg.setRuleset(1, new Ruleset(1, "no", "", "", 0,
+		this.cfg.setRuleset(1, new Ruleset(1, "no", "", "", 0,
 			new Rule[] {
 				new Rule(0, new Action[] { new Action("no device", 0), new Action("no device", 0) }),
 				new Rule(0, new Action[] { new Action("no device", 0), new Action("no device", 0) })
 			}
 		));
 		// Initialize sprayerrule
-		Terrarium.cfg.setSprayerRule(new SprayerRule(0, new Action[] {
+		this.cfg.setSprayerRule(new SprayerRule(0, new Action[] {
 				new Action("no device", 0),
 				new Action("no device", 0),
 				new Action("no device", 0),
 				new Action("no device", 0)
 			}
 		));
+		resolveDevices();
+		this.timerEngine.rebuild(this.cfg.getTimers());
 		saveSettings();
 	}
 
+	/**
+	 * Build the device registry from the configuration, resolve the device names
+	 * of all timers to device handles and compile the rulesets and sprayer rule.
+	 */
+	private void resolveDevices() {
+		this.registry = new DeviceRegistry(this.cfg.getDeviceList());
+		this.hMist = this.registry.handle("mist");
+		this.hFanIn = this.registry.handle("fan_in");
+		this.hFanOut = this.registry.handle("fan_out");
+		this.hSprayer = this.registry.handle("sprayer");
+		if (this.cfg.getTimers() != null) {
+			for (Timer t : this.cfg.getTimers()) {
+				resolve(t);
+			}
+		}
+		compileRules();
+	}
+
+	private void compileRules() {
+		this.rules = RuleProgram.compile(this.cfg.getRulesets(), this.cfg.getSprayerRule(), this.registry);
+	}
+
+	private void resolve(Timer t) {
+		if (t != null) {
+			t.setHandle(this.registry.handle(t.getDevice()));
+		}
+	}
+
 	public void initDevices() {
 		// Initialize devices
-		for (int i = 0; i < Terrarium.cfg.getDeviceList().length; i++) {
-			if (Terrarium.cfg.getDeviceList()[i].equalsIgnoreCase("uvlight")) {
-				Terrarium.devices[i] = new Device(Terrarium.cfg.getDeviceList()[i], devicePin.get(Terrarium.cfg.getDeviceList()[i]), PinState.LOW, true);
+		for (int i = 0; i < this.cfg.getDeviceList().length; i++) {
+			if (this.cfg.getDeviceList()[i].equalsIgnoreCase("uvlight")) {
+				this.devices[i] = new Device(this.cfg.getDeviceList()[i], this.devicePin.get(this.cfg.getDeviceList()[i]), PinState.LOW, true);
 			} else {
-				Terrarium.devices[i] = new Device(Terrarium.cfg.getDeviceList()[i], devicePin.get(Terrarium.cfg.getDeviceList()[i]), PinState.LOW);
+				this.devices[i] = new Device(this.cfg.getDeviceList()[i], this.devicePin.get(this.cfg.getDeviceList()[i]), PinState.LOW);
 			}
 		}
 	}
 
 	public void initMockDevices() {
 		// Initialize devices
-		Terrarium.devices[ 0] = new Device(Terrarium.cfg.getDeviceList()[ 0], false);
-		Terrarium.devices[ 1] = new Device(Terrarium.cfg.getDeviceList()[ 1], false);
-		Terrarium.devices[ 2] = new Device(Terrarium.cfg.getDeviceList()[ 2], false);
-		Terrarium.devices[ 3] = new Device(Terrarium.cfg.getDeviceList()[ 3], false);
-		Terrarium.devices[ 4] = new Device(Terrarium.cfg.getDeviceList()[ 4], true);
-		Terrarium.devices[ 5] = new Device(Terrarium.cfg.getDeviceList()[ 5], false);
-		Terrarium.devices[ 6] = new Device(Terrarium.cfg.getDeviceList()[ 6], false);
-		Terrarium.devices[ 7] = new Device(Terrarium.cfg.getDeviceList()[ 7], false);
-		Terrarium.devices[ 8] = new Device(Terrarium.cfg.getDeviceList()[ 8], false);
-		Terrarium.devices[ 9] = new Device(Terrarium.cfg.getDeviceList()[ 9], false);
-		Terrarium.devices[10] = new Device(Terrarium.cfg.getDeviceList()[10], false);
+		for (int i = 0; i < this.cfg.getDeviceList().length; i++) {
+			this.devices[i] = new Device(this.cfg.getDeviceList()[i], this.cfg.getDeviceList()[i].equalsIgnoreCase("uvlight"));
+		}
 	}
 
 	public String getProperties() {
 		String json = "";
-		json += "{\"tcu\":\"TERRARIUMPI\",\"nr_of_timers\":" + Terrarium.cfg.getTimers().length + ",\"nr_of_programs\":" + NR_OF_RULESETS + ",";
+		json += "{\"tcu\":\"TERRARIUMPI\",\"nr_of_timers\":" + this.cfg.getTimers().length + ",\"nr_of_programs\":" + NR_OF_RULESETS + ",";
 		json += "\"devices\": [";
-		for (int i = 0; i < NR_OF_DEVICES; i++) {
-			json += "{\"device\":\"" + Terrarium.devices[i].getName() + "\", \"nr_of_timers\":" + Terrarium.cfg.getTimersPerDevice()[i] + ", \"lc_counted\":";
-			json += (Terrarium.devices[i].hasLifetime() ? "true}" : "false}");
-			if (i != (NR_OF_DEVICES - 1)) {
+		for (int i = 0; i < this.nrOfDevices; i++) {
+			json += "{\"device\":\"" + this.devices[i].getName() + "\", \"nr_of_timers\":" + this.cfg.getTimersPerDevice()[i] + ", \"lc_counted\":";
+			json += (this.devices[i].hasLifetime() ? "true}" : "false}");
+			if (i != (this.nrOfDevices - 1)) {
 				json += ",";
 			}
 		}
@@ -224,33 +425,231 @@ public class Terrarium {
 		return json;
 	}
 
+	/**
+	 * Save all settings: they are written as a new snapshot in the background and the journal starts empty
+	 * (see ConfigJournal).
+	 */
 	public void saveSettings() {
-		Jsonb jsonb = JsonbBuilder.create(new JsonbConfig().withFormatting(true).withNullValues(true));
+		if (this.txSettings != null) {
+			this.txSettingsChanged = true;
+			return;
+		}
 		try {
-			Files.deleteIfExists(Paths.get("settings.json"));
-			Files.writeString(Paths.get("settings.json"), jsonb.toJson(Terrarium.cfg), StandardOpenOption.CREATE_NEW);
+			journal().compact(settingsJsonb.toJson(this.cfg));
 		} catch (IOException e) {
 			e.printStackTrace();
+			SettingsStore.save(this.settingsFile, settingsJsonb.toJson(this.cfg));
+		}
+	}
+
+	/**
+	 * Save the change of these timers (see replaceTimers) as a record of the journal.
+	 */
+	public void saveTimers(Timer[] tmrs) {
+		saveChange("timers", recordJsonb.toJson(tmrs));
+	}
+
+	/**
+	 * Save the change of ruleset nr (1 or 2) as a record of the journal.
+	 */
+	public void saveRuleset(int nr) {
+		saveChange("ruleset" + nr, recordJsonb.toJson(getRuleset(nr)));
+	}
+
+	/**
+	 * Save the change of the sprayer rule as a record of the journal.
+	 */
+	public void saveSprayerRule() {
+		saveChange("sprayerRule", recordJsonb.toJson(this.cfg.getSprayerRule()));
+	}
+
+	private void saveChange(String op, String json) {
+		if (this.txSettings != null) {
+			this.txRecords.add(new String[] { op, json });
+			return;
+		}
+		saveChanges(List.of(new String[][] { { op, json } }));
+	}
+
+	private void saveChanges(List<String[]> records) {
+		try {
+			journal().append(records, () -> settingsJsonb.toJson(this.cfg));
+		} catch (IOException e) {
+			e.printStackTrace();
+			// Then all settings
+			saveSettings();
+		}
+	}
+
+	/**
+	 * Apply the changes of the journal to the settings that have been read from the settings file.
+	 */
+	public void replayJournal() throws IOException {
+		journal().replay((op, json) -> {
+			if (op.equals("timers")) {
+				replaceTimers(recordJsonb.fromJson(json, Timer[].class));
+			} else if (op.startsWith("ruleset")) {
+				replaceRuleset(Integer.parseInt(op.substring("ruleset".length())), recordJsonb.fromJson(json, Ruleset.class));
+			} else if (op.equals("sprayerRule")) {
+				setSprayerRule(recordJsonb.fromJson(json, SprayerRule.class));
+			} else {
+				log.warn("Unknown journal record '{}' ignored", op);
+			}
+		});
+	}
+
+	private ConfigJournal journal() {
+		if (this.journal == null) {
+			this.journal = new ConfigJournal(this.settingsFile);
+		}
+		return this.journal;
+	}
+
+	/**
+	 * @return the store of the lifecycle counters of the devices with a lifetime, opened on first use
+	 */
+	private LifecycleStore lifecycle() throws IOException {
+		if (this.lifecycle == null) {
+			Map<String, Integer> counters = new LinkedHashMap<>();
+			for (int i = 0; i < this.nrOfDevices; i++) {
+				if (this.devices[i].hasLifetime()) {
+					counters.put(this.devices[i].getName(), this.devStates[i].getLifetime());
+				}
+			}
+			this.lifecycle = LifecycleStore.open(this.lifecycleFile, counters);
 		}
+		return this.lifecycle;
 	}
 
+	/**
+	 * Set the lifecycle counters of the devices to those in the lifecycle file.
+	 */
+	public void loadLifecycleCounters() throws IOException {
+		LifecycleStore store = lifecycle();
+		for (int i = 0; i < this.nrOfDevices; i++) {
+			if (this.devices[i].hasLifetime()) {
+				this.devStates[i].setLifetime(store.get(this.devices[i].getName()));
+				stateChanged(i);
+			}
+		}
+	}
+
+	/**
+	 * Save the lifecycle counters that have changed; each is written in place in the lifecycle file (see LifecycleStore).
+	 */
 	public void saveLifecycleCounters() {
+		if (this.txSettings != null) {
+			this.txLifecycleChanged = true;
+			return;
+		}
 		try {
-			String json = "";
-			Files.deleteIfExists(Paths.get("lifecycle.txt"));
-			for (int i = 0; i < NR_OF_DEVICES; i++) {
-				if (Terrarium.devices[i].hasLifetime()) {
-					json += Terrarium.devices[i].getName() + "=" + Terrarium.devStates[i].getLifetime() + "\n";
+			LifecycleStore store = lifecycle();
+			for (int i = 0; i < this.nrOfDevices; i++) {
+				if (this.devices[i].hasLifetime()) {
+					store.set(this.devices[i].getName(), this.devStates[i].getLifetime());
 				}
 			}
-			Files.writeString(Paths.get("lifecycle.txt"), json, StandardOpenOption.CREATE_NEW);
+		} catch (IOException e) {
+			System.err.println(Util.getDateTimeString() + "Could not write " + this.lifecycleFile + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Write the settings with the changes in the journal as snapshot and wait until they are written.
+	 * During a transaction only what has been saved before it is written.
+	 */
+	public void flushSettings() {
+		try {
+			if ((this.txSettings == null) && journal().hasChanges()) {
+				journal().compact(settingsJsonb.toJson(this.cfg));
+			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		journal().awaitCompaction();
+		SettingsStore.flush(this.settingsFile);
+	}
+
+	/**
+	 * Start a group of changes that is applied as a whole.
+	 * Until commit() the settings and lifecycle counters are not saved, and rollback() undoes
+	 * the changes of the timers, rulesets, sprayer rule, device states and rule control of the devices made since.
+	 * The sensors and the trace are not part of it.
+	 * The lock of the terrarium must be held until commit() or rollback().
+	 */
+	public void beginTransaction() {
+		if (this.txSettings != null) {
+			throw new IllegalStateException("Terrarium " + this.id + " already has a transaction.");
+		}
+		this.txSettings = settingsJsonb.toJson(this.cfg);
+		this.txStates = new DeviceState[this.nrOfDevices];
+		for (int i = 0; i < this.nrOfDevices; i++) {
+			DeviceState ds = this.devStates[i];
+			this.txStates[i] = new DeviceState(ds.getName());
+			this.txStates[i].setOnPeriod(ds.getOnPeriod());
+			this.txStates[i].setLifetime(ds.getLifetime());
+			this.txStates[i].setManual(ds.isManual());
+		}
+		this.txRuleActive = this.ruleActiveForDevice.clone();
+		this.txSettingsChanged = false;
+		this.txLifecycleChanged = false;
+		this.txRecords = new ArrayList<>();
+	}
+
+	/**
+	 * End the transaction and save what has changed, once.
+	 */
+	public void commit() {
+		boolean settings = this.txSettingsChanged;
+		boolean lifecycle = this.txLifecycleChanged;
+		List<String[]> records = this.txRecords;
+		this.txSettings = null;
+		this.txStates = null;
+		this.txRuleActive = null;
+		this.txRecords = null;
+		if (settings) {
+			saveSettings();
+		} else if (!records.isEmpty()) {
+			saveChanges(records);
+		}
+		if (lifecycle) {
+			saveLifecycleCounters();
+		}
+	}
+
+	/**
+	 * End the transaction and restore the state of its start.
+	 * Devices that have been switched are switched back.
+	 */
+	public void rollback() {
+		TerrariumConfig old = settingsJsonb.fromJson(this.txSettings, TerrariumConfig.class);
+		replaceTimers(old.getTimers());
+		for (int i = 0; i < old.getRulesets().length; i++) {
+			replaceRuleset(i + 1, old.getRulesets()[i]);
+		}
+		setSprayerRule(old.getSprayerRule());
+		for (int i = 0; i < this.nrOfDevices; i++) {
+			DeviceState ds = this.txStates[i];
+			if (ds.getOnPeriod() != this.devStates[i].getOnPeriod()) {
+				if (ds.getOnPeriod() == ONPERIOD_OFF) {
+					setDeviceOff(i);
+				} else {
+					setDeviceOn(i, ds.getOnPeriod());
+				}
+			}
+			this.devStates[i].setManual(ds.isManual());
+			this.devStates[i].setLifetime(ds.getLifetime());
+			stateChanged(i);
+		}
+		System.arraycopy(this.txRuleActive, 0, this.ruleActiveForDevice, 0, this.nrOfDevices);
+		this.txSettings = null;
+		this.txStates = null;
+		this.txRuleActive = null;
+		this.txRecords = null;
 	}
 
 	public void setLifecycleCounter(String device, int value) {
-		Terrarium.devStates[getDeviceIndex(device)].setLifetime(value);
+		setDeviceLifecycle(device, value);
 		saveLifecycleCounters();
 	}
 
@@ -258,17 +657,44 @@ public class Terrarium {
 		if (on) {
 			this.traceOn = on;
 			this.traceStartTime = Util.now(this.now);
-			traceStateFilename = Util.createStateTraceFile(traceFolder, this.now);
-			traceTempFilename  = Util.createTemperatureTraceFile(traceFolder, this.now);
-			Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "start");
-			Util.traceTemperature(traceFolder + "/" + traceTempFilename, this.now, "start");
-			for (String d : Terrarium.cfg.getDeviceList()) {
-				Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "%s %s", d, isDeviceOn(d) ? "1" : "0");
+			this.traceStateFilename = Util.createStateTraceFile(this.traceFolder, this.now);
+			this.traceTempFilename  = Util.createTemperatureTraceFile(this.traceFolder, this.now);
+			traceState("start");
+			traceTemperature("start");
+			for (int i = 0; i < this.nrOfDevices; i++) {
+				traceState("%s %s", this.registry.name(i), isDeviceOn(i) ? "1" : "0");
 			}
 		} else if (this.traceOn) {
-			Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "stop");
-			Util.traceTemperature(traceFolder + "/" + traceTempFilename, this.now, "stop");
+			traceState("stop");
+			traceTemperature("stop");
 			this.traceOn = on;
+			// Get the lines of this trace on disk and release the files
+			Util.closeTrace(this.traceFolder + "/" + this.traceStateFilename);
+			Util.closeTrace(this.traceFolder + "/" + this.traceTempFilename);
+		} else {
+			return;
+		}
+		this.stateVersion++;
+		for (Observer o : this.observers) {
+			o.traceChanged(on);
+		}
+	}
+
+	/**
+	 * Write a line to the state tracefile of this enclosure if tracing is on.
+	 */
+	public void traceState(String fmt, Object ...args) {
+		if (this.traceOn) {
+			Util.traceState(this.traceFolder + "/" + this.traceStateFilename, this.now, fmt, args);
+		}
+	}
+
+	/**
+	 * Write a line to the temperature tracefile of this enclosure if tracing is on.
+	 */
+	public void traceTemperature(String fmt, Object ...args) {
+		if (this.traceOn) {
+			Util.traceTemperature(this.traceFolder + "/" + this.traceTempFilename, this.now, fmt, args);
 		}
 	}
 
@@ -294,27 +720,109 @@ public class Terrarium {
 
 	public void readSensorValues() {
 		if (!this.test) {
+			int[] before = sensorValues();
 			this.sensors.readSensorValues();
+			sensorsRead(before);
 		}
 	}
 
-	public Sensors getSensors() {
+	/**
+	 * Use the values of a read of the sensors that has been done for all enclosures (see Sensors.readHardware()).
+	 */
+	public void readSensorValues(int[] values) {
 		if (!this.test) {
-			this.sensors.readSensorValues();
+			int[] before = sensorValues();
+			this.sensors.setSensorValues(values);
+			sensorsRead(before);
 		}
+	}
+
+	public Sensors getSensors() {
+		readSensorValues();
+		return this.sensors;
+	}
+
+	/**
+	 * @return the sensors with the values of the last read, without reading them again
+	 */
+	public Sensors getLastSensorValues() {
 		return this.sensors;
 	}
 
 	public void setSensors(int troom, int tterrarium) {
+		int[] before = sensorValues();
 		this.test = true;
 		this.sensors.getSensors()[0].setTemperature(troom);
 		this.sensors.getSensors()[1].setTemperature(tterrarium);
+		sensorsRead(before);
+	}
+
+	private int[] sensorValues() {
+		Sensors.Sensor[] s = this.sensors.getSensors();
+		return new int[] { s[0].getTemperature(), s[0].getHumidity(), s[1].getTemperature(), s[1].getHumidity() };
+	}
+
+	private void sensorsRead(int[] before) {
+		if (!this.observers.isEmpty() && !Arrays.equals(before, sensorValues())) {
+			for (Observer o : this.observers) {
+				o.sensorsChanged();
+			}
+		}
 	}
 
 	public void setTestOff () {
 		this.test = false;
 	}
 
+	/**
+	 * @return the history of the sensor values in the trace folder
+	 */
+	public SensorSeries getSensorSeries() {
+		if (this.series == null) {
+			this.series = new SensorSeries(this.traceFolder);
+		}
+		return this.series;
+	}
+
+	/**
+	 * @return the hourly and daily temperature rollups in the trace folder, opened on first use
+	 */
+	public TemperatureRollups getTemperatureRollups() throws IOException {
+		if (this.rollups == null) {
+			this.rollups = TemperatureRollups.open(this.traceFolder + "/rollups");
+		}
+		return this.rollups;
+	}
+
+	/**
+	 * @return the ideal temperature of the first enabled ruleset that is active now, or TemperatureRollups.NO_IDEAL
+	 */
+	public int getIdealTemperature() {
+		int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
+		for (int rs = 0; rs < this.rules.nrOfRulesets; rs++) {
+			if (this.rules.inWindow(rs, curMinutes)) {
+				return this.rules.rsIdeal[rs];
+			}
+		}
+		return TemperatureRollups.NO_IDEAL;
+	}
+
+	/**
+	 * Append the values of the last sensor read to the history and the temperature rollups, also when tracing is off.
+	 */
+	public void recordSensors() {
+		try {
+			getSensorSeries().append(this.now, sensorValues());
+		} catch (IOException e) {
+			System.err.println(Util.getDateTimeString() + "Could not record the sensor values: " + e.getMessage());
+		}
+		try {
+			getTemperatureRollups().add(this.now, getRoomTemperature(), getTerrariumTemperature(), getIdealTemperature());
+		} catch (IOException e) {
+			System.err.println(Util.getDateTimeString() + "Could not update the temperature rollups: " + e.getMessage());
+		}
+	}
+
 	public int getRoomTemperature() {
 		return this.sensors.getSensors()[0].getTemperature();
 	}
@@ -329,12 +837,12 @@ public class Terrarium {
 	public Timer[] getTimersForDevice (String device) {
 		Timer[] tmrs;
 		if (device == "") {
-			tmrs = Terrarium.cfg.getTimers();
+			tmrs = this.cfg.getTimers();
 		} else {
-			int nr = Terrarium.cfg.getTimersPerDevice()[getDeviceIndex(device)];
+			int nr = this.cfg.getTimersPerDevice()[getDeviceIndex(device)];
 			tmrs = new Timer[nr];
 			int i = 0;
-			for (Timer t : Terrarium.cfg.getTimers()) {
+			for (Timer t : this.cfg.getTimers()) {
 				if (t.getDevice().equalsIgnoreCase(device)) {
 					tmrs[i] = t;
 					i++;
@@ -344,19 +852,23 @@ public class Terrarium {
 		return tmrs;
 	}
 
+	/**
+	 * Replace the timers with the same device and index.
+	 * Only the events of the replaced timers are recompiled.
+	 */
 	public void replaceTimers(Timer[] tmrs) {
 		for (Timer tnew : tmrs) {
-			for (int i = 0; i < Terrarium.cfg.getTimers().length; i++) {
-				Timer told = Terrarium.cfg.getTimers()[i];
-				if (told.getDevice().equalsIgnoreCase(tnew.getDevice()) && (told.getIndex() == tnew.getIndex())) {
-					Terrarium.cfg.setTimer(i, tnew);
-				}
+			int slot = this.timerEngine.getSlot(tnew.getDevice(), tnew.getIndex());
+			if (slot >= 0) {
+				resolve(tnew);
+				this.cfg.setTimer(slot, tnew);
+				this.timerEngine.update(slot, tnew);
 			}
 		}
 	}
 
 	public void initTimers(LocalDateTime now) {
-		for (Timer t : Terrarium.cfg.getTimers()) {
+		for (Timer t : this.cfg.getTimers()) {
 			int timerMinutesOn = (t.getHour_on() * 60) + t.getMinute_on();
 			int timerMinutesOff = (t.getHour_off() * 60) + t.getMinute_off();
 			int curMinutes = (now.getHour() * 60) + now.getMinute();
@@ -369,6 +881,7 @@ public class Terrarium {
 	/**
 	 * Check the timers if a device needs to be switched on or off.
 	 * These need to be executed every minute.
+	 * Only the timer events that are due in the current minute are executed.
 	 *
 	 * A device can be switched on by a rule. If its is and it should now be switched on
 	 * because of a timer then the rule should not interfere, so the rule should be
@@ -376,112 +889,137 @@ public class Terrarium {
 	 * Then the rule should be activated again.
 	 */
 	public void checkTimers() {
-		for (Timer t : Terrarium.cfg.getTimers()) {
-			if (t.getRepeat() != 0) { // Timer is not active
-				if (t.getPeriod() == 0) { // Timer has an on and off
-					int timerMinutesOn = (t.getHour_on() * 60) + t.getMinute_on();
-					int timerMinutesOff = (t.getHour_off() * 60) + t.getMinute_off();
-					int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
-					if (curMinutes == timerMinutesOn) {
-						if (!isDeviceOn(t.getDevice())) {
-							setDeviceOn(t.getDevice(), -1L);
-							if (t.getDevice().equalsIgnoreCase("mist")) {
-								this.fan_in_state = isDeviceOn("fan_in");
-								setDeviceOff("fan_in");
-								this.fan_out_state = isDeviceOn("fan_out");
-								setDeviceOff("fan_out");
-								// and deactivate the rules for fan_in and fan_out and switch them off
-								setRuleActive("fan_in", 0);
-								setRuleActive("fan_out", 0);
-							} else if (t.getDevice().equalsIgnoreCase("fan_in")) {
-								setRuleActive("fan_in", 0);
-								setRuleActive("fan_out", 0);
-							} else if (t.getDevice().equalsIgnoreCase("fan_out")) {
-								setRuleActive("fan_in", 0);
-								setRuleActive("fan_out", 0);
-							}
-						}
-					} else if ((timerMinutesOff != 0) && (curMinutes == timerMinutesOff)) {
-						if (t.getDevice().equalsIgnoreCase("mist")) {
-							setDeviceOff(t.getDevice());
-							if (this.fan_in_state) {
-								setDeviceOn("fan_in", -1L);
-								this.fan_in_state = false;
-							}
-							if (this.fan_out_state) {
-								setDeviceOn("fan_out", -1L);
-								this.fan_out_state = false;
-							}
-						} else {
-							setDeviceOff(t.getDevice());
-						}
-						// Make the rules of all relevant devices active again
-						for (int i = 0; i < Terrarium.ruleActiveForDevice.length; i++) {
-							if (getRuleActive(Terrarium.devices[i].getName()) == 0) {
-								setRuleActive(Terrarium.devices[i].getName(), 1);
-							}
-						}
-					}
-				} else { // Timer has an on and period
-					int timerMinutesOn = (t.getHour_on() * 60) + t.getMinute_on();
-					int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
-					long endtime = Util.now(this.now) + t.getPeriod();
-					if (curMinutes == timerMinutesOn) {
-						if (!isDeviceOn(t.getDevice())) {
-							setDeviceOn(t.getDevice(), endtime);
-						}
-						if (t.getDevice().equalsIgnoreCase("sprayer")) {
-							// If device is "sprayer" then activate sprayer rule
-							this.sprayerRuleActive = true;
-							// Set sprayerRuleDelayEndtime = start time in minutes + delay in minutes
-							this.sprayerRuleDelayEndtime = (t.getHour_on() * 60) + t.getMinute_on();
-							this.sprayerRuleDelayEndtime += Terrarium.cfg.getSprayerRule().getDelay();
-							// and deactivate the rules for fan_in and fan_out and switch them off
-							setRuleActive("fan_in", 0);
-							setDeviceOff("fan_in");
-							setRuleActive("fan_out", 0);
-							setDeviceOff("fan_out");
-						}
-					}
-				}
+		int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
+		for (int ev : this.timerEngine.getEvents(curMinutes)) {
+			Timer t = this.cfg.getTimers()[TimerEngine.slot(ev)];
+			if (TimerEngine.type(ev) == TimerEngine.EVENT_OFF) {
+				timerOff(t);
+			} else if (t.getPeriod() == 0) {
+				timerOn(t);
+			} else {
+				timerOnForPeriod(t);
 			}
 		}
 	}
 
+	/**
+	 * @return the first minute of the day at or after the given minute at which a timer fires, or -1 if none
+	 */
+	public int nextTimerEvent(int minuteOfDay) {
+		return this.timerEngine.nextEventMinute(minuteOfDay);
+	}
+
+	private void timerOn(Timer t) {
+		int h = t.getHandle();
+		if ((h != DeviceRegistry.NO_DEVICE) && !isDeviceOn(h)) {
+			setDeviceOn(h, -1L);
+			if (h == this.hMist) {
+				this.fan_in_state = isDeviceOn(this.hFanIn);
+				setDeviceOff(this.hFanIn);
+				this.fan_out_state = isDeviceOn(this.hFanOut);
+				setDeviceOff(this.hFanOut);
+				// and deactivate the rules for fan_in and fan_out and switch them off
+				setRuleActive(this.hFanIn, 0);
+				setRuleActive(this.hFanOut, 0);
+			} else if (h == this.hFanIn) {
+				setRuleActive(this.hFanIn, 0);
+				setRuleActive(this.hFanOut, 0);
+			} else if (h == this.hFanOut) {
+				setRuleActive(this.hFanIn, 0);
+				setRuleActive(this.hFanOut, 0);
+			}
+		}
+	}
+
+	private void timerOff(Timer t) {
+		int h = t.getHandle();
+		if (h == DeviceRegistry.NO_DEVICE) {
+			return;
+		}
+		if (h == this.hMist) {
+			setDeviceOff(h);
+			if (this.fan_in_state) {
+				setDeviceOn(this.hFanIn, -1L);
+				this.fan_in_state = false;
+			}
+			if (this.fan_out_state) {
+				setDeviceOn(this.hFanOut, -1L);
+				this.fan_out_state = false;
+			}
+		} else {
+			setDeviceOff(h);
+		}
+		// Make the rules of all relevant devices active again
+		reactivateRules();
+	}
+
+	private void timerOnForPeriod(Timer t) {
+		int h = t.getHandle();
+		if (h == DeviceRegistry.NO_DEVICE) {
+			return;
+		}
+		long endtime = Util.now(this.now) + t.getPeriod();
+		if (!isDeviceOn(h)) {
+			setDeviceOn(h, endtime);
+		}
+		if (h == this.hSprayer) {
+			// If device is "sprayer" then activate sprayer rule
+			this.sprayerRuleActive = true;
+			// Set sprayerRuleDelayEndtime = start time in minutes + delay in minutes
+			this.sprayerRuleDelayEndtime = (t.getHour_on() * 60) + t.getMinute_on();
+			this.sprayerRuleDelayEndtime += this.cfg.getSprayerRule().getDelay();
+			// and deactivate the rules for fan_in and fan_out and switch them off
+			setRuleActive(this.hFanIn, 0);
+			setDeviceOff(this.hFanIn);
+			setRuleActive(this.hFanOut, 0);
+			setDeviceOff(this.hFanOut);
+		}
+	}
+
 	/**************************************************** Ruleset ******************************************************/
 
 	public Ruleset getRuleset(int nr) {
-		return Terrarium.cfg.getRulesets()[nr - 1];
+		return this.cfg.getRulesets()[nr - 1];
 	}
 
 	public void replaceRuleset(int nr, Ruleset ruleset) {
-		Terrarium.cfg.setRuleset(nr - 1, ruleset);
+		this.cfg.setRuleset(nr - 1, ruleset);
+		compileRules();
 	}
 
 	public int getRuleActive(String device) {
-		return Terrarium.ruleActiveForDevice[getDeviceIndex(device)];
+		return getRuleActive(getDeviceIndex(device));
+	}
+
+	public int getRuleActive(int device) {
+		return this.ruleActiveForDevice[device];
 	}
 
 	public void setRuleActive(String device, int value) {
-		Terrarium.ruleActiveForDevice[getDeviceIndex(device)] = value;
+		setRuleActive(getDeviceIndex(device), value);
+	}
+
+	public void setRuleActive(int device, int value) {
+		this.ruleActiveForDevice[device] = value;
 	}
 
 	public void initRules() {
 		// Register device as being under control of a rule
-		for (Ruleset rs : Terrarium.cfg.getRulesets()) {
-			if (rs.getActive().equalsIgnoreCase("yes")) {
-				for (Rule r : rs.getRules()) {
-					for (Action a : r.getActions()) {
-						if (!a.getDevice().equalsIgnoreCase("no device")) {
-							setRuleActive(a.getDevice(), 1);
+		RuleProgram p = this.rules;
+		for (int rs = 0; rs < p.nrOfRulesets; rs++) {
+			if (p.rsEnabled[rs]) {
+				for (int r = p.rsFirstRule[rs]; r < (p.rsFirstRule[rs] + p.rsNrOfRules[rs]); r++) {
+					for (int a = p.ruleFirstAction[r]; a < (p.ruleFirstAction[r] + p.ruleNrOfActions[r]); a++) {
+						if (p.actDevice[a] != DeviceRegistry.NO_DEVICE) {
+							setRuleActive(p.actDevice[a], 1);
 						}
 					}
 				}
 			}
 		}
-		for (Action a : Terrarium.cfg.getSprayerRule().getActions()) {
-			if (!a.getDevice().equalsIgnoreCase("no device")) {
-				setRuleActive(a.getDevice(), 1);
+		for (int a = p.sprayerFirstAction; a < (p.sprayerFirstAction + p.sprayerNrOfActions); a++) {
+			if (p.actDevice[a] != DeviceRegistry.NO_DEVICE) {
+				setRuleActive(p.actDevice[a], 1);
 			}
 		}
 	}
@@ -492,39 +1030,40 @@ public class Terrarium {
 	 */
 	public void checkRules() {
 		if (!isSprayerRuleActive()) {
-			for (Ruleset rs : Terrarium.cfg.getRulesets()) {
-				if (rs.active(this.now)) {
-					//
-					for (Rule r : rs.getRules()) {
-						if ((r.getValue() < 0) && (getTerrariumTemperature() < -r.getValue())) {
-							for (Action a : r.getActions()) {
-								executeAction(a);
+			RuleProgram p = this.rules;
+			int curMinutes = (this.now.getHour() * 60) + this.now.getMinute();
+			int tterr = getTerrariumTemperature();
+			for (int rs = 0; rs < p.nrOfRulesets; rs++) {
+				int lastRule = p.rsFirstRule[rs] + p.rsNrOfRules[rs];
+				if (p.inWindow(rs, curMinutes)) {
+					for (int r = p.rsFirstRule[rs]; r < lastRule; r++) {
+						int value = p.ruleValue[r];
+						int firstAction = p.ruleFirstAction[r];
+						int lastAction = firstAction + p.ruleNrOfActions[r];
+						if ((value < 0) && (tterr < -value)) {
+							for (int a = firstAction; a < lastAction; a++) {
+								executeAction(p.actDevice[a], p.actOnPeriod[a]);
 							}
-						} else if ((r.getValue() < 0) && (getTerrariumTemperature() >= rs.getTemp_ideal())) {
-							for (Action a : r.getActions()) {
-								if (!a.getDevice().equalsIgnoreCase("no device") && isDeviceOn(a.getDevice()) && (getRuleActive(a.getDevice()) == 1)
-										&& (Terrarium.devStates[getDeviceIndex(a.getDevice())].getOnPeriod() != -1L)) {
-									setDeviceOff(a.getDevice());
-								}
+						} else if ((value < 0) && (tterr >= p.rsIdeal[rs])) {
+							for (int a = firstAction; a < lastAction; a++) {
+								switchOffByRule(p.actDevice[a]);
 							}
-						} else if ((r.getValue() > 0) && (getTerrariumTemperature() > r.getValue())) {
-							for (Action a : r.getActions()) {
-								executeAction(a);
+						} else if ((value > 0) && (tterr > value)) {
+							for (int a = firstAction; a < lastAction; a++) {
+								executeAction(p.actDevice[a], p.actOnPeriod[a]);
 							}
-						} else if ((r.getValue() > 0) && (getTerrariumTemperature() <= rs.getTemp_ideal())) {
-							for (Action a : r.getActions()) {
-								if (!a.getDevice().equalsIgnoreCase("no device") && isDeviceOn(a.getDevice()) && (getRuleActive(a.getDevice()) == 1)
-										&& (Terrarium.devStates[getDeviceIndex(a.getDevice())].getOnPeriod() != -1L)) {
-									setDeviceOff(a.getDevice());
-								}
+						} else if ((value > 0) && (tterr <= p.rsIdeal[rs])) {
+							for (int a = firstAction; a < lastAction; a++) {
+								switchOffByRule(p.actDevice[a]);
 							}
 						}
 					}
-				} else if (rs.getActive().equalsIgnoreCase("yes")) {
-					for (Rule r : rs.getRules()) {
-						for (Action a : r.getActions()) {
-							if (!a.getDevice().equalsIgnoreCase("no device") && isDeviceOn(a.getDevice()) && (getRuleActive(a.getDevice()) == 1)) {
-								setDeviceOff(a.getDevice());
+				} else if (p.rsEnabled[rs]) {
+					for (int r = p.rsFirstRule[rs]; r < lastRule; r++) {
+						for (int a = p.ruleFirstAction[r]; a < (p.ruleFirstAction[r] + p.ruleNrOfActions[r]); a++) {
+							int h = p.actDevice[a];
+							if ((h != DeviceRegistry.NO_DEVICE) && isDeviceOn(h) && (getRuleActive(h) == 1)) {
+								setDeviceOff(h);
 							}
 						}
 					}
@@ -533,27 +1072,41 @@ public class Terrarium {
 		}
 	}
 
-	private void executeAction(Action a) {
-		if (!a.getDevice().equalsIgnoreCase("no device") && ((getRuleActive(a.getDevice()) == 1) || isSprayerRuleActive())) {
+	/**
+	 * Switch off a device that has been switched on by a rule, unless it is on endlessly.
+	 */
+	private void switchOffByRule(int h) {
+		if ((h != DeviceRegistry.NO_DEVICE) && isDeviceOn(h) && (getRuleActive(h) == 1)
+				&& (this.devStates[h].getOnPeriod() != -1L)) {
+			setDeviceOff(h);
+		}
+	}
+
+	private void executeAction(int h, int onPeriod) {
+		if ((h != DeviceRegistry.NO_DEVICE) && ((getRuleActive(h) == 1) || isSprayerRuleActive())) {
 			long endtime = 0;
-			if (a.getOn_period() > 0) {
+			if (onPeriod > 0) {
 				// onPeriod is seconds (max 3600)
-				endtime = Util.now(this.now) + a.getOn_period();
+				endtime = Util.now(this.now) + onPeriod;
 			} else {
-				endtime = a.getOn_period();
+				endtime = onPeriod;
 			}
-			if (!isDeviceOn(a.getDevice())) {
-				setDeviceOn(a.getDevice(), endtime);
+			if (!isDeviceOn(h)) {
+				setDeviceOn(h, endtime);
+				for (Observer o : this.observers) {
+					o.ruleFired(h);
+				}
 			}
 		}
 	}
 
 	public SprayerRule getSprayerRule () {
-		return Terrarium.cfg.getSprayerRule();
+		return this.cfg.getSprayerRule();
 	}
 
 	public void setSprayerRule (SprayerRule sprayerRule) {
-		Terrarium.cfg.setSprayerRule(sprayerRule);
+		this.cfg.setSprayerRule(sprayerRule);
+		compileRules();
 	}
 
 	/**
@@ -564,10 +1117,9 @@ public class Terrarium {
 		if (this.sprayerRuleActive) {
 			int curminutes = (this.now.getHour() * 60) + this.now.getMinute();
 			if (curminutes == this.sprayerRuleDelayEndtime) {
-				for (Action a : Terrarium.cfg.getSprayerRule().getActions()) {
-					if (!a.getDevice().equalsIgnoreCase("no device")) {
-						executeAction(a);
-					}
+				RuleProgram p = this.rules;
+				for (int a = p.sprayerFirstAction; a < (p.sprayerFirstAction + p.sprayerNrOfActions); a++) {
+					executeAction(p.actDevice[a], p.actOnPeriod[a]);
 				}
 				this.sprayerRuleActive = false;
 			}
@@ -582,13 +1134,19 @@ public class Terrarium {
 
 	public void initDeviceState() {
 		// Initialize device states
-		for (int i = 0; i< NR_OF_DEVICES; i++) {
-			Terrarium.devStates[i] = new DeviceState(Terrarium.cfg.getDeviceList()[i]);
+		for (int i = 0; i< this.nrOfDevices; i++) {
+			this.devStates[i] = new DeviceState(this.cfg.getDeviceList()[i]);
+			stateChanged(i);
 		}
+		this.deadlines.clear();
 	}
 
 	public boolean isDeviceOn(String device) {
-		return Terrarium.devStates[getDeviceIndex(device)].getOnPeriod() != 0L;
+		return isDeviceOn(getDeviceIndex(device));
+	}
+
+	public boolean isDeviceOn(int device) {
+		return this.devStates[device].getOnPeriod() != 0L;
 	}
 
 	/**
@@ -596,111 +1154,174 @@ public class Terrarium {
 	 * @param endtime in Epoch seconds or -1 or -2
 	 */
 	public void setDeviceOn(String device, long endtime) {
-		Terrarium.devices[getDeviceIndex(device)].switchOn();
-		Terrarium.devStates[getDeviceIndex(device)].setOnPeriod(endtime);
+		setDeviceOn(getDeviceIndex(device), endtime);
+	}
+
+	/**
+	 * @param device handle of the device
+	 * @param endtime in Epoch seconds or -1 or -2
+	 */
+	public void setDeviceOn(int device, long endtime) {
+		this.devices[device].switchOn();
+		this.devStates[device].setOnPeriod(endtime);
+		stateChanged(device);
+		for (Observer o : this.observers) {
+			o.deviceOn(device);
+		}
 		if (endtime > 0L) {
+			this.deadlines.add(endtime, device);
 			String dt = Util.ofEpochSecond(endtime).format(dtfmt);
-			Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "%s 1 %s", device, dt);
+			traceState("%s 1 %s", this.registry.name(device), dt);
 		} else {
-			Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "%s 1 %d", device, endtime);
+			traceState("%s 1 %d", this.registry.name(device), endtime);
 		}
 	}
 
 	public void setDeviceOff(String device) {
-		Terrarium.devices[getDeviceIndex(device)].switchOff();
-		Terrarium.devStates[getDeviceIndex(device)].setOnPeriod(ONPERIOD_OFF);
-		Util.traceState(traceFolder + "/" + traceStateFilename, this.now, "%s 0", device);
+		setDeviceOff(getDeviceIndex(device));
+	}
+
+	public void setDeviceOff(int device) {
+		this.devices[device].switchOff();
+		this.devStates[device].setOnPeriod(ONPERIOD_OFF);
+		stateChanged(device);
+		for (Observer o : this.observers) {
+			o.deviceOff(device);
+		}
+		traceState("%s 0", this.registry.name(device));
 	}
 
 	public void setDeviceManualOn(String device) {
-		Terrarium.devStates[getDeviceIndex(device)].setManual(true);
+		int ix = getDeviceIndex(device);
+		this.devStates[ix].setManual(true);
+		stateChanged(ix);
 	}
 
 	public void setDeviceManualOff(String device) {
-		Terrarium.devStates[getDeviceIndex(device)].setManual(false);
+		int ix = getDeviceIndex(device);
+		this.devStates[ix].setManual(false);
+		stateChanged(ix);
 	}
 
 	public void setDeviceLifecycle(String device, int value) {
-		Terrarium.devStates[getDeviceIndex(device)].setLifetime(value);
+		int ix = getDeviceIndex(device);
+		this.devStates[ix].setLifetime(value);
+		stateChanged(ix);
 	}
 
 	public void decreaseLifetime(int nrOfHours) {
-		for (Device d : Terrarium.devices) {
-			if (d.hasLifetime()) {
-				Terrarium.devStates[getDeviceIndex(d.getName())].decreaseLifetime(nrOfHours);
-				saveLifecycleCounters();
+		for (int i = 0; i < this.nrOfDevices; i++) {
+			if (this.devices[i].hasLifetime()) {
+				this.devStates[i].decreaseLifetime(nrOfHours);
+				stateChanged(i);
 			}
 		}
+		saveLifecycleCounters();
 	}
 
+	private void stateChanged(int device) {
+		this.deviceVersion[device] = ++this.stateVersion;
+	}
+
+	/**
+	 * @return the version of the state, raised on every change of a device state or the trace
+	 */
+	public long getStateVersion() {
+		return this.stateVersion;
+	}
+
+	/**
+	 * @return the trace and the state of all devices, with the version of the state
+	 */
 	public String getState() {
-		String json = "{\"trace\":\"" +  (this.traceOn ? "on" : "off") + "\",\"state\": [";
-		for (int i = 0; i < NR_OF_DEVICES; i++) {
-			json += Terrarium.devStates[i].toJson();
-			if (i != (NR_OF_DEVICES - 1)) {
-				json += ",";
+		return getState(-1L);
+	}
+
+	/**
+	 * @param since a version given by an earlier getState, or -1 for the full state
+	 * @return the trace and the devices whose state has changed after that version, with the new version.
+	 *         When since is newer than the current version (e.g. of another terrarium) all devices are given.
+	 */
+	public String getState(long since) {
+		if (since > this.stateVersion) {
+			since = -1L;
+		}
+		StringBuilder json = new StringBuilder(64 + (this.nrOfDevices * 100));
+		json.append("{\"version\":").append(this.stateVersion).append(",\"trace\":\"").append(this.traceOn ? "on" : "off").append("\",\"state\": [");
+		boolean first = true;
+		for (int i = 0; i < this.nrOfDevices; i++) {
+			if (this.deviceVersion[i] > since) {
+				if (!first) {
+					json.append(',');
+				}
+				json.append(this.devStates[i].toJson());
+				first = false;
 			}
 		}
-		json += "]}";
-		return json;
+		json.append("]}");
+		return json.toString();
 	}
 
 	public int getDeviceIndex(String device) {
-		int ix = -1;
-		for (int i = 0; i < NR_OF_DEVICES; i++) {
-			if (Terrarium.cfg.getDeviceList()[i].equalsIgnoreCase(device)) {
-				ix = i;
-				break;
-			}
-		}
-		return ix;
+		return this.registry.handle(device);
 	}
 
 	/**
 	 * Check if a device needs to be switched off when it has a onPeriod > 0
 	 * This check needs to be done every second since the onPeriod is defined in Epoch-seconds.
+	 * Only the devices whose end time has passed are taken from the deadline queue.
+	 * Entries of devices that have been switched off or got another end time in the meantime are skipped.
 	 */
 	public void checkDevices() {
-		for (DeviceState d : Terrarium.devStates) {
-			if (d.getOnPeriod() > 0) {
-				// Device has an end time defined
-				if (Util.now(this.now) >= d.getOnPeriod()) {
-					setDeviceOff(d.getName());
-					if (!isSprayerRuleActive()) {
-						// Make the rules of all relevant devices active again
-						for (int i = 0; i < Terrarium.ruleActiveForDevice.length; i++) {
-							if (getRuleActive(Terrarium.devices[i].getName()) == 0) {
-								setRuleActive(Terrarium.devices[i].getName(), 1);
-							}
-						}
-					}
+		long nowSeconds = Util.now(this.now);
+		while (this.deadlines.peekDeadline() <= nowSeconds) {
+			long deadline = this.deadlines.peekDeadline();
+			int ix = this.deadlines.peekDevice();
+			this.deadlines.poll();
+			if (this.devStates[ix].getOnPeriod() == deadline) {
+				setDeviceOff(ix);
+				if (!isSprayerRuleActive()) {
+					// Make the rules of all relevant devices active again
+					reactivateRules();
 				}
 			}
 		}
 	}
 
+	private void reactivateRules() {
+		for (int i = 0; i < this.ruleActiveForDevice.length; i++) {
+			if (this.ruleActiveForDevice[i] == 0) {
+				this.ruleActiveForDevice[i] = 1;
+			}
+		}
+	}
+
 	public Map<String, Pin> getDevicePin () {
-		return devicePin;
+		return this.devicePin;
 	}
 
 	public void setDevicePin (Map<String, Pin> devicePin) {
-		Terrarium.devicePin = devicePin;
+		this.devicePin = devicePin;
 	}
 
 	public Device[] getDevices () {
-		return devices;
+		return this.devices;
 	}
 
 	public void setDevices (Device[] devices) {
-		Terrarium.devices = devices;
+		this.devices = devices;
 	}
 
 	public DeviceState[] getDevStates () {
-		return devStates;
+		return this.devStates;
 	}
 
 	public void setDevStates (DeviceState[] devStates) {
-		Terrarium.devStates = devStates;
+		this.devStates = devStates;
+		this.deviceVersion = new long[devStates.length];
+		for (int i = 0; i < devStates.length; i++) {
+			stateChanged(i);
+		}
 	}
 
 
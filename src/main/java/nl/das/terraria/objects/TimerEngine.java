@@ -0,0 +1,185 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.objects;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The timers compiled into on/off events ordered by minute of the day.
+ *
+ * Every active timer (repeat != 0) gives an ON event at its on-time and,
+ * when it has no period and an off-time other than 00:00, an OFF event at its off-time.
+ * Events of the same minute are kept in timer order so they are executed
+ * in the same order as the timers appear in the configuration.
+ *
+ * An event is encoded as (timer slot << 1) | type, where the timer slot is
+ * the index of the timer in TerrariumConfig.getTimers().
+ * A device and index identify one timer; when a later timer has the same ones it is still executed,
+ * but getSlot() gives the first.
+ */
+public class TimerEngine {
+
+	private static Logger log = LoggerFactory.getLogger(TimerEngine.class);
+
+	public static final int MINUTES_PER_DAY = 1440;
+	public static final int EVENT_ON = 0;
+	public static final int EVENT_OFF = 1;
+
+	private static final int[] NO_EVENTS = new int[0];
+
+	private int[][] events = new int[MINUTES_PER_DAY][];
+	private BitSet due = new BitSet(MINUTES_PER_DAY);
+	// Per timer slot the minutes its events are registered on (-1 is none)
+	private int[] onMinute = new int[0];
+	private int[] offMinute = new int[0];
+	private Map<String, Integer> slots = new HashMap<>();
+
+	/**
+	 * Compile all timers from scratch.
+	 */
+	public void rebuild(Timer[] timers) {
+		this.events = new int[MINUTES_PER_DAY][];
+		this.due.clear();
+		this.slots.clear();
+		this.onMinute = new int[timers.length];
+		this.offMinute = new int[timers.length];
+		Arrays.fill(this.onMinute, -1);
+		Arrays.fill(this.offMinute, -1);
+		for (int slot = 0; slot < timers.length; slot++) {
+			if (timers[slot] != null) {
+				Integer first = timers[slot].getDevice() == null ? null
+						: this.slots.putIfAbsent(key(timers[slot].getDevice(), timers[slot].getIndex()), slot);
+				if (first != null) {
+					log.warn("Timer {} of device '{}' is defined more than once, timer slot {} is ignored for changes",
+							timers[slot].getIndex(), timers[slot].getDevice(), slot);
+				}
+				register(slot, timers[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Replace the events of one timer slot by the events of the given timer.
+	 */
+	public void update(int slot, Timer t) {
+		unregister(slot);
+		register(slot, t);
+	}
+
+	/**
+	 * @return the slot of the timer for the given device and index or -1 if there is none (or no device is given)
+	 */
+	public int getSlot(String device, int index) {
+		if (device == null) {
+			return -1;
+		}
+		Integer slot = this.slots.get(key(device, index));
+		return slot == null ? -1 : slot;
+	}
+
+	/**
+	 * @return the events that are due at the given minute of the day in execution order
+	 */
+	public int[] getEvents(int minuteOfDay) {
+		if ((minuteOfDay < 0) || (minuteOfDay >= MINUTES_PER_DAY) || (this.events[minuteOfDay] == null)) {
+			return NO_EVENTS;
+		}
+		return this.events[minuteOfDay];
+	}
+
+	/**
+	 * @return the first minute of the day at or after the given minute that has events,
+	 *         wrapping around midnight, or -1 if there are no events at all
+	 */
+	public int nextEventMinute(int minuteOfDay) {
+		int next = this.due.nextSetBit(minuteOfDay);
+		if (next < 0) {
+			next = this.due.nextSetBit(0);
+		}
+		return next;
+	}
+
+	public static int slot(int event) {
+		return event >>> 1;
+	}
+
+	public static int type(int event) {
+		return event & 1;
+	}
+
+	private void register(int slot, Timer t) {
+		if (t.getRepeat() == 0) { // Timer is not active
+			return;
+		}
+		int on = (t.getHour_on() * 60) + t.getMinute_on();
+		add(on, (slot << 1) | EVENT_ON);
+		this.onMinute[slot] = on;
+		if (t.getPeriod() == 0) {
+			int off = (t.getHour_off() * 60) + t.getMinute_off();
+			if ((off != 0) && (off != on)) {
+				add(off, (slot << 1) | EVENT_OFF);
+				this.offMinute[slot] = off;
+			}
+		}
+	}
+
+	private void unregister(int slot) {
+		remove(this.onMinute[slot], slot);
+		remove(this.offMinute[slot], slot);
+		this.onMinute[slot] = -1;
+		this.offMinute[slot] = -1;
+	}
+
+	private void add(int minute, int event) {
+		if ((minute < 0) || (minute >= MINUTES_PER_DAY)) {
+			return;
+		}
+		int[] cur = this.events[minute] == null ? NO_EVENTS : this.events[minute];
+		int[] upd = Arrays.copyOf(cur, cur.length + 1);
+		int i = cur.length;
+		while ((i > 0) && (upd[i - 1] > event)) {
+			upd[i] = upd[i - 1];
+			i--;
+		}
+		upd[i] = event;
+		this.events[minute] = upd;
+		this.due.set(minute);
+	}
+
+	private void remove(int minute, int slot) {
+		if ((minute < 0) || (minute >= MINUTES_PER_DAY) || (this.events[minute] == null)) {
+			return;
+		}
+		int[] cur = this.events[minute];
+		int n = 0;
+		int[] upd = new int[cur.length];
+		for (int ev : cur) {
+			if (slot(ev) != slot) {
+				upd[n++] = ev;
+			}
+		}
+		if (n == 0) {
+			this.events[minute] = null;
+			this.due.clear(minute);
+		} else {
+			this.events[minute] = Arrays.copyOf(upd, n);
+		}
+	}
+
+	private static String key(String device, int index) {
+		return device.toLowerCase() + "#" + index;
+	}
+}
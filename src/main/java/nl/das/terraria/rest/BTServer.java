@@ -9,357 +9,221 @@
 
 package nl.das.terraria.rest;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.io.StringReader;
 import java.io.StringWriter;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 
 import javax.bluetooth.DiscoveryAgent;
 import javax.bluetooth.LocalDevice;
 import javax.bluetooth.RemoteDevice;
 import javax.bluetooth.UUID;
-import javax.json.Json;
-import javax.json.JsonArray;
 import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.json.bind.Jsonb;
-import javax.json.bind.JsonbBuilder;
-import javax.json.bind.JsonbConfig;
-import javax.json.bind.JsonbException;
 import javax.microedition.io.Connector;
 import javax.microedition.io.StreamConnection;
 import javax.microedition.io.StreamConnectionNotifier;
 
 import nl.das.terraria.Util;
-import nl.das.terraria.objects.Ruleset;
-import nl.das.terraria.objects.SprayerRule;
 import nl.das.terraria.objects.Terrarium;
-import nl.das.terraria.objects.Timer;
 
 /**
+ * Serves the command protocol over Bluetooth (btspp).
  *
+ * Every client connection is a session that is served on its own thread from a pool,
+ * so several clients can be connected at the same time.
+ * The number of sessions is capped; a client that connects when all sessions are in use
+ * is disconnected right away.
+ * A command is executed while holding the lock of the terrarium, so it never runs
+ * at the same time as the control loop (or another command) of that terrarium.
  */
-public class BTServer {
+public class BTServer implements Transport {
+
+	public static final int DEFAULT_MAX_SESSIONS = 4;
 
 	private StreamConnectionNotifier scn;
-	private StreamConnection sc;
+	private final int maxSessions;
+	private final Semaphore sessions;
+	private final ExecutorService sessionPool;
+	private volatile boolean running = false;
 
 	public BTServer(String name, UUID uuid) throws IOException {
+		this(name, uuid, DEFAULT_MAX_SESSIONS);
+	}
+
+	public BTServer(String name, UUID uuid, int maxSessions) throws IOException {
 		LocalDevice.getLocalDevice().setDiscoverable(DiscoveryAgent.GIAC);
 		String url = "btspp://localhost:" + uuid.toString() + ";name=" + name + ";encrypt=false;authenticate=false";
 		// Create a server connection (a notifier)
 		this.scn = (StreamConnectionNotifier) Connector.open(url);
+		this.maxSessions = maxSessions;
+		this.sessions = new Semaphore(maxSessions);
+		this.sessionPool = Executors.newFixedThreadPool(maxSessions, r -> {
+			Thread t = new Thread(r, "bt-session");
+			t.setDaemon(true);
+			return t;
+		});
 	}
 
+	@Override
 	public void start() throws IOException {
-		while(true) {
+		this.running = true;
+		while(this.running) {
 			LocalDevice.getLocalDevice().setDiscoverable(DiscoveryAgent.GIAC);
 			// Accept a new client connection
-			this.sc = this.scn.acceptAndOpen();
-			// New client connection accepted; get a handle on it
-			RemoteDevice rd = RemoteDevice.getRemoteDevice(this.sc);
-			System.out.println(Util.getDateTimeString() + "New client connection... " + rd.getFriendlyName(false));
-			// Read input message, in this example a String
-			DataInputStream dataIn = this.sc.openDataInputStream();
-			DataOutputStream dataOut = this.sc.openDataOutputStream();
-			int chr;
-			StringBuffer sb = new StringBuffer();
-			while ((chr = dataIn.read()) != -1) {
-				if (chr == 0x03) {
-					handleCommand(sb.toString(), dataOut);
-					sb = new StringBuffer();
-				} else {
-					sb.append((char)chr);
-				}
+			StreamConnection sc;
+			try {
+				sc = this.scn.acceptAndOpen();
+			} catch (IOException e) {
+				if (!this.running) {
+					break;
+				}
+				throw e;
+			}
+			if (!this.sessions.tryAcquire()) {
+				System.out.println(Util.getDateTimeString() + "Connection refused, already " + this.maxSessions + " sessions");
+				sc.close();
+				continue;
+			}
+			try {
+				this.sessionPool.execute(() -> {
+					try {
+						// New client connection accepted; get a handle on it
+						RemoteDevice rd = RemoteDevice.getRemoteDevice(sc);
+						System.out.println(Util.getDateTimeString() + "New client connection... " + rd.getFriendlyName(false));
+						try (DataInputStream dataIn = sc.openDataInputStream(); DataOutputStream dataOut = sc.openDataOutputStream()) {
+							serve(dataIn, dataOut);
+						}
+						System.out.println(Util.getDateTimeString() + "Connection closed");
+					} catch (IOException e) {
+						System.out.println(Util.getDateTimeString() + "Connection lost: " + e.getMessage());
+					} finally {
+						try {
+							sc.close();
+						} catch (IOException e) {
+						}
+						this.sessions.release();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				this.sessions.release();
+				sc.close();
 			}
-			System.out.println(Util.getDateTimeString() + "Connection closed");
+		}
+	}
+
+	@Override
+	public void stop() {
+		this.running = false;
+		try {
+			this.scn.close();
+		} catch (IOException e) {
+		}
+		this.sessionPool.shutdownNow();
+	}
+
+	/**
+	 * Handle the commands of one session until the input is closed.
+	 * The commands are pipelined (see Pipeline): the responses are written as the commands complete,
+	 * by the writer of the session (see StreamWriter).
+	 * The events of the subscriptions of the session are written in between.
+	 */
+	public static void serve(InputStream in, OutputStream out) throws IOException {
+		StreamWriter writer = new StreamWriter(out);
+		Subscriptions subscriptions = new Subscriptions(writer::offer);
+		try {
+			Pipeline pipeline = new Pipeline(writer, subscriptions);
+			new Session().read(in, request -> {
+				writer.awaitRoom();
+				pipeline.submit(request);
+			});
+			pipeline.await();
+		} finally {
+			subscriptions.close();
+			writer.close();
 		}
 	}
 
 	/**
-	 * @param string
-	 * @throws IOException
+	 * Execute one command and write its ETX terminated response.
 	 */
 	public static void handleCommand (String command, OutputStream out) throws IOException {
-		Jsonb jsonb = JsonbBuilder.create(new JsonbConfig().withFormatting(true));
-		// Analyze command
-		Command cmd = jsonb.fromJson(command, Command.class);
+		writeJson(execute(CommandRegistry.JSONB.fromJson(command, Command.class)), out);
+	}
+
+	/**
+	 * Execute the UTF-8 encoded command in buf[off..off+len) and write its ETX terminated response.
+	 */
+	public static void handleCommand (byte[] buf, int off, int len, OutputStream out) throws IOException {
+		writeJson(execute(CommandRegistry.JSONB.fromJson(new ByteArrayInputStream(buf, off, len), Command.class)), out);
+	}
+
+	/**
+	 * Execute one command on its terrarium.
+	 *
+	 * @return the response, with an error object when the command failed
+	 */
+	public static Response execute (Command cmd) {
 		Response res = new Response(cmd.getMsgId(), cmd.getCmd());
 		try {
-			switch(cmd.getCmd()) {
-			case "getSensors": {
-				JsonReader jsonReader = Json.createReader(new StringReader(jsonb.toJson(Terrarium.getInstance().getSensors())));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "setSensors": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data received.");
-				}
-				int rt = cmd.getData().getInt("roomtemp", 0);
-				if( rt == 0) {
-					throw new CommandException("Integer parameter 'roomtemp' not found.");
-				}
-				int tt = cmd.getData().getInt("terrtemp", 0);
-				if (tt == 0) {
-					throw new CommandException("Integer parameter 'terrtemp' not found.");
-				}
-				Terrarium.getInstance().setSensors(rt, tt);
-				break;
-			}
-			case "setTestOff": {
-				Terrarium.getInstance().setTestOff();
-				break;
-			}
-			case "getState": {
-				JsonReader jsonReader = Json.createReader(new StringReader(Terrarium.getInstance().getState()));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "setDeviceOn": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				Terrarium.getInstance().setDeviceOn(prm, -1);
-				break;
-			}
-			case "setDeviceOff": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				Terrarium.getInstance().setDeviceOff(prm);
-				break;
-			}
-			case "setDeviceOnFor": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				int per = cmd.getData().getInt("period", -1);
-				if (per == -1) {
-					throw new CommandException("Integer parameter 'period' not found.");
-				}
-				if ((per <= 0) || (per > 3600)) {
-					throw new CommandException("Integer parameter 'period' must be > 0 and < 3600 seconds.");
-				}
-				Terrarium.getInstance().setDeviceOn(prm, Util.now(LocalDateTime.now()) + per);
-				break;
-			}
-			case "setDeviceManualOn": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				Terrarium.getInstance().setDeviceManualOn(prm);
-				break;
-			}
-			case "setDeviceManualOff": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				Terrarium.getInstance().setDeviceManualOff(prm);
-				break;
-			}
-			case "setLifecycleCounter": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				int hrs = cmd.getData().getInt("hours", -1);
-				if (hrs == -1) {
-					throw new CommandException("Integer parameter 'period' not found.");
-				}
-				if (hrs <= 0 ) {
-					throw new CommandException("Integer parameter 'period' must be > 0 hours.");
-				}
-				Terrarium.getInstance().setLifecycleCounter(prm, hrs);
-				break;
-			}
-			case "getProperties": {
-				JsonReader jsonReader = Json.createReader(new StringReader(Terrarium.getInstance().getProperties()));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "setTraceOn": {
-				Terrarium.getInstance().setNow(LocalDateTime.now());
-				Terrarium.getInstance().setTrace(true);
-				break;
-			}
-			case "setTraceOff": {
-				Terrarium.getInstance().setTrace(false);
-				break;
-			}
-			case "getTimersForDevice": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				String prm = cmd.getData().getString("device", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'device' not found.");
-				}
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"timers\":" + jsonb.toJson(Terrarium.getInstance().getTimersForDevice(prm)) + "}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "replaceTimers": {
-				if (cmd.getData() == null) {
-					throw new CommandException("No data found.");
-				}
-				JsonArray ja = cmd.getData().getJsonArray("timers");
-				if (ja == null) {
-					throw new CommandException("JsonArray parameter 'timers' does not contain an array of Timer objects.");
-				}
-				try {
-					Timer[] timers = jsonb.fromJson(ja.toString(), Timer[].class);
-					Terrarium.getInstance().replaceTimers(timers);
-					Terrarium.getInstance().saveSettings();
-				} catch (JsonbException e) {
-					throw new CommandException("JsonArray parameter 'timers' does not contain an array of Timer json objects.");
-				}
-				break;
-			}
-			case "getRuleset": {
-				int prm = cmd.getData().getInt("rulesetnr", 0);
-				if( prm == 0) {
-					throw new CommandException("Integer parameter 'rulesetnr' not found.");
-				}
-				JsonReader jsonReader = Json.createReader(new StringReader(jsonb.toJson(Terrarium.getInstance().getRuleset(prm))));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "saveRuleset": {
-				JsonObject obj = cmd.getData().get("ruleset").asJsonObject();
-				if (obj == null) {
-					throw new CommandException("JsonObject parameter 'ruleset' not found.");
-				}
-				int prm = cmd.getData().getInt("rulesetnr", 0);
-				if( prm == 0) {
-					throw new CommandException("Integer parameter 'rulesetnr' not found.");
-				}
-				Ruleset ruleset;
-				try {
-					ruleset = jsonb.fromJson(obj.toString(), Ruleset.class);
-					Terrarium.getInstance().replaceRuleset(prm, ruleset);
-					Terrarium.getInstance().saveSettings();
-				} catch (JsonbException e) {
-					throw new CommandException("JsonObject parameter 'ruleset' does not contain a Ruleset json object.");
-				}
-				break;
-			}
-			case "getSprayerRule": {
-				JsonReader jsonReader = Json.createReader(new StringReader(jsonb.toJson(Terrarium.getInstance().getSprayerRule())));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "setSprayerRule": {
-				try {
-					SprayerRule sprayerRule = jsonb.fromJson(cmd.getData().toString(), SprayerRule.class);
-					Terrarium.getInstance().setSprayerRule(sprayerRule);;
-					Terrarium.getInstance().saveSettings();
-				} catch (JsonbException e) {
-					throw new CommandException("Data does not contain a SprayerRule json object.");
-				}
-				break;
-			}
-			case "getTempTracefiles": {
-				List<String> files = new ArrayList<>();
-				files = Util.listTraceFiles(Terrarium.traceFolder, "temp_");
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"files\":" + jsonb.toJson(files) + "}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "getStateTracefiles": {
-				List<String> files = new ArrayList<>();
-				files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"files\":" + jsonb.toJson(files) + "}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "getTemperatureFile": {
-				String content = "";
-				String prm = cmd.getData().getString("fname", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'fname' not found.");
-				}
-				content = Files.readString(Paths.get(Terrarium.traceFolder + "/" + cmd.getData().getString("fname")));
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"content\":\"" + content.replace("\n", "\\n") + "\"}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			case "getStateFile": {
-				String content = "";
-				String prm = cmd.getData().getString("fname", "");
-				if( prm.length() == 0) {
-					throw new CommandException("String parameter 'fname' not found.");
-				}
-				content = Files.readString(Paths.get(Terrarium.traceFolder + "/" + cmd.getData().getString("fname")));
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"content\":\"" + content.replace("\n", "\\n") + "\"}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
-				break;
-			}
-			default:
+			Terrarium terrarium = terrarium(cmd);
+			CommandHandler handler = CommandRegistry.get(cmd.getCmd());
+			if (handler == null) {
 				throw new CommandException("Command '" + cmd.getCmd() + "' is not implemented.");
 			}
-			// Construct response
-			out.write(jsonb.toJson(res).getBytes());
-			out.write(0x03); // ETX character
-		} catch (Exception e) {
-			if (e instanceof CommandException) {
-				System.err.println(e.getMessage());
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"error\":\"" + e.getMessage() + "\"}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
+			if (CommandRegistry.getMode(cmd.getCmd()) == CommandRegistry.Mode.UNLOCKED_QUERY) {
+				res.setResponse(handler.execute(terrarium, cmd.getData()));
 			} else {
-				e.printStackTrace();
-				StringWriter sw = new StringWriter();
-				PrintWriter pw = new PrintWriter(sw);
-				e.printStackTrace(pw);
-				JsonReader jsonReader = Json.createReader(new StringReader("{\"error\":\"" + sw.toString().replace("\n", "\\n").replace("\t", "    ") + "\"}"));
-				JsonObject object = jsonReader.readObject();
-				res.setResponse(object);
+				synchronized (terrarium) {
+					res.setResponse(handler.execute(terrarium, cmd.getData()));
+				}
 			}
-			out.write(jsonb.toJson(res).getBytes());
-			out.write(0x03); // ETX character
+		} catch (CommandException e) {
+			System.err.println(e.getMessage());
+			res.setResponse(error(e.getMessage()));
+		} catch (Exception e) {
+			e.printStackTrace();
+			StringWriter sw = new StringWriter();
+			PrintWriter pw = new PrintWriter(sw);
+			e.printStackTrace(pw);
+			res.setResponse(error(sw.toString().replace("\t", "    ")));
 		}
+		return res;
 	}
-}
 
+	/**
+	 * @return the terrarium the command is meant for, the default one when it has no terrarium
+	 * @throws CommandException if the terrarium does not exist
+	 */
+	static Terrarium terrarium(Command cmd) throws CommandException {
+		int id = cmd.getTerrarium() == null ? Terrarium.DEFAULT_ENCLOSURE : cmd.getTerrarium();
+		Terrarium terrarium = Terrarium.getInstance(id);
+		if (terrarium == null) {
+			throw new CommandException("Terrarium " + id + " does not exist.");
+		}
+		return terrarium;
+	}
+
+	/**
+	 * @return the response object of a failed command
+	 */
+	public static JsonObject error(String msg) {
+		return CommandRegistry.BUILDERS.createObjectBuilder().add("error", msg).build();
+	}
+
+	/**
+	 * Write the response as ETX terminated json.
+	 */
+	public static void writeJson(Response res, OutputStream out) throws IOException {
+		out.write(CommandRegistry.JSONB.toJson(res).getBytes(StandardCharsets.UTF_8));
+		out.write(FrameDecoder.ETX);
+	}
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+/**
+ * The compact binary encoding of the command protocol: CBOR (RFC 8949).
+ *
+ * Commands and responses are CBOR maps with the same fields as their json form
+ * (msgId, cmd, terrarium, data and msgId, command, response); fields without a value are left out.
+ * The msgId is a 16 byte byte string (a text string is accepted too).
+ * Numbers without a fraction are CBOR integers, others are 64 bit floats.
+ * Every message is sent as a 4 byte big-endian length followed by the CBOR item.
+ * Only definite lengths are supported; byte strings inside data are turned into base64 text.
+ * Arrays, maps and tags may be nested MAX_DEPTH deep.
+ */
+public class CborCodec {
+
+	private static final int UNSIGNED = 0;
+	private static final int NEGATIVE = 1;
+	private static final int BYTES = 2;
+	private static final int TEXT = 3;
+	private static final int ARRAY = 4;
+	private static final int MAP = 5;
+	private static final int TAG = 6;
+	private static final int SIMPLE = 7;
+
+	private static final int FALSE = 0xF4;
+	private static final int TRUE = 0xF5;
+	private static final int NULL = 0xF6;
+	private static final int DOUBLE = 0xFB;
+
+	public static final int MAX_DEPTH = 32;
+
+	/**
+	 * Write the response as length prefixed CBOR map.
+	 */
+	public static void writeResponse(Response res, OutputStream out) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+		int n = (res.getMsgId() != null ? 1 : 0) + (res.getCommand() != null ? 1 : 0) + (res.getResponse() != null ? 1 : 0);
+		header(bos, MAP, n);
+		if (res.getMsgId() != null) {
+			text(bos, "msgId");
+			uuid(bos, res.getMsgId());
+		}
+		if (res.getCommand() != null) {
+			text(bos, "command");
+			text(bos, res.getCommand());
+		}
+		if (res.getResponse() != null) {
+			text(bos, "response");
+			value(bos, res.getResponse());
+		}
+		writeFrame(bos, out);
+	}
+
+	/**
+	 * Write the command as length prefixed CBOR map.
+	 */
+	public static void writeCommand(Command cmd, OutputStream out) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+		int n = (cmd.getMsgId() != null ? 1 : 0) + (cmd.getCmd() != null ? 1 : 0) + (cmd.getTerrarium() != null ? 1 : 0) + (cmd.getData() != null ? 1 : 0);
+		header(bos, MAP, n);
+		if (cmd.getMsgId() != null) {
+			text(bos, "msgId");
+			uuid(bos, cmd.getMsgId());
+		}
+		if (cmd.getCmd() != null) {
+			text(bos, "cmd");
+			text(bos, cmd.getCmd());
+		}
+		if (cmd.getTerrarium() != null) {
+			text(bos, "terrarium");
+			integer(bos, cmd.getTerrarium());
+		}
+		if (cmd.getData() != null) {
+			text(bos, "data");
+			value(bos, cmd.getData());
+		}
+		writeFrame(bos, out);
+	}
+
+	/**
+	 * @param buf the CBOR map of a command, without the length
+	 * @throws IllegalArgumentException if it is not a valid command
+	 */
+	public static Command readCommand(byte[] buf, int off, int len) {
+		Reader r = new Reader(buf, off, len);
+		Command cmd = new Command();
+		int n = r.expect(MAP);
+		for (int i = 0; i < n; i++) {
+			String key = r.text();
+			switch (key) {
+			case "msgId":
+				cmd.setMsgId(r.uuid());
+				break;
+			case "cmd":
+				cmd.setCmd(r.text());
+				break;
+			case "terrarium":
+				cmd.setTerrarium((int) r.integer());
+				break;
+			case "data":
+				JsonValue data = r.value();
+				if (data.getValueType() != JsonValue.ValueType.OBJECT) {
+					throw new IllegalArgumentException("The data of a command must be a map.");
+				}
+				cmd.setData(data.asJsonObject());
+				break;
+			default:
+				r.value();
+			}
+		}
+		r.end();
+		return cmd;
+	}
+
+	/**
+	 * @param buf the CBOR map of a response, without the length
+	 * @throws IllegalArgumentException if it is not a valid response
+	 */
+	public static Response readResponse(byte[] buf, int off, int len) {
+		Reader r = new Reader(buf, off, len);
+		Response res = new Response();
+		int n = r.expect(MAP);
+		for (int i = 0; i < n; i++) {
+			String key = r.text();
+			switch (key) {
+			case "msgId":
+				res.setMsgId(r.uuid());
+				break;
+			case "command":
+				res.setCommand(r.text());
+				break;
+			case "response":
+				JsonValue response = r.value();
+				if (response.getValueType() != JsonValue.ValueType.OBJECT) {
+					throw new IllegalArgumentException("The response must be a map.");
+				}
+				res.setResponse(response.asJsonObject());
+				break;
+			default:
+				r.value();
+			}
+		}
+		r.end();
+		return res;
+	}
+
+	public static byte[] encode(JsonValue value) {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		value(bos, value);
+		return bos.toByteArray();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if it is not one valid CBOR item
+	 */
+	public static JsonValue decode(byte[] buf, int off, int len) {
+		Reader r = new Reader(buf, off, len);
+		JsonValue v = r.value();
+		r.end();
+		return v;
+	}
+
+	private static void writeFrame(ByteArrayOutputStream bos, OutputStream out) throws IOException {
+		int n = bos.size();
+		out.write(new byte[] {(byte) (n >>> 24), (byte) (n >>> 16), (byte) (n >>> 8), (byte) n});
+		bos.writeTo(out);
+	}
+
+	private static void value(ByteArrayOutputStream out, JsonValue value) {
+		switch (value.getValueType()) {
+		case OBJECT:
+			JsonObject obj = value.asJsonObject();
+			header(out, MAP, obj.size());
+			for (Map.Entry<String, JsonValue> e : obj.entrySet()) {
+				text(out, e.getKey());
+				value(out, e.getValue());
+			}
+			break;
+		case ARRAY:
+			JsonArray arr = value.asJsonArray();
+			header(out, ARRAY, arr.size());
+			for (JsonValue v : arr) {
+				value(out, v);
+			}
+			break;
+		case STRING:
+			text(out, ((JsonString) value).getString());
+			break;
+		case NUMBER:
+			JsonNumber num = (JsonNumber) value;
+			if (num.isIntegral() && (num.bigIntegerValue().bitLength() < 64)) {
+				integer(out, num.longValue());
+			} else {
+				out.write(DOUBLE);
+				long bits = Double.doubleToLongBits(num.doubleValue());
+				for (int i = 56; i >= 0; i -= 8) {
+					out.write((int) (bits >>> i));
+				}
+			}
+			break;
+		case TRUE:
+			out.write(TRUE);
+			break;
+		case FALSE:
+			out.write(FALSE);
+			break;
+		default:
+			out.write(NULL);
+		}
+	}
+
+	private static void integer(ByteArrayOutputStream out, long v) {
+		if (v >= 0) {
+			header(out, UNSIGNED, v);
+		} else {
+			header(out, NEGATIVE, -1 - v);
+		}
+	}
+
+	private static void text(ByteArrayOutputStream out, String s) {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		header(out, TEXT, b.length);
+		out.write(b, 0, b.length);
+	}
+
+	private static void uuid(ByteArrayOutputStream out, UUID id) {
+		header(out, BYTES, 16);
+		byte[] b = ByteBuffer.allocate(16).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()).array();
+		out.write(b, 0, 16);
+	}
+
+	private static void header(ByteArrayOutputStream out, int major, long v) {
+		int mt = major << 5;
+		if (v < 24) {
+			out.write(mt | (int) v);
+		} else if (v < 0x100) {
+			out.write(mt | 24);
+			out.write((int) v);
+		} else if (v < 0x10000) {
+			out.write(mt | 25);
+			out.write((int) (v >>> 8));
+			out.write((int) v);
+		} else if (v < 0x100000000L) {
+			out.write(mt | 26);
+			for (int i = 24; i >= 0; i -= 8) {
+				out.write((int) (v >>> i));
+			}
+		} else {
+			out.write(mt | 27);
+			for (int i = 56; i >= 0; i -= 8) {
+				out.write((int) (v >>> i));
+			}
+		}
+	}
+
+	private static class Reader {
+		private final byte[] buf;
+		private final int end;
+		private int pos;
+
+		Reader(byte[] buf, int off, int len) {
+			this.buf = buf;
+			this.pos = off;
+			this.end = off + len;
+		}
+
+		void end() {
+			if (this.pos != this.end) {
+				throw new IllegalArgumentException("Unexpected bytes after the CBOR item.");
+			}
+		}
+
+		private int next() {
+			if (this.pos >= this.end) {
+				throw new IllegalArgumentException("Unexpected end of the CBOR item.");
+			}
+			return this.buf[this.pos++] & 0xFF;
+		}
+
+		private long argument(int info) {
+			if (info < 24) {
+				return info;
+			}
+			int n;
+			switch (info) {
+			case 24: n = 1; break;
+			case 25: n = 2; break;
+			case 26: n = 4; break;
+			case 27: n = 8; break;
+			default:
+				throw new IllegalArgumentException("Indefinite lengths are not supported.");
+			}
+			long v = 0;
+			for (int i = 0; i < n; i++) {
+				v = (v << 8) | next();
+			}
+			return v;
+		}
+
+		private int length(int info) {
+			long n = argument(info);
+			if ((n < 0) || (n > (this.end - this.pos))) {
+				throw new IllegalArgumentException("Invalid CBOR length " + n + ".");
+			}
+			return (int) n;
+		}
+
+		/**
+		 * Read the header of an item of the given major type and return its length.
+		 */
+		int expect(int major) {
+			int ib = next();
+			if ((ib >>> 5) != major) {
+				throw new IllegalArgumentException("Expected CBOR major type " + major + " but got " + (ib >>> 5) + ".");
+			}
+			return length(ib & 0x1F);
+		}
+
+		String text() {
+			int n = expect(TEXT);
+			String s = new String(this.buf, this.pos, n, StandardCharsets.UTF_8);
+			this.pos += n;
+			return s;
+		}
+
+		long integer() {
+			int ib = next();
+			long v = argument(ib & 0x1F);
+			switch (ib >>> 5) {
+			case UNSIGNED:
+				return v;
+			case NEGATIVE:
+				return -1 - v;
+			default:
+				throw new IllegalArgumentException("Expected a CBOR integer.");
+			}
+		}
+
+		UUID uuid() {
+			if (this.pos >= this.end) {
+				throw new IllegalArgumentException("Unexpected end of the CBOR item.");
+			}
+			int ib = this.buf[this.pos] & 0xFF;
+			if ((ib >>> 5) == TEXT) {
+				return UUID.fromString(text());
+			}
+			if (expect(BYTES) != 16) {
+				throw new IllegalArgumentException("A msgId must be 16 bytes.");
+			}
+			ByteBuffer bb = ByteBuffer.wrap(this.buf, this.pos, 16);
+			this.pos += 16;
+			return new UUID(bb.getLong(), bb.getLong());
+		}
+
+		JsonValue value() {
+			return value(0);
+		}
+
+		private JsonValue value(int depth) {
+			if (depth > MAX_DEPTH) {
+				throw new IllegalArgumentException("CBOR items are nested more than " + MAX_DEPTH + " deep.");
+			}
+			int ib = next();
+			int info = ib & 0x1F;
+			switch (ib >>> 5) {
+			case UNSIGNED: {
+				long v = argument(info);
+				return v < 0 ? Json.createValue(new BigInteger(Long.toUnsignedString(v))) : Json.createValue(v);
+			}
+			case NEGATIVE: {
+				long v = argument(info);
+				return v < 0 ? Json.createValue(new BigInteger(Long.toUnsignedString(v)).negate().subtract(BigInteger.ONE)) : Json.createValue(-1 - v);
+			}
+			case BYTES: {
+				int n = length(info);
+				String s = Base64.getEncoder().encodeToString(Arrays.copyOfRange(this.buf, this.pos, this.pos + n));
+				this.pos += n;
+				return Json.createValue(s);
+			}
+			case TEXT: {
+				int n = length(info);
+				String s = new String(this.buf, this.pos, n, StandardCharsets.UTF_8);
+				this.pos += n;
+				return Json.createValue(s);
+			}
+			case ARRAY: {
+				int n = length(info);
+				JsonArrayBuilder ab = CommandRegistry.BUILDERS.createArrayBuilder();
+				for (int i = 0; i < n; i++) {
+					ab.add(value(depth + 1));
+				}
+				return ab.build();
+			}
+			case MAP: {
+				int n = length(info);
+				JsonObjectBuilder ob = CommandRegistry.BUILDERS.createObjectBuilder();
+				for (int i = 0; i < n; i++) {
+					ob.add(text(), value(depth + 1));
+				}
+				return ob.build();
+			}
+			case TAG:
+				// The tags do not change the json value
+				argument(info);
+				return value(depth + 1);
+			case SIMPLE:
+				return simple(info);
+			default:
+				throw new IllegalArgumentException("Invalid CBOR major type.");
+			}
+		}
+
+		private JsonValue simple(int info) {
+			switch (info) {
+			case 20:
+				return JsonValue.FALSE;
+			case 21:
+				return JsonValue.TRUE;
+			case 22:
+			case 23:
+				return JsonValue.NULL;
+			case 25:
+				return Json.createValue((double) halfToFloat((int) argument(info)));
+			case 26:
+				return Json.createValue((double) Float.intBitsToFloat((int) argument(info)));
+			case 27:
+				return Json.createValue(Double.longBitsToDouble(argument(info)));
+			default:
+				throw new IllegalArgumentException("Unsupported CBOR simple value " + info + ".");
+			}
+		}
+
+		private static float halfToFloat(int h) {
+			int exp = (h >>> 10) & 0x1F;
+			int mant = h & 0x3FF;
+			float v;
+			if (exp == 0) {
+				v = mant * (float) Math.pow(2, -24);
+			} else if (exp == 31) {
+				v = mant == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+			} else {
+				v = (float) Math.pow(2, exp - 15) * (1 + (mant / 1024f));
+			}
+			return (h & 0x8000) != 0 ? -v : v;
+		}
+	}
+}
@@ -21,6 +21,7 @@ public class Command {
 	private UUID msgId;
 	private String cmd;
 	private JsonObject data;
+	private Integer terrarium;
 
 	public Command() { this.msgId = UUID.randomUUID(); }
 
@@ -48,4 +49,13 @@ public class Command {
 	public void setData (JsonObject data) {
 		this.data = data;
 	}
+	/**
+	 * @return the id of the enclosure the command is meant for, null means the default enclosure
+	 */
+	public Integer getTerrarium () {
+		return this.terrarium;
+	}
+	public void setTerrarium (Integer terrarium) {
+		this.terrarium = terrarium;
+	}
 }
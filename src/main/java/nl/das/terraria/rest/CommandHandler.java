@@ -0,0 +1,33 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.rest;
+
+import javax.json.JsonObject;
+
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Executes one command against a terrarium.
+ *
+ * The handler is called while holding the lock of the terrarium, unless it has been
+ * registered as CommandRegistry.Mode.UNLOCKED_QUERY.
+ * It validates its own parameters (see the helpers in CommandRegistry) and throws
+ * a CommandException with a message for the client when they are wrong.
+ */
+@FunctionalInterface
+public interface CommandHandler {
+
+	/**
+	 * @param terrarium the terrarium the command is meant for
+	 * @param data the "data" object of the command, may be null
+	 * @return the response object or null if the command has no response
+	 */
+	JsonObject execute(Terrarium terrarium, JsonObject data) throws Exception;
+}
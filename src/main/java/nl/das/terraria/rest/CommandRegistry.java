@@ -0,0 +1,488 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonReaderFactory;
+import javax.json.JsonValue;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbConfig;
+import javax.json.bind.JsonbException;
+
+import nl.das.terraria.TemperatureRollups;
+import nl.das.terraria.Util;
+import nl.das.terraria.objects.Ruleset;
+import nl.das.terraria.objects.SprayerRule;
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.objects.Timer;
+
+/**
+ * The commands of the protocol, by name.
+ *
+ * The JSON-B and JSON-P factories are created once and shared by all sessions;
+ * they are thread-safe, and creating them is much more expensive than using them.
+ * A new command only needs a register() call.
+ */
+public class CommandRegistry {
+
+	/**
+	 * How a command may be executed with respect to the other commands of its connection.
+	 */
+	public enum Mode {
+		/** Changes the terrarium: executed with its lock, after all earlier commands of the connection and before all later ones */
+		UPDATE,
+		/** Only reads the terrarium: executed with its lock, in parallel with the other queries of the connection */
+		QUERY,
+		/** Does not use the state of the terrarium (e.g. reads tracefiles): a query that is executed without its lock */
+		UNLOCKED_QUERY
+	}
+
+	private static class Entry {
+		final Mode mode;
+		final CommandHandler handler;
+
+		Entry(Mode mode, CommandHandler handler) {
+			this.mode = mode;
+			this.handler = handler;
+		}
+	}
+
+	public static final Jsonb JSONB = JsonbBuilder.create(new JsonbConfig().withFormatting(true));
+	public static final JsonReaderFactory READERS = Json.createReaderFactory(null);
+	public static final JsonBuilderFactory BUILDERS = Json.createBuilderFactory(null);
+
+	/** The maximum number of bytes of a tracefile in one getTemperatureFile/getStateFile response */
+	public static final int MAX_CHUNK_SIZE = 32768;
+
+	private static final Map<String, Entry> handlers = new ConcurrentHashMap<>();
+
+	private static DateTimeFormatter hourfmt = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+	static {
+		register("getSensors", Mode.QUERY, (t, d) -> toJsonObject(JSONB.toJson(t.getSensors())));
+		register("setSensors", (t, d) -> {
+			if (d == null) {
+				throw new CommandException("No data received.");
+			}
+			int rt = d.getInt("roomtemp", 0);
+			if (rt == 0) {
+				throw new CommandException("Integer parameter 'roomtemp' not found.");
+			}
+			int tt = d.getInt("terrtemp", 0);
+			if (tt == 0) {
+				throw new CommandException("Integer parameter 'terrtemp' not found.");
+			}
+			t.setSensors(rt, tt);
+			return null;
+		});
+		register("setTestOff", (t, d) -> {
+			t.setTestOff();
+			return null;
+		});
+		register("getState", Mode.QUERY, (t, d) -> toJsonObject(t.getState(longParam(d, "since", -1L))));
+		register("setDeviceOn", (t, d) -> {
+			t.setDeviceOn(stringParam(d, "device"), -1);
+			return null;
+		});
+		register("setDeviceOff", (t, d) -> {
+			t.setDeviceOff(stringParam(d, "device"));
+			return null;
+		});
+		register("setDeviceOnFor", (t, d) -> {
+			String device = stringParam(d, "device");
+			int per = intParam(d, "period");
+			if ((per <= 0) || (per > 3600)) {
+				throw new CommandException("Integer parameter 'period' must be > 0 and < 3600 seconds.");
+			}
+			t.setDeviceOn(device, Util.now(Util.now()) + per);
+			return null;
+		});
+		register("setDeviceManualOn", (t, d) -> {
+			t.setDeviceManualOn(stringParam(d, "device"));
+			return null;
+		});
+		register("setDeviceManualOff", (t, d) -> {
+			t.setDeviceManualOff(stringParam(d, "device"));
+			return null;
+		});
+		register("setLifecycleCounter", (t, d) -> {
+			String device = stringParam(d, "device");
+			int hrs = intParam(d, "hours");
+			if (hrs <= 0) {
+				throw new CommandException("Integer parameter 'hours' must be > 0 hours.");
+			}
+			t.setLifecycleCounter(device, hrs);
+			return null;
+		});
+		register("getProperties", Mode.QUERY, (t, d) -> toJsonObject(t.getProperties()));
+		register("setTraceOn", (t, d) -> {
+			t.setNow(Util.now());
+			t.setTrace(true);
+			return null;
+		});
+		register("setTraceOff", (t, d) -> {
+			t.setTrace(false);
+			return null;
+		});
+		register("getTimersForDevice", Mode.QUERY, (t, d) ->
+			BUILDERS.createObjectBuilder().add("timers", toJsonArray(JSONB.toJson(t.getTimersForDevice(stringParam(d, "device"))))).build());
+		register("replaceTimers", (t, d) -> {
+			JsonArray ja = data(d).getJsonArray("timers");
+			if (ja == null) {
+				throw new CommandException("JsonArray parameter 'timers' does not contain an array of Timer objects.");
+			}
+			try {
+				Timer[] timers = JSONB.fromJson(ja.toString(), Timer[].class);
+				for (int i = 0; i < timers.length; i++) {
+					if ((timers[i] == null) || (timers[i].getDevice() == null)) {
+						throw new CommandException("Timer " + (i + 1) + " of JsonArray parameter 'timers' has no device.");
+					}
+				}
+				t.replaceTimers(timers);
+				t.saveTimers(timers);
+			} catch (JsonbException e) {
+				throw new CommandException("JsonArray parameter 'timers' does not contain an array of Timer json objects.");
+			}
+			return null;
+		});
+		register("getRuleset", Mode.QUERY, (t, d) -> toJsonObject(JSONB.toJson(t.getRuleset(positiveIntParam(d, "rulesetnr")))));
+		register("saveRuleset", (t, d) -> {
+			JsonObject obj = data(d).getJsonObject("ruleset");
+			if (obj == null) {
+				throw new CommandException("JsonObject parameter 'ruleset' not found.");
+			}
+			int nr = positiveIntParam(d, "rulesetnr");
+			try {
+				t.replaceRuleset(nr, JSONB.fromJson(obj.toString(), Ruleset.class));
+				t.saveRuleset(nr);
+			} catch (JsonbException e) {
+				throw new CommandException("JsonObject parameter 'ruleset' does not contain a Ruleset json object.");
+			}
+			return null;
+		});
+		register("getSprayerRule", Mode.QUERY, (t, d) -> toJsonObject(JSONB.toJson(t.getSprayerRule())));
+		register("setSprayerRule", (t, d) -> {
+			try {
+				t.setSprayerRule(JSONB.fromJson(data(d).toString(), SprayerRule.class));
+				t.saveSprayerRule();
+			} catch (JsonbException e) {
+				throw new CommandException("Data does not contain a SprayerRule json object.");
+			}
+			return null;
+		});
+		register("getTempTracefiles", Mode.UNLOCKED_QUERY, (t, d) -> fileList(Util.listTraceFiles(t.getTraceFolder(), "temp_")));
+		register("getStateTracefiles", Mode.UNLOCKED_QUERY, (t, d) -> fileList(Util.listTraceFiles(t.getTraceFolder(), "state_")));
+		register("getTemperatureFile", Mode.UNLOCKED_QUERY, CommandRegistry::getFile);
+		register("getStateFile", Mode.UNLOCKED_QUERY, CommandRegistry::getFile);
+		register("getTemperatureHistory", Mode.QUERY, CommandRegistry::getTemperatureHistory);
+		register("batch", CommandRegistry::batch);
+	}
+
+	/**
+	 * Get the content of the tracefile data.fname.
+	 *
+	 * Without data.offset and data.length the whole file is given as {"content":"..."}.
+	 * Otherwise a part of at most length (default and max MAX_CHUNK_SIZE) bytes from offset
+	 * is read, ending at a line end when the file does not end before it:
+	 * {"offset":o,"length":l,"size":s,"eof":true|false,"content":"..."}.
+	 * The client asks for the next part at offset o + l, so a download that has been interrupted
+	 * is continued where it stopped, and several parts can be asked for at once (see Pipeline).
+	 * With data.compression "gzip" the content is the base64 of the gzipped part, with "compression":"gzip".
+	 */
+	private static JsonObject getFile(Terrarium t, JsonObject d) throws Exception {
+		String fname = stringParam(d, "fname");
+		Path folder = Paths.get(t.getTraceFolder()).toAbsolutePath().normalize();
+		Path file = folder.resolve(fname).normalize();
+		if (!folder.equals(file.getParent())) {
+			throw new CommandException("Tracefile '" + fname + "' does not exist.");
+		}
+		Util.flushTraces();
+		if (!d.containsKey("offset") && !d.containsKey("length")) {
+			return BUILDERS.createObjectBuilder().add("content", Files.readString(file)).build();
+		}
+		long offset = longParam(d, "offset", 0L);
+		long length = longParam(d, "length", MAX_CHUNK_SIZE);
+		if ((offset < 0) || (length <= 0)) {
+			throw new CommandException("Parameters 'offset' and 'length' must be at least 0 and 1.");
+		}
+		String compression = d.getString("compression", "none");
+		if (!compression.equals("none") && !compression.equals("gzip")) {
+			throw new CommandException("String parameter 'compression' must be 'none' or 'gzip'.");
+		}
+		ByteBuffer buf;
+		long size;
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			size = ch.size();
+			buf = ByteBuffer.allocate((int) Math.max(0L, Math.min(Math.min(length, MAX_CHUNK_SIZE), size - offset)));
+			while (buf.hasRemaining() && (ch.read(buf, offset + buf.position()) >= 0)) {
+			}
+		} catch (NoSuchFileException e) {
+			throw new CommandException("Tracefile '" + fname + "' does not exist.");
+		}
+		int len = buf.position();
+		boolean eof = (offset + len) >= size;
+		if (!eof) {
+			// Whole lines, so the content is valid UTF-8 and the client can process every part on its own
+			int end = len;
+			while ((end > 0) && (buf.get(end - 1) != '\n')) {
+				end--;
+			}
+			if (end > 0) {
+				len = end;
+			}
+		}
+		JsonObjectBuilder res = BUILDERS.createObjectBuilder()
+				.add("offset", offset)
+				.add("length", len)
+				.add("size", size)
+				.add("eof", eof);
+		if (compression.equals("gzip")) {
+			ByteArrayOutputStream zipped = new ByteArrayOutputStream(len / 4);
+			try (GZIPOutputStream gz = new GZIPOutputStream(zipped)) {
+				gz.write(buf.array(), 0, len);
+			}
+			res.add("compression", compression).add("content", Base64.getEncoder().encodeToString(zipped.toByteArray()));
+		} else {
+			res.add("content", new String(buf.array(), 0, len, StandardCharsets.UTF_8));
+		}
+		return res.build();
+	}
+
+	/**
+	 * Get the temperature rollups of the last data.count hours (data.period "hour", the default, count 24)
+	 * or days (data.period "day", count 7), oldest first:
+	 * {"period":"hour","history":[{"start":"yyyy-MM-dd HH:mm","room":{"min":..,"max":..,"avg":..,"count":..},
+	 * "terrarium":{"min":..,"max":..,"avg":..,"count":..,"above":..,"below":..}},...]}.
+	 * above and below are the minutes the terrarium temperature was above or below the ideal temperature
+	 * of the active ruleset. Hours and days without samples are left out.
+	 */
+	private static JsonObject getTemperatureHistory(Terrarium t, JsonObject d) throws Exception {
+		String period = d == null ? "hour" : d.getString("period", "hour");
+		if (!period.equals("hour") && !period.equals("day")) {
+			throw new CommandException("String parameter 'period' must be 'hour' or 'day'.");
+		}
+		boolean daily = period.equals("day");
+		int max = daily ? TemperatureRollups.DAYS : TemperatureRollups.HOURS;
+		long count = longParam(d, "count", daily ? 7 : 24);
+		if ((count < 1) || (count > max)) {
+			throw new CommandException("Parameter 'count' must be at least 1 and at most " + max + ".");
+		}
+		TemperatureRollups rollups = t.getTemperatureRollups();
+		JsonArrayBuilder history = BUILDERS.createArrayBuilder();
+		for (TemperatureRollups.Rollup r : daily ? rollups.getDays(t.getNow(), (int) count) : rollups.getHours(t.getNow(), (int) count)) {
+			history.add(BUILDERS.createObjectBuilder()
+					.add("start", r.getStart().format(hourfmt))
+					.add("room", stats(r.getRoom()).build())
+					.add("terrarium", stats(r.getTerrarium())
+							.add("above", r.getTerrarium().getAbove())
+							.add("below", r.getTerrarium().getBelow())
+							.build()));
+		}
+		return BUILDERS.createObjectBuilder().add("period", period).add("history", history).build();
+	}
+
+	private static JsonObjectBuilder stats(TemperatureRollups.Stats s) {
+		return BUILDERS.createObjectBuilder()
+				.add("min", s.getMin())
+				.add("max", s.getMax())
+				.add("avg", s.getAvg())
+				.add("count", s.getCount());
+	}
+
+	/**
+	 * Execute the commands in data.commands ([{"cmd":..., "data":...}, ...]) one after the other
+	 * as one transaction of the terrarium: the settings are saved once at the end, and when one
+	 * of the commands fails the changes of the earlier ones are undone.
+	 *
+	 * @return {"responses":[...]} with the response of each command (null if it has none)
+	 */
+	private static JsonObject batch(Terrarium t, JsonObject d) throws Exception {
+		JsonArray commands = data(d).getJsonArray("commands");
+		if (commands == null) {
+			throw new CommandException("JsonArray parameter 'commands' not found.");
+		}
+		// Check all commands before changing anything
+		CommandHandler[] handlers = new CommandHandler[commands.size()];
+		for (int i = 0; i < commands.size(); i++) {
+			if (commands.get(i).getValueType() != JsonValue.ValueType.OBJECT) {
+				throw new CommandException("Command " + (i + 1) + " of the batch is not a json object.");
+			}
+			JsonObject sub = commands.getJsonObject(i);
+			String name = sub.getString("cmd", "");
+			handlers[i] = name.equals("batch") ? null : get(name);
+			if (handlers[i] == null) {
+				throw new CommandException("Command " + (i + 1) + " '" + name + "' of the batch is not implemented.");
+			}
+			if (sub.containsKey("terrarium") && (sub.getInt("terrarium", -1) != t.getId())) {
+				throw new CommandException("Command " + (i + 1) + " '" + name + "' of the batch is for another terrarium.");
+			}
+		}
+		JsonArrayBuilder responses = BUILDERS.createArrayBuilder();
+		t.beginTransaction();
+		boolean done = false;
+		int i = 0;
+		try {
+			for (; i < handlers.length; i++) {
+				JsonObject sub = commands.getJsonObject(i);
+				JsonValue subData = sub.get("data");
+				JsonObject res = handlers[i].execute(t, (subData == null) || (subData.getValueType() != JsonValue.ValueType.OBJECT) ? null : subData.asJsonObject());
+				responses.add(res == null ? JsonValue.NULL : res);
+			}
+			t.commit();
+			done = true;
+		} catch (CommandException e) {
+			throw new CommandException("Command " + (i + 1) + " '" + commands.getJsonObject(i).getString("cmd") + "' of the batch failed, nothing has been changed: " + e.getMessage());
+		} finally {
+			if (!done) {
+				t.rollback();
+			}
+		}
+		return BUILDERS.createObjectBuilder().add("responses", responses).build();
+	}
+
+	/**
+	 * Add a command that changes the terrarium, or replace the handler of an existing one.
+	 */
+	public static void register(String name, CommandHandler handler) {
+		register(name, Mode.UPDATE, handler);
+	}
+
+	/**
+	 * Add a command, or replace the handler of an existing one.
+	 */
+	public static void register(String name, Mode mode, CommandHandler handler) {
+		handlers.put(name, new Entry(mode, handler));
+	}
+
+	/**
+	 * @return the handler of the command or null if there is no such command
+	 */
+	public static CommandHandler get(String name) {
+		Entry e = name == null ? null : handlers.get(name);
+		return e == null ? null : e.handler;
+	}
+
+	/**
+	 * @return the mode of the command; an unknown command is a query (it only results in an error)
+	 */
+	public static Mode getMode(String name) {
+		Entry e = name == null ? null : handlers.get(name);
+		return e == null ? Mode.QUERY : e.mode;
+	}
+
+	public static Set<String> getCommands() {
+		return Collections.unmodifiableSet(handlers.keySet());
+	}
+
+	/**
+	 * @return the data of the command
+	 * @throws CommandException if the command has no data
+	 */
+	public static JsonObject data(JsonObject data) throws CommandException {
+		if (data == null) {
+			throw new CommandException("No data found.");
+		}
+		return data;
+	}
+
+	/**
+	 * @return the non-empty string parameter
+	 * @throws CommandException if the command has no data or the parameter is missing or empty
+	 */
+	public static String stringParam(JsonObject data, String name) throws CommandException {
+		String prm = data(data).getString(name, "");
+		if (prm.length() == 0) {
+			throw new CommandException("String parameter '" + name + "' not found.");
+		}
+		return prm;
+	}
+
+	/**
+	 * @return the integer parameter
+	 * @throws CommandException if the command has no data or the parameter is missing
+	 */
+	public static int intParam(JsonObject data, String name) throws CommandException {
+		int prm = data(data).getInt(name, -1);
+		if (prm == -1) {
+			throw new CommandException("Integer parameter '" + name + "' not found.");
+		}
+		return prm;
+	}
+
+	/**
+	 * @return the integer parameter, which is not 0
+	 * @throws CommandException if the command has no data or the parameter is missing or 0
+	 */
+	public static int positiveIntParam(JsonObject data, String name) throws CommandException {
+		int prm = data(data).getInt(name, 0);
+		if (prm == 0) {
+			throw new CommandException("Integer parameter '" + name + "' not found.");
+		}
+		return prm;
+	}
+
+	/**
+	 * @return the optional long parameter, or the default value if there is no data or no such parameter
+	 * @throws CommandException if the parameter is not an integer number
+	 */
+	public static long longParam(JsonObject data, String name, long dflt) throws CommandException {
+		JsonValue prm = data == null ? null : data.get(name);
+		if ((prm == null) || (prm == JsonValue.NULL)) {
+			return dflt;
+		}
+		if ((prm.getValueType() != JsonValue.ValueType.NUMBER) || !((JsonNumber) prm).isIntegral()) {
+			throw new CommandException("Long parameter '" + name + "' is not an integer number.");
+		}
+		return ((JsonNumber) prm).longValue();
+	}
+
+	public static JsonObject toJsonObject(String json) {
+		try (JsonReader reader = READERS.createReader(new StringReader(json))) {
+			return reader.readObject();
+		}
+	}
+
+	public static JsonArray toJsonArray(String json) {
+		try (JsonReader reader = READERS.createReader(new StringReader(json))) {
+			return reader.readArray();
+		}
+	}
+
+	private static JsonObject fileList(List<String> files) {
+		return BUILDERS.createObjectBuilder().add("files", BUILDERS.createArrayBuilder(files)).build();
+	}
+}
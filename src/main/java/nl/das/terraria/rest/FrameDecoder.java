@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a byte stream into ETX (0x03) terminated frames.
+ *
+ * The input is read in chunks and scanned for the ETX in bulk. A frame that lies completely
+ * within the chunk is handed to the handler in place, without copying; only the start of a frame
+ * that continues in the next chunk is kept in a growing pending buffer.
+ * The frames are handed over as bytes, so the handler decodes them as UTF-8 (the ETX byte
+ * never occurs inside a multi-byte UTF-8 sequence).
+ * A frame longer than the maximum frame size is skipped up to its ETX and reported with oversized().
+ * The byte arrays given to the handler are only valid during the call.
+ *
+ * For binary encodings, which can contain the ETX byte, the decoder can be switched to frames
+ * that start with their length as 4 byte big-endian integer instead. The handler may switch
+ * the mode while it handles a frame; the bytes after that frame are decoded in the new mode.
+ */
+public class FrameDecoder {
+
+	public static final byte ETX = 0x03;
+	public static final int DEFAULT_MAX_FRAME_SIZE = 256 * 1024;
+	private static final int CHUNK_SIZE = 8192;
+
+	public interface Handler {
+		void frame(byte[] buf, int off, int len) throws IOException;
+		void oversized(int maxFrameSize) throws IOException;
+	}
+
+	private final int maxFrameSize;
+	private byte[] chunk;
+	private byte[] pending = new byte[256];
+	private int pendingLength = 0;
+	private boolean discarding = false;
+	private boolean lengthPrefixed = false;
+	// Length prefixed frames: the length of the current frame (-1 while reading the length) and how much of it has been read
+	private int frameLength = -1;
+	private int received = 0;
+
+	public FrameDecoder() {
+		this(DEFAULT_MAX_FRAME_SIZE);
+	}
+
+	public FrameDecoder(int maxFrameSize) {
+		this.maxFrameSize = maxFrameSize;
+	}
+
+	public int getMaxFrameSize() {
+		return this.maxFrameSize;
+	}
+
+	public boolean isLengthPrefixed() {
+		return this.lengthPrefixed;
+	}
+
+	/**
+	 * Switch between ETX terminated and length prefixed frames, at a frame boundary.
+	 */
+	public void setLengthPrefixed(boolean lengthPrefixed) {
+		this.lengthPrefixed = lengthPrefixed;
+	}
+
+	/**
+	 * Read the stream until its end and hand every complete frame to the handler.
+	 * Bytes after the last ETX are ignored.
+	 */
+	public void read(InputStream in, Handler handler) throws IOException {
+		if (this.chunk == null) {
+			this.chunk = new byte[CHUNK_SIZE];
+		}
+		int n;
+		while ((n = in.read(this.chunk)) != -1) {
+			decode(this.chunk, 0, n, handler);
+		}
+	}
+
+	/**
+	 * Scan the next bytes of the stream and hand every frame they complete to the handler.
+	 */
+	public void decode(byte[] buf, int off, int len, Handler handler) throws IOException {
+		int p = off;
+		int end = off + len;
+		while (p < end) {
+			if (this.lengthPrefixed) {
+				p = decodeLengthPrefixed(buf, p, end, handler);
+				continue;
+			}
+			int etx = indexOfEtx(buf, p, end);
+			if (etx < 0) {
+				append(buf, p, end - p);
+				return;
+			}
+			if (this.discarding) {
+				this.discarding = false;
+				handler.oversized(this.maxFrameSize);
+			} else if (this.pendingLength == 0) {
+				if ((etx - p) > this.maxFrameSize) {
+					handler.oversized(this.maxFrameSize);
+				} else {
+					handler.frame(buf, p, etx - p);
+				}
+			} else {
+				append(buf, p, etx - p);
+				if (this.discarding) {
+					this.discarding = false;
+					handler.oversized(this.maxFrameSize);
+				} else {
+					int n = this.pendingLength;
+					this.pendingLength = 0;
+					handler.frame(this.pending, 0, n);
+				}
+			}
+			p = etx + 1;
+		}
+	}
+
+	/**
+	 * Decode (a part of) one length prefixed frame.
+	 *
+	 * @return the position after the bytes that have been used
+	 */
+	private int decodeLengthPrefixed(byte[] buf, int p, int end, Handler handler) throws IOException {
+		if (this.frameLength < 0) {
+			// The length, which may be split over several chunks too
+			while ((this.received < 4) && (p < end)) {
+				this.pendingLength = (this.pendingLength << 8) | (buf[p++] & 0xFF);
+				this.received++;
+			}
+			if (this.received < 4) {
+				return p;
+			}
+			// A length above 2 GB can only be skipped up to 2 GB
+			this.frameLength = this.pendingLength < 0 ? Integer.MAX_VALUE : this.pendingLength;
+			this.pendingLength = 0;
+			this.received = 0;
+			this.discarding = this.frameLength > this.maxFrameSize;
+		}
+		int n = Math.min(end - p, this.frameLength - this.received);
+		if ((this.received == 0) && (n == this.frameLength) && !this.discarding) {
+			this.frameLength = -1;
+			handler.frame(buf, p, n);
+			return p + n;
+		}
+		if (!this.discarding) {
+			append(buf, p, n);
+		}
+		this.received += n;
+		p += n;
+		if (this.received == this.frameLength) {
+			this.frameLength = -1;
+			this.received = 0;
+			if (this.discarding) {
+				this.discarding = false;
+				handler.oversized(this.maxFrameSize);
+			} else {
+				int len = this.pendingLength;
+				this.pendingLength = 0;
+				handler.frame(this.pending, 0, len);
+			}
+		}
+		return p;
+	}
+
+	private static int indexOfEtx(byte[] buf, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buf[i] == ETX) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private void append(byte[] buf, int off, int len) {
+		if (this.discarding) {
+			return;
+		}
+		int size = this.pendingLength + len;
+		if (size > this.maxFrameSize) {
+			this.discarding = true;
+			this.pendingLength = 0;
+			return;
+		}
+		if (size > this.pending.length) {
+			byte[] b = new byte[Math.min(Math.max(size, this.pending.length * 2), this.maxFrameSize)];
+			System.arraycopy(this.pending, 0, b, 0, this.pendingLength);
+			this.pending = b;
+		}
+		System.arraycopy(buf, off, this.pending, this.pendingLength, len);
+		this.pendingLength = size;
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import nl.das.terraria.Util;
+
+/**
+ * Executes the pipelined commands of one connection.
+ *
+ * A client may send many commands without waiting for their responses; the responses carry
+ * the msgId of their command and are handed to the responder as soon as the command is done,
+ * so they can come back in another order than the commands were sent.
+ * Queries (see CommandRegistry.Mode) run in parallel with each other. An update waits for all
+ * commands of the connection that were received before it, and the commands received after it
+ * wait for the update, so the updates of a connection are done in order and a client always
+ * reads its own updates.
+ * The number of commands in execution is limited; submit() blocks when the limit is reached.
+ * The commands that fail to decode (no command) are queries; the commands that change the
+ * session itself (see Session.isSessionCommand) are ordered like updates.
+ */
+public class Pipeline {
+
+	public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+	private static final ExecutorService commandPool = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+		Thread t = new Thread(r, "command");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Gets the encoded responses; may be called from several threads at the same time.
+	 * Must not wait for the client: it is called on the command pool, which all connections share.
+	 */
+	public interface Responder {
+		void respond(byte[] response) throws IOException;
+	}
+
+	private final Executor executor;
+	private final Responder responder;
+	private final Subscriptions subscriptions;
+	private final Semaphore inFlight;
+	// Done when the last update is done
+	private CompletableFuture<Void> lastUpdate = CompletableFuture.completedFuture(null);
+	// The queries submitted after the last update
+	private final List<CompletableFuture<Void>> queries = new ArrayList<>();
+
+	public Pipeline(Responder responder) {
+		this(commandPool, DEFAULT_MAX_IN_FLIGHT, responder, null);
+	}
+
+	public Pipeline(Responder responder, Subscriptions subscriptions) {
+		this(commandPool, DEFAULT_MAX_IN_FLIGHT, responder, subscriptions);
+	}
+
+	/**
+	 * @param subscriptions the subscriptions of the connection, null if it cannot subscribe
+	 */
+	public Pipeline(Executor executor, int maxInFlight, Responder responder, Subscriptions subscriptions) {
+		this.executor = executor;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.responder = responder;
+		this.subscriptions = subscriptions;
+	}
+
+	/**
+	 * Schedule the request for execution.
+	 */
+	public synchronized void submit(Session.Request request) throws InterruptedIOException {
+		try {
+			this.inFlight.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the commands in execution");
+		}
+		Runnable task = () -> {
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				Session.execute(request, this.subscriptions, out);
+				this.responder.respond(out.toByteArray());
+			} catch (IOException | RuntimeException e) {
+				System.err.println(Util.getDateTimeString() + "Response not sent: " + e.getMessage());
+			} finally {
+				this.inFlight.release();
+			}
+		};
+		Command cmd = request.getCommand();
+		// setEncoding is ordered like an update, so all responses before it are in the old encoding and all after it in the new one
+		if ((cmd != null) && ((CommandRegistry.getMode(cmd.getCmd()) == CommandRegistry.Mode.UPDATE) || Session.isSessionCommand(cmd.getCmd()))) {
+			this.queries.add(this.lastUpdate);
+			this.lastUpdate = CompletableFuture.allOf(this.queries.toArray(new CompletableFuture<?>[0])).thenRunAsync(task, this.executor);
+			this.queries.clear();
+		} else {
+			this.queries.removeIf(CompletableFuture::isDone);
+			this.queries.add(this.lastUpdate.thenRunAsync(task, this.executor));
+		}
+	}
+
+	/**
+	 * Wait until all submitted commands have been executed and answered.
+	 */
+	public void await() throws InterruptedIOException {
+		List<CompletableFuture<Void>> all;
+		synchronized (this) {
+			all = new ArrayList<>(this.queries);
+			all.add(this.lastUpdate);
+		}
+		try {
+			CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).get();
+		} catch (ExecutionException e) {
+			// The tasks handle their own exceptions
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the commands in execution");
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.rest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The protocol state of one client connection: turns the incoming bytes into requests
+ * and writes the responses in the encoding the client has chosen.
+ *
+ * A session starts with ETX terminated json. The client switches the encoding with
+ * {"cmd":"setEncoding","data":{"encoding":"cbor"}} (or "json" to switch back).
+ * The commands after it must be in the new encoding; the response to setEncoding itself,
+ * like every response, is in the encoding of its command.
+ * See CborCodec for the binary encoding.
+ * A session can subscribe to the changes of a terrarium, see Subscriptions.
+ */
+public class Session {
+
+	public static final String JSON = "json";
+	public static final String CBOR = "cbor";
+	public static final String SET_ENCODING = "setEncoding";
+
+	/**
+	 * A decoded command, or the reason it could not be decoded.
+	 */
+	public static class Request {
+		private final Command command;
+		private final String error;
+		private final boolean cbor;
+
+		Request(Command command, String error, boolean cbor) {
+			this.command = command;
+			this.error = error;
+			this.cbor = cbor;
+		}
+
+		public Command getCommand() {
+			return this.command;
+		}
+
+		public String getError() {
+			return this.error;
+		}
+
+		public boolean isCbor() {
+			return this.cbor;
+		}
+	}
+
+	public interface Handler {
+		void request(Request request) throws IOException;
+	}
+
+	private final FrameDecoder decoder;
+	private final FrameDecoder.Handler frames = new FrameDecoder.Handler() {
+		@Override
+		public void frame(byte[] buf, int off, int len) throws IOException {
+			Session.this.handler.request(decodeFrame(buf, off, len));
+		}
+
+		@Override
+		public void oversized(int maxFrameSize) throws IOException {
+			Session.this.handler.request(new Request(null, "Command is longer than " + maxFrameSize + " bytes.", Session.this.decoder.isLengthPrefixed()));
+		}
+	};
+	private Handler handler;
+
+	public Session() {
+		this(FrameDecoder.DEFAULT_MAX_FRAME_SIZE);
+	}
+
+	public Session(int maxFrameSize) {
+		this.decoder = new FrameDecoder(maxFrameSize);
+	}
+
+	/**
+	 * Read the stream until its end and hand every request to the handler.
+	 */
+	public void read(InputStream in, Handler handler) throws IOException {
+		this.handler = handler;
+		this.decoder.read(in, this.frames);
+	}
+
+	/**
+	 * Decode the next bytes of the connection and hand every request they complete to the handler.
+	 */
+	public void decode(byte[] buf, int off, int len, Handler handler) throws IOException {
+		this.handler = handler;
+		this.decoder.decode(buf, off, len, this.frames);
+	}
+
+	private Request decodeFrame(byte[] buf, int off, int len) {
+		boolean cbor = this.decoder.isLengthPrefixed();
+		Command cmd;
+		try {
+			cmd = cbor ? CborCodec.readCommand(buf, off, len) : CommandRegistry.JSONB.fromJson(new ByteArrayInputStream(buf, off, len), Command.class);
+		} catch (RuntimeException e) {
+			return new Request(null, "Command is not valid " + (cbor ? CBOR : JSON) + ".", cbor);
+		}
+		if (SET_ENCODING.equals(cmd.getCmd())) {
+			// The next frame is already in the new encoding
+			String encoding = encoding(cmd);
+			if (encoding != null) {
+				this.decoder.setLengthPrefixed(encoding.equals(CBOR));
+			}
+		}
+		return new Request(cmd, null, cbor);
+	}
+
+	/**
+	 * @return true if the command changes the state of the session itself, so it has to be
+	 *         executed in order with the other commands of the session
+	 */
+	public static boolean isSessionCommand(String cmd) {
+		return SET_ENCODING.equals(cmd) || Subscriptions.isSubscriptionCommand(cmd);
+	}
+
+	private static String encoding(Command cmd) {
+		String encoding = cmd.getData() == null ? "" : cmd.getData().getString("encoding", "");
+		return encoding.equals(JSON) || encoding.equals(CBOR) ? encoding : null;
+	}
+
+	/**
+	 * Execute the request and write its response in the encoding of the request.
+	 */
+	public static void execute(Request request, OutputStream out) throws IOException {
+		execute(request, null, out);
+	}
+
+	/**
+	 * Execute the request and write its response in the encoding of the request.
+	 *
+	 * @param subscriptions the subscriptions of the session, null if it cannot subscribe
+	 */
+	public static void execute(Request request, Subscriptions subscriptions, OutputStream out) throws IOException {
+		Response res;
+		Command cmd = request.getCommand();
+		if (cmd == null) {
+			res = new Response(null, null);
+			res.setResponse(BTServer.error(request.getError()));
+		} else if (SET_ENCODING.equals(cmd.getCmd())) {
+			res = new Response(cmd.getMsgId(), cmd.getCmd());
+			String encoding = encoding(cmd);
+			if (encoding == null) {
+				res.setResponse(BTServer.error("String parameter 'encoding' must be '" + JSON + "' or '" + CBOR + "'."));
+			} else {
+				res.setResponse(CommandRegistry.BUILDERS.createObjectBuilder().add("encoding", encoding).build());
+				if (subscriptions != null) {
+					subscriptions.setCbor(encoding.equals(CBOR));
+				}
+			}
+		} else if (Subscriptions.isSubscriptionCommand(cmd.getCmd())) {
+			if (subscriptions == null) {
+				res = new Response(cmd.getMsgId(), cmd.getCmd());
+				res.setResponse(BTServer.error("Command '" + cmd.getCmd() + "' is not supported on this connection."));
+			} else {
+				res = subscriptions.execute(cmd);
+			}
+		} else {
+			res = BTServer.execute(cmd);
+		}
+		if (request.isCbor()) {
+			CborCodec.writeResponse(res, out);
+		} else {
+			BTServer.writeJson(res, out);
+		}
+	}
+}
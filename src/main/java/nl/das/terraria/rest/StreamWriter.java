@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.rest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Writes the responses and events of one stream connection (BTServer) on its own thread.
+ *
+ * The command pool and the push thread are shared by all connections, so they must not wait
+ * for a client that does not read: respond() and offer() only queue the response or event.
+ * The number of responses waiting to be written is limited by the reader of the connection,
+ * which calls awaitRoom() before it takes the next command, so a client that does not read
+ * is held back by the flow control of the connection. An event is refused while MAX_QUEUED
+ * responses and events are waiting.
+ */
+public class StreamWriter implements Pipeline.Responder {
+
+	public static final int MAX_QUEUED = 2 * Pipeline.DEFAULT_MAX_IN_FLIGHT;
+	public static final long CLOSE_TIMEOUT_MS = 5000;
+
+	private final OutputStream out;
+	// The response that is being written stays in the queue until it has been written
+	private final Deque<byte[]> queue = new ArrayDeque<>();
+	private final Thread thread;
+	private boolean closed = false;
+	private IOException failure = null;
+
+	public StreamWriter(OutputStream out) {
+		this.out = out;
+		this.thread = new Thread(this::run, "stream-writer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Queue the response; does not wait.
+	 *
+	 * @throws IOException if an earlier response could not be written
+	 */
+	@Override
+	public synchronized void respond(byte[] response) throws IOException {
+		if (this.failure != null) {
+			throw this.failure;
+		}
+		this.queue.add(response);
+		notifyAll();
+	}
+
+	/**
+	 * Queue the event, unless there is no room for it.
+	 *
+	 * @return false if MAX_QUEUED responses and events are waiting to be written
+	 * @throws IOException if an earlier response could not be written
+	 */
+	public synchronized boolean offer(byte[] event) throws IOException {
+		if (this.queue.size() >= MAX_QUEUED) {
+			return false;
+		}
+		respond(event);
+		return true;
+	}
+
+	/**
+	 * @return the number of responses and events that have not been written yet
+	 */
+	public synchronized int getQueued() {
+		return this.queue.size();
+	}
+
+	/**
+	 * Wait until less than MAX_QUEUED responses are waiting to be written.
+	 *
+	 * @throws IOException if a response could not be written
+	 */
+	public synchronized void awaitRoom() throws IOException {
+		try {
+			while ((this.failure == null) && (this.queue.size() >= MAX_QUEUED)) {
+				wait();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the responses to be written");
+		}
+		if (this.failure != null) {
+			throw this.failure;
+		}
+	}
+
+	/**
+	 * Write the queued responses and stop the thread. Waits at most CLOSE_TIMEOUT_MS,
+	 * after that the responses are written (or fail) when the stream is closed.
+	 */
+	public void close() throws InterruptedIOException {
+		synchronized (this) {
+			this.closed = true;
+			notifyAll();
+		}
+		try {
+			this.thread.join(CLOSE_TIMEOUT_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the responses to be written");
+		}
+	}
+
+	private void run() {
+		try {
+			while (true) {
+				byte[] response;
+				synchronized (this) {
+					while (this.queue.isEmpty() && !this.closed) {
+						wait();
+					}
+					if (this.queue.isEmpty()) {
+						return;
+					}
+					response = this.queue.peek();
+				}
+				this.out.write(response);
+				this.out.flush();
+				synchronized (this) {
+					this.queue.poll();
+					notifyAll();
+				}
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				this.failure = e;
+				this.queue.clear();
+				notifyAll();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
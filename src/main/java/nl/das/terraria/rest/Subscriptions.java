@@ -0,0 +1,305 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+
+import nl.das.terraria.Util;
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * The subscriptions of one client connection: instead of polling getState and getSensors
+ * the client gets an event when they change.
+ *
+ * {"cmd":"subscribe","terrarium":1,"data":{"topics":["state","sensors"],"interval":1000}}
+ * subscribes to the changes of the state (a device is switched, tracing is switched) and/or
+ * the sensors (a read gives other values) of the terrarium; without topics to both.
+ * The events are pushed as responses without msgId with command "event":
+ * {"terrarium":1,"state":{..as getState..},"sensors":{..as getSensors..}}
+ * with only the topics that have changed. The changes are coalesced: a subscription gets
+ * at most one event per interval (milliseconds, at least the configured minimum interval),
+ * with the values at the time the event is sent. The first event, with all topics, follows
+ * the subscribe right away.
+ * One push thread serves all connections, so the events are handed to a sink of the connection
+ * that does not wait; when the connection has no room for the event it is tried again an interval
+ * later (with the values of then).
+ * {"cmd":"unsubscribe","terrarium":1} ends the subscription.
+ * The events are in the encoding of the session (see Session).
+ */
+public class Subscriptions {
+
+	public static final String SUBSCRIBE = "subscribe";
+	public static final String UNSUBSCRIBE = "unsubscribe";
+	public static final String EVENT = "event";
+	public static final String STATE = "state";
+	public static final String SENSORS = "sensors";
+	public static final int DEFAULT_MIN_INTERVAL = 1000;
+
+	private static volatile int minInterval = DEFAULT_MIN_INTERVAL;
+
+	private static final ScheduledExecutorService pushPool = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "push");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * Gets the encoded events of one connection; must not wait for the client.
+	 */
+	public interface Sink {
+		/**
+		 * @return false if the connection has no room for the event now
+		 */
+		boolean offer(byte[] event) throws IOException;
+	}
+
+	private final Sink sink;
+	private final Map<Integer, Subscription> subscriptions = new HashMap<>();
+	private volatile boolean cbor = false;
+	private boolean closed = false;
+
+	/**
+	 * One subscribed terrarium.
+	 */
+	private class Subscription implements Terrarium.Observer {
+		final Terrarium terrarium;
+		final Set<String> topics;
+		final int interval;
+		// Guarded by this
+		final Set<String> changed = new LinkedHashSet<>();
+		ScheduledFuture<?> scheduled;
+		long lastPush = 0L;
+		boolean cancelled = false;
+
+		Subscription(Terrarium terrarium, Set<String> topics, int interval) {
+			this.terrarium = terrarium;
+			this.topics = topics;
+			this.interval = interval;
+		}
+
+		@Override
+		public void deviceOn(int device) {
+			changed(STATE);
+		}
+
+		@Override
+		public void deviceOff(int device) {
+			changed(STATE);
+		}
+
+		@Override
+		public void traceChanged(boolean on) {
+			changed(STATE);
+		}
+
+		@Override
+		public void sensorsChanged() {
+			changed(SENSORS);
+		}
+
+		/**
+		 * Called while holding the lock of the terrarium: only schedule the event.
+		 */
+		synchronized void changed(String topic) {
+			if (!this.topics.contains(topic) || !this.changed.add(topic) || (this.scheduled != null)) {
+				return;
+			}
+			schedule();
+		}
+
+		private void schedule() {
+			long delay = Math.max(0L, (this.lastPush + this.interval) - System.currentTimeMillis());
+			this.scheduled = pushPool.schedule(this::push, delay, TimeUnit.MILLISECONDS);
+		}
+
+		synchronized void cancel() {
+			this.cancelled = true;
+			if (this.scheduled != null) {
+				this.scheduled.cancel(false);
+				this.scheduled = null;
+			}
+		}
+
+		private void push() {
+			Set<String> topics;
+			synchronized (this) {
+				if (this.scheduled == null) {
+					// Cancelled
+					return;
+				}
+				this.scheduled = null;
+				this.lastPush = System.currentTimeMillis();
+				topics = new LinkedHashSet<>(this.changed);
+				this.changed.clear();
+			}
+			JsonObjectBuilder event = CommandRegistry.BUILDERS.createObjectBuilder().add("terrarium", this.terrarium.getId());
+			synchronized (this.terrarium) {
+				if (topics.contains(STATE)) {
+					event.add(STATE, CommandRegistry.toJsonObject(this.terrarium.getState()));
+				}
+				if (topics.contains(SENSORS)) {
+					// The values that have been read, instead of reading the sensors again
+					event.add(SENSORS, CommandRegistry.toJsonObject(CommandRegistry.JSONB.toJson(this.terrarium.getLastSensorValues())));
+				}
+			}
+			Response res = new Response(null, EVENT);
+			res.setResponse(event.build());
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				if (Subscriptions.this.cbor) {
+					CborCodec.writeResponse(res, out);
+				} else {
+					BTServer.writeJson(res, out);
+				}
+				if (!Subscriptions.this.sink.offer(out.toByteArray())) {
+					// The client does not keep up: send the changes an interval later
+					synchronized (this) {
+						this.changed.addAll(topics);
+						if ((this.scheduled == null) && !this.cancelled) {
+							schedule();
+						}
+					}
+				}
+			} catch (IOException | RuntimeException e) {
+				System.err.println(Util.getDateTimeString() + "Event not sent: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @param sink gets the encoded events, on the push thread
+	 */
+	public Subscriptions(Sink sink) {
+		this.sink = sink;
+	}
+
+	/**
+	 * Set the minimum interval between two events of a subscription, for all connections.
+	 */
+	public static void setMinInterval(int millis) {
+		minInterval = millis;
+	}
+
+	public static int getMinInterval() {
+		return minInterval;
+	}
+
+	/**
+	 * @return true if the command is handled by the subscriptions of the session instead of the CommandRegistry
+	 */
+	public static boolean isSubscriptionCommand(String cmd) {
+		return SUBSCRIBE.equals(cmd) || UNSUBSCRIBE.equals(cmd);
+	}
+
+	/**
+	 * Send the next events in cbor (or json).
+	 */
+	void setCbor(boolean cbor) {
+		this.cbor = cbor;
+	}
+
+	/**
+	 * Execute a subscribe or unsubscribe command.
+	 *
+	 * @return the response, with an error object when the command failed
+	 */
+	public Response execute(Command cmd) {
+		Response res = new Response(cmd.getMsgId(), cmd.getCmd());
+		try {
+			Terrarium terrarium = BTServer.terrarium(cmd);
+			if (SUBSCRIBE.equals(cmd.getCmd())) {
+				res.setResponse(subscribe(terrarium, cmd.getData()));
+			} else {
+				unsubscribe(terrarium);
+			}
+		} catch (CommandException e) {
+			res.setResponse(BTServer.error(e.getMessage()));
+		}
+		return res;
+	}
+
+	private JsonObject subscribe(Terrarium terrarium, JsonObject data) throws CommandException {
+		Set<String> topics = new LinkedHashSet<>();
+		JsonValue prm = data == null ? null : data.get("topics");
+		if ((prm == null) || (prm == JsonValue.NULL)) {
+			topics.add(STATE);
+			topics.add(SENSORS);
+		} else {
+			if (prm.getValueType() != JsonValue.ValueType.ARRAY) {
+				throw new CommandException("JsonArray parameter 'topics' not found.");
+			}
+			for (JsonValue v : (JsonArray) prm) {
+				String topic = v.getValueType() == JsonValue.ValueType.STRING ? ((JsonString) v).getString() : "";
+				if (!topic.equals(STATE) && !topic.equals(SENSORS)) {
+					throw new CommandException("Topic '" + topic + "' does not exist; use '" + STATE + "' or '" + SENSORS + "'.");
+				}
+				topics.add(topic);
+			}
+		}
+		int interval = (int) Math.max(minInterval, Math.min(CommandRegistry.longParam(data, "interval", 0), Integer.MAX_VALUE));
+		Subscription s = new Subscription(terrarium, topics, interval);
+		synchronized (this) {
+			if (this.closed) {
+				throw new CommandException("The connection is closed.");
+			}
+			remove(this.subscriptions.put(terrarium.getId(), s));
+			terrarium.addObserver(s);
+		}
+		// The current values, so the client does not have to ask for them
+		for (String topic : topics) {
+			s.changed(topic);
+		}
+		return CommandRegistry.BUILDERS.createObjectBuilder()
+				.add("topics", CommandRegistry.BUILDERS.createArrayBuilder(topics))
+				.add("interval", interval)
+				.build();
+	}
+
+	private synchronized void unsubscribe(Terrarium terrarium) throws CommandException {
+		Subscription s = this.subscriptions.remove(terrarium.getId());
+		if (s == null) {
+			throw new CommandException("Terrarium " + terrarium.getId() + " is not subscribed to.");
+		}
+		remove(s);
+	}
+
+	/**
+	 * End all subscriptions; called when the connection is closed.
+	 */
+	public synchronized void close() {
+		this.closed = true;
+		for (Subscription s : this.subscriptions.values()) {
+			remove(s);
+		}
+		this.subscriptions.clear();
+	}
+
+	private static void remove(Subscription s) {
+		if (s != null) {
+			s.terrarium.removeObserver(s);
+			s.cancel();
+		}
+	}
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.rest;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import nl.das.terraria.Util;
+
+/**
+ * Serves the command protocol over TCP with non-blocking NIO channels.
+ *
+ * One selector thread (the thread that calls start()) accepts the connections, reads the commands
+ * and writes the responses; the commands are executed on a small worker pool, so a slow command
+ * never holds up the other sessions.
+ * The commands of a session are pipelined (see Pipeline). While the maximum number of its commands
+ * is in execution, or MAX_QUEUED_RESPONSES of its responses have not been written, the session is
+ * not read, so a client that sends faster than it is served or does not read its responses is
+ * held back by TCP flow control.
+ * The events of the subscriptions of a session (see Subscriptions) are written like the responses.
+ * The number of sessions is capped like in BTServer.
+ */
+public class TcpServer implements Transport {
+
+	private static final int READ_BUFFER_SIZE = 8192;
+	public static final int MAX_QUEUED_RESPONSES = 2 * Pipeline.DEFAULT_MAX_IN_FLIGHT;
+
+	private final InetSocketAddress address;
+	private final int maxSessions;
+	private final ExecutorService workers;
+	private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+	private final Set<Connection> sessions = ConcurrentHashMap.newKeySet();
+	private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+	private Selector selector;
+	private ServerSocketChannel server;
+	private volatile boolean running = false;
+
+	private class Connection {
+		final SocketChannel channel;
+		final SelectionKey key;
+		final Session protocol = new Session();
+		final Deque<Session.Request> commands = new ArrayDeque<>();
+		final Deque<ByteBuffer> responses = new ArrayDeque<>();
+		// The responses that the pipeline has made, to be written by the selector thread
+		final Queue<byte[]> results = new ConcurrentLinkedQueue<>();
+		// The events of the subscriptions, to be written by the selector thread
+		final Queue<byte[]> events = new ConcurrentLinkedQueue<>();
+		final Subscriptions subscriptions;
+		final Pipeline pipeline;
+		// Commands submitted to the pipeline whose response has not been taken from results yet
+		int pending = 0;
+		// The number of responses, for the push thread
+		volatile int queued = 0;
+		boolean eof = false;
+		boolean closed = false;
+
+		Connection(SocketChannel channel, SelectionKey key) {
+			this.channel = channel;
+			this.key = key;
+			this.subscriptions = new Subscriptions(event -> {
+				if ((this.queued + this.events.size()) >= MAX_QUEUED_RESPONSES) {
+					return false;
+				}
+				this.events.add(event);
+				TcpServer.this.completed.add(this);
+				TcpServer.this.selector.wakeup();
+				return true;
+			});
+			this.pipeline = new Pipeline(TcpServer.this.workers, Pipeline.DEFAULT_MAX_IN_FLIGHT, response -> {
+				this.results.add(response);
+				TcpServer.this.completed.add(this);
+				TcpServer.this.selector.wakeup();
+			}, this.subscriptions);
+		}
+	}
+
+	public TcpServer(String host, int port, int maxSessions) throws IOException {
+		this.address = new InetSocketAddress(host, port);
+		this.maxSessions = maxSessions;
+		this.workers = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+			Thread t = new Thread(r, "tcp-command");
+			t.setDaemon(true);
+			return t;
+		});
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		this.server.bind(this.address);
+		this.server.configureBlocking(false);
+		this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * @return the number of open sessions
+	 */
+	public int getSessionCount() {
+		return this.sessions.size();
+	}
+
+	/**
+	 * @return the port the server listens on (useful when it has been created with port 0)
+	 */
+	public int getPort() {
+		return this.server.socket().getLocalPort();
+	}
+
+	@Override
+	public void start() throws IOException {
+		this.running = true;
+		System.out.println(Util.getDateTimeString() + "TCP server listening on " + this.server.getLocalAddress());
+		try {
+			while (this.running) {
+				this.selector.select();
+				Connection s;
+				while ((s = this.completed.poll()) != null) {
+					completed(s);
+				}
+				Iterator<SelectionKey> it = this.selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept();
+					} else {
+						Connection session = (Connection) key.attachment();
+						if (key.isReadable()) {
+							read(session);
+						}
+						if (key.isValid() && key.isWritable()) {
+							write(session);
+						}
+					}
+				}
+			}
+		} catch (ClosedSelectorException e) {
+			// stopped
+		} finally {
+			for (Connection s : new HashSet<>(this.sessions)) {
+				close(s);
+			}
+			this.server.close();
+			this.selector.close();
+			this.workers.shutdown();
+		}
+	}
+
+	@Override
+	public void stop() {
+		this.running = false;
+		this.selector.wakeup();
+	}
+
+	private void accept() throws IOException {
+		SocketChannel ch = this.server.accept();
+		if (ch == null) {
+			return;
+		}
+		if (this.sessions.size() >= this.maxSessions) {
+			System.out.println(Util.getDateTimeString() + "Connection refused, already " + this.maxSessions + " sessions");
+			ch.close();
+			return;
+		}
+		ch.configureBlocking(false);
+		SelectionKey key = ch.register(this.selector, SelectionKey.OP_READ);
+		Connection s = new Connection(ch, key);
+		key.attach(s);
+		this.sessions.add(s);
+		System.out.println(Util.getDateTimeString() + "New client connection... " + ch.getRemoteAddress());
+	}
+
+	private void read(Connection s) {
+		int n;
+		try {
+			this.readBuffer.clear();
+			n = s.channel.read(this.readBuffer);
+		} catch (IOException e) {
+			n = -1;
+		}
+		if (n < 0) {
+			// The client has nothing more to say; answer what it has sent and then close
+			s.eof = true;
+			finish(s);
+			return;
+		}
+		try {
+			s.protocol.decode(this.readBuffer.array(), 0, n, s.commands::add);
+		} catch (IOException e) {
+			// Not thrown by this handler
+		}
+		dispatch(s);
+		interest(s);
+	}
+
+	/**
+	 * Submit the received commands of the session to its pipeline, as far as the maximums allow.
+	 */
+	private void dispatch(Connection s) {
+		while (!s.closed && !s.commands.isEmpty() && (s.pending < Pipeline.DEFAULT_MAX_IN_FLIGHT)
+				&& (s.responses.size() < MAX_QUEUED_RESPONSES)) {
+			s.pending++;
+			try {
+				// Does not block: the pipeline has no more than pending commands in execution
+				s.pipeline.submit(s.commands.poll());
+			} catch (InterruptedIOException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void completed(Connection s) {
+		byte[] response;
+		while ((response = s.results.poll()) != null) {
+			s.pending--;
+			if (!s.closed) {
+				s.responses.add(ByteBuffer.wrap(response));
+			}
+		}
+		while ((response = s.events.poll()) != null) {
+			if (!s.closed && !s.eof) {
+				s.responses.add(ByteBuffer.wrap(response));
+			}
+		}
+		if (s.closed) {
+			return;
+		}
+		dispatch(s);
+		write(s);
+	}
+
+	/**
+	 * Read only when there is room for more commands and responses, write when there are responses.
+	 */
+	private void interest(Connection s) {
+		int ops = 0;
+		if (!s.eof && s.commands.isEmpty() && (s.responses.size() < MAX_QUEUED_RESPONSES)) {
+			ops |= SelectionKey.OP_READ;
+		}
+		if (!s.responses.isEmpty()) {
+			ops |= SelectionKey.OP_WRITE;
+		}
+		s.key.interestOps(ops);
+		s.queued = s.responses.size();
+	}
+
+	private void write(Connection s) {
+		try {
+			while (!s.responses.isEmpty()) {
+				ByteBuffer b = s.responses.peek();
+				s.channel.write(b);
+				if (b.hasRemaining()) {
+					break;
+				}
+				s.responses.poll();
+			}
+		} catch (IOException e) {
+			close(s);
+			return;
+		}
+		// There may be room for the commands that have been held back
+		dispatch(s);
+		if (s.eof) {
+			finish(s);
+		} else {
+			interest(s);
+		}
+	}
+
+	private void finish(Connection s) {
+		if ((s.pending == 0) && s.commands.isEmpty() && s.responses.isEmpty()) {
+			System.out.println(Util.getDateTimeString() + "Connection closed");
+			close(s);
+		} else {
+			interest(s);
+		}
+	}
+
+	private void close(Connection s) {
+		s.closed = true;
+		s.subscriptions.close();
+		this.sessions.remove(s);
+		s.key.cancel();
+		try {
+			s.channel.close();
+		} catch (IOException e) {
+		}
+	}
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.rest;
+
+import java.io.IOException;
+
+/**
+ * A way for clients to reach the command protocol: ETX (0x03) terminated json commands,
+ * each answered by an ETX terminated json response (see BTServer.handleCommand).
+ */
+public interface Transport {
+
+	/**
+	 * Accept and serve clients on the calling thread until stop() is called.
+	 */
+	void start() throws IOException;
+
+	/**
+	 * Stop accepting clients and close the open sessions.
+	 */
+	void stop();
+}
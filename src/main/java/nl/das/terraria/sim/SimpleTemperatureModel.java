@@ -0,0 +1,97 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.sim;
+
+import java.time.LocalDateTime;
+
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * A first order temperature model.
+ *
+ * The room temperature follows a sine over the day, lowest at 05:00 and highest at 17:00.
+ * The terrarium temperature moves every minute a fraction towards a target temperature:
+ * the room temperature plus the heat of the lights that are on, minus the cooling of the mist and sprayer.
+ * Every running fan then moves it another fraction towards the room temperature.
+ */
+public class SimpleTemperatureModel implements TemperatureModel {
+
+	private final double roomMin;
+	private final double roomMax;
+	private final double lightHeat;
+	private final double mistCooling;
+	private final double exchange;
+	private final double fanExchange;
+	private double troom;
+	private double tterr;
+
+	/**
+	 * Room between 18 and 24 degrees, each light adds 1.5 degrees, mist and sprayer take 3 degrees off.
+	 */
+	public SimpleTemperatureModel() {
+		this(18.0, 24.0, 1.5, 3.0, 0.05, 0.25);
+	}
+
+	/**
+	 * @param roomMin lowest room temperature of the day
+	 * @param roomMax highest room temperature of the day
+	 * @param lightHeat degrees each light (or uvlight) adds to the target temperature
+	 * @param mistCooling degrees the mist or sprayer takes off the target temperature
+	 * @param exchange fraction of the difference with the target temperature that is made up per minute
+	 * @param fanExchange fraction of the difference with the room temperature that each running fan makes up per minute
+	 */
+	public SimpleTemperatureModel(double roomMin, double roomMax, double lightHeat, double mistCooling, double exchange, double fanExchange) {
+		this.roomMin = roomMin;
+		this.roomMax = roomMax;
+		this.lightHeat = lightHeat;
+		this.mistCooling = mistCooling;
+		this.exchange = exchange;
+		this.fanExchange = fanExchange;
+		this.troom = roomMin;
+		this.tterr = roomMin;
+	}
+
+	@Override
+	public void minute(LocalDateTime now, Terrarium terrarium) {
+		double minuteOfDay = (now.getHour() * 60) + now.getMinute();
+		double phase = ((minuteOfDay - (5 * 60)) / 1440.0) * 2 * Math.PI;
+		this.troom = this.roomMin + (((this.roomMax - this.roomMin) * (1 - Math.cos(phase))) / 2);
+		double target = this.troom;
+		int fans = 0;
+		String[] devices = terrarium.getConfig().getDeviceList();
+		for (int i = 0; i < devices.length; i++) {
+			if (!terrarium.isDeviceOn(i)) {
+				continue;
+			}
+			String dev = devices[i].toLowerCase();
+			if (dev.startsWith("light") || dev.equals("uvlight")) {
+				target += this.lightHeat;
+			} else if (dev.equals("mist") || dev.equals("sprayer")) {
+				target -= this.mistCooling;
+			} else if (dev.startsWith("fan")) {
+				fans++;
+			}
+		}
+		this.tterr += (target - this.tterr) * this.exchange;
+		for (int f = 0; f < fans; f++) {
+			this.tterr += (this.troom - this.tterr) * this.fanExchange;
+		}
+	}
+
+	@Override
+	public double getRoomTemperature() {
+		return this.troom;
+	}
+
+	@Override
+	public double getTerrariumTemperature() {
+		return this.tterr;
+	}
+}
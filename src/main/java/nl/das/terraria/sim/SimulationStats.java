@@ -0,0 +1,150 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.sim;
+
+import nl.das.terraria.Util;
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Statistics of a simulation run: per device the number of times it has been switched on,
+ * the time it has been on and the number of times a rule switched it on,
+ * and the lowest, highest and average terrarium temperature.
+ */
+public class SimulationStats implements Terrarium.Observer {
+
+	private final Terrarium terrarium;
+	private final String[] devices;
+	private final int[] switchOns;
+	private final long[] onSeconds;
+	private final long[] onSince;
+	private final int[] ruleFirings;
+	private long startTime;
+	private long endTime;
+	private int minTemp = Integer.MAX_VALUE;
+	private int maxTemp = Integer.MIN_VALUE;
+	private long sumTemp;
+	private long nrOfSamples;
+	private long wallMillis;
+
+	public SimulationStats(Terrarium terrarium) {
+		this.terrarium = terrarium;
+		this.devices = terrarium.getConfig().getDeviceList();
+		this.switchOns = new int[this.devices.length];
+		this.onSeconds = new long[this.devices.length];
+		this.onSince = new long[this.devices.length];
+		this.ruleFirings = new int[this.devices.length];
+	}
+
+	/**
+	 * Start counting at the current time of the terrarium; devices that are on count from now.
+	 */
+	void start() {
+		this.startTime = Util.now(this.terrarium.getNow());
+		for (int i = 0; i < this.devices.length; i++) {
+			this.onSince[i] = this.terrarium.isDeviceOn(i) ? this.startTime : -1L;
+		}
+	}
+
+	/**
+	 * Stop counting at the current time of the terrarium.
+	 */
+	void finish(long wallMillis) {
+		this.endTime = Util.now(this.terrarium.getNow());
+		for (int i = 0; i < this.devices.length; i++) {
+			if (this.onSince[i] >= 0) {
+				this.onSeconds[i] += this.endTime - this.onSince[i];
+				this.onSince[i] = -1L;
+			}
+		}
+		this.wallMillis = wallMillis;
+	}
+
+	void sample(int tterr) {
+		this.minTemp = Math.min(this.minTemp, tterr);
+		this.maxTemp = Math.max(this.maxTemp, tterr);
+		this.sumTemp += tterr;
+		this.nrOfSamples++;
+	}
+
+	@Override
+	public void deviceOn(int device) {
+		// A device can be switched on again while it is on (new end time), that is not a new switch
+		if (this.onSince[device] < 0) {
+			this.onSince[device] = Util.now(this.terrarium.getNow());
+			this.switchOns[device]++;
+		}
+	}
+
+	@Override
+	public void deviceOff(int device) {
+		if (this.onSince[device] >= 0) {
+			this.onSeconds[device] += Util.now(this.terrarium.getNow()) - this.onSince[device];
+			this.onSince[device] = -1L;
+		}
+	}
+
+	@Override
+	public void ruleFired(int device) {
+		this.ruleFirings[device]++;
+	}
+
+	public int getSwitchOns(String device) {
+		return this.switchOns[this.terrarium.getDeviceIndex(device)];
+	}
+
+	public long getOnSeconds(String device) {
+		return this.onSeconds[this.terrarium.getDeviceIndex(device)];
+	}
+
+	/**
+	 * @return the fraction of the simulated time the device has been on
+	 */
+	public double getDutyCycle(String device) {
+		long total = this.endTime - this.startTime;
+		return total == 0 ? 0.0 : (double) getOnSeconds(device) / total;
+	}
+
+	public int getRuleFirings(String device) {
+		return this.ruleFirings[this.terrarium.getDeviceIndex(device)];
+	}
+
+	public long getSimulatedSeconds() {
+		return this.endTime - this.startTime;
+	}
+
+	public long getWallMillis() {
+		return this.wallMillis;
+	}
+
+	public int getMinTemperature() {
+		return this.minTemp;
+	}
+
+	public int getMaxTemperature() {
+		return this.maxTemp;
+	}
+
+	public double getAverageTemperature() {
+		return this.nrOfSamples == 0 ? 0.0 : (double) this.sumTemp / this.nrOfSamples;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Simulated %d days in %d ms%n", getSimulatedSeconds() / 86400, this.wallMillis));
+		sb.append(String.format("%-10s %8s %10s %6s %6s%n", "device", "switches", "on(h)", "duty%", "rules"));
+		for (int i = 0; i < this.devices.length; i++) {
+			sb.append(String.format("%-10s %8d %10.1f %6.1f %6d%n", this.devices[i], this.switchOns[i], this.onSeconds[i] / 3600.0,
+					getDutyCycle(this.devices[i]) * 100, this.ruleFirings[i]));
+		}
+		sb.append(String.format("terrarium temperature min=%d max=%d avg=%.1f%n", this.minTemp, this.maxTemp, getAverageTemperature()));
+		return sb.toString();
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.sim;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import nl.das.terraria.TickScheduler;
+import nl.das.terraria.Util;
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Runs a terrarium in virtual time with mock devices and a simulated temperature,
+ * as fast as the control logic allows.
+ *
+ * The ticks come from the same TickScheduler as on the controller, driven by a VirtualClock,
+ * so every second, minute and hour of the simulated period is handled in order.
+ * Tracing and the lifecycle counters are left alone, so nothing is written to disk.
+ *
+ * Usage: Simulator settings.json [days [yyyy-mm-dd]]
+ */
+public class Simulator implements TickScheduler.TickListener {
+
+	private final Terrarium terrarium;
+	private final TemperatureModel model;
+	private final VirtualClock clock;
+	private final TickScheduler scheduler;
+	private final SimulationStats stats;
+
+	/**
+	 * @param terrarium the terrarium to simulate; its devices are replaced by mock devices
+	 * @param model the temperature model
+	 * @param start the local time the simulation starts at
+	 */
+	public Simulator(Terrarium terrarium, TemperatureModel model, LocalDateTime start) {
+		this.terrarium = terrarium;
+		this.model = model;
+		this.clock = new VirtualClock(Util.now(start), Util.getClock().getZone());
+		this.scheduler = new TickScheduler(this, this.clock);
+		this.stats = new SimulationStats(terrarium);
+		terrarium.setNow(start);
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors();
+		model.minute(start, terrarium);
+		setSensors();
+		terrarium.initTimers(start);
+		terrarium.initRules();
+	}
+
+	/**
+	 * Run the simulation for the given period, continuing where a previous run stopped.
+	 */
+	public SimulationStats run(Duration period) {
+		long wallStart = System.currentTimeMillis();
+		long end = this.clock.getEpochSecond() + period.getSeconds();
+		this.terrarium.setObserver(this.stats);
+		this.stats.start();
+		this.scheduler.start(this.clock.getEpochSecond());
+		try {
+			while (this.clock.getEpochSecond() < end) {
+				this.clock.advance(1);
+				this.scheduler.advance(this.clock.getEpochSecond());
+			}
+		} finally {
+			this.terrarium.setObserver(null);
+		}
+		this.stats.finish(System.currentTimeMillis() - wallStart);
+		return this.stats;
+	}
+
+	public VirtualClock getClock() {
+		return this.clock;
+	}
+
+	@Override
+	public void second(LocalDateTime now) {
+		this.terrarium.setNow(now);
+		this.terrarium.checkDevices();
+	}
+
+	@Override
+	public void minute(LocalDateTime now) {
+		this.model.minute(now, this.terrarium);
+		setSensors();
+		this.stats.sample(this.terrarium.getTerrariumTemperature());
+		this.terrarium.checkTimers();
+		this.terrarium.checkSprayerRule();
+		this.terrarium.checkRules();
+	}
+
+	private void setSensors() {
+		this.terrarium.setSensors((int) Math.round(this.model.getRoomTemperature()), (int) Math.round(this.model.getTerrariumTemperature()));
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: Simulator settings.json [days [yyyy-mm-dd]]");
+			return;
+		}
+		String json = Files.readString(Paths.get(args[0]));
+		int days = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+		LocalDate start = args.length > 2 ? LocalDate.parse(args[2]) : Util.now().toLocalDate();
+		Simulator sim = new Simulator(Terrarium.fromJson(json), new SimpleTemperatureModel(), start.atStartOfDay());
+		System.out.print(sim.run(Duration.ofDays(days)));
+	}
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.sim;
+
+import java.time.LocalDateTime;
+
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ * Simulates the room and terrarium temperature for the Simulator.
+ */
+public interface TemperatureModel {
+
+	/**
+	 * Advance the model one minute. The device state of the terrarium is the state during the past minute.
+	 */
+	void minute(LocalDateTime now, Terrarium terrarium);
+
+	double getRoomTemperature();
+
+	double getTerrariumTemperature();
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria.sim;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * A clock that only moves when it is told to.
+ */
+public class VirtualClock extends Clock {
+
+	private final ZoneId zone;
+	private volatile long epochSecond;
+
+	public VirtualClock(long epochSecond, ZoneId zone) {
+		this.epochSecond = epochSecond;
+		this.zone = zone;
+	}
+
+	public void set(long epochSecond) {
+		this.epochSecond = epochSecond;
+	}
+
+	public void advance(long seconds) {
+		this.epochSecond += seconds;
+	}
+
+	public long getEpochSecond() {
+		return this.epochSecond;
+	}
+
+	@Override
+	public ZoneId getZone() {
+		return this.zone;
+	}
+
+	@Override
+	public Clock withZone(ZoneId z) {
+		return new VirtualClock(this.epochSecond, z);
+	}
+
+	@Override
+	public Instant instant() {
+		return Instant.ofEpochSecond(this.epochSecond);
+	}
+
+	@Override
+	public long millis() {
+		return this.epochSecond * 1000L;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.objects.Ruleset;
+import nl.das.terraria.objects.Timer;
+import nl.das.terraria.rest.BTServer;
+import nl.das.terraria.rest.CommandRegistry;
+import nl.das.terraria.rest.Response;
+
+/**
+ *
+ */
+public class BatchCommandTest {
+
+	@TempDir
+	Path folder;
+
+	private Terrarium terrarium;
+	private Path settings;
+
+	@BeforeEach
+	public void before() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		this.terrarium = Terrarium.fromJson(json);
+		Terrarium.register(71, this.terrarium);
+		this.settings = this.folder.resolve("settings.json");
+		this.terrarium.setSettingsFile(this.settings.toString());
+		this.terrarium.setLifecycleFile(this.folder.resolve("lifecycle.txt").toString());
+		this.terrarium.setNow(LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		this.terrarium.initMockDevices();
+		this.terrarium.initDeviceState();
+		this.terrarium.initSensors();
+		this.terrarium.initRules();
+	}
+
+	@Test
+	public void testTransaction() {
+		this.terrarium.beginTransaction();
+		this.terrarium.saveSettings();
+		this.terrarium.saveSettings();
+		this.terrarium.flushSettings();
+		assertFalse(Files.exists(this.settings), "Settings saved during the transaction");
+		this.terrarium.commit();
+		this.terrarium.flushSettings();
+		assertTrue(Files.exists(this.settings), "Settings not saved at commit");
+	}
+
+	@Test
+	public void testBatch() throws IOException {
+		String timer = "{\"device\":\"pump\",\"index\":1,\"hour_on\":9,\"minute_on\":15,\"hour_off\":9,\"minute_off\":45,\"period\":0,\"repeat\":1}";
+		JsonObject res = handle("{\"cmd\":\"batch\",\"terrarium\":71,\"data\":{\"commands\":["
+				+ "{\"cmd\":\"replaceTimers\",\"data\":{\"timers\":[" + timer + "]}},"
+				+ "{\"cmd\":\"setSprayerRule\",\"data\":" + CommandRegistry.JSONB.toJson(this.terrarium.getSprayerRule()) + "},"
+				+ "{\"cmd\":\"setDeviceOn\",\"data\":{\"device\":\"pump\"}},"
+				+ "{\"cmd\":\"getTimersForDevice\",\"data\":{\"device\":\"pump\"}}]}}");
+		assertFalse(res.containsKey("error"), res.toString());
+		assertEquals(4, res.getJsonArray("responses").size());
+		assertEquals(9, res.getJsonArray("responses").getJsonObject(3).getJsonArray("timers").getJsonObject(0).getInt("hour_on"));
+		assertTrue(this.terrarium.isDeviceOn("pump"));
+		this.terrarium.flushSettings();
+		assertTrue(Files.readString(this.settings).contains("\"minute_on\": 15"));
+	}
+
+	@Test
+	public void testRollback() throws IOException {
+		Timer before = this.terrarium.getTimersForDevice("pump")[0];
+		int hourOn = before.getHour_on();
+		String timer = "{\"device\":\"pump\",\"index\":1,\"hour_on\":" + ((hourOn + 1) % 24) + ",\"minute_on\":15,\"hour_off\":23,\"minute_off\":45,\"period\":0,\"repeat\":1}";
+		JsonObject res = handle("{\"cmd\":\"batch\",\"terrarium\":71,\"data\":{\"commands\":["
+				+ "{\"cmd\":\"setDeviceOn\",\"data\":{\"device\":\"pump\"}},"
+				+ "{\"cmd\":\"replaceTimers\",\"data\":{\"timers\":[" + timer + "]}},"
+				+ "{\"cmd\":\"setDeviceOnFor\",\"data\":{\"device\":\"mist\",\"period\":0}}]}}");
+		assertTrue(res.getString("error").startsWith("Command 3 'setDeviceOnFor' of the batch failed"), res.toString());
+		assertFalse(this.terrarium.isDeviceOn("pump"), "Device switch not undone");
+		assertEquals(hourOn, this.terrarium.getTimersForDevice("pump")[0].getHour_on(), "Timer change not undone");
+		this.terrarium.flushSettings();
+		assertFalse(Files.exists(this.settings), "Settings saved by a failed batch");
+		// A new batch can be started
+		res = handle("{\"cmd\":\"batch\",\"terrarium\":71,\"data\":{\"commands\":[{\"cmd\":\"getState\"}]}}");
+		assertFalse(res.containsKey("error"), res.toString());
+	}
+
+	@Test
+	public void testRollbackRuleset() throws IOException {
+		Ruleset rs = CommandRegistry.JSONB.fromJson(CommandRegistry.JSONB.toJson(this.terrarium.getRuleset(1)), Ruleset.class);
+		rs.setActive("no");
+		JsonObject res = handle("{\"cmd\":\"batch\",\"terrarium\":71,\"data\":{\"commands\":["
+				+ "{\"cmd\":\"saveRuleset\",\"data\":{\"rulesetnr\":1,\"ruleset\":" + CommandRegistry.JSONB.toJson(rs) + "}},"
+				+ "{\"cmd\":\"setDeviceOnFor\",\"data\":{\"device\":\"mist\",\"period\":0}}]}}");
+		assertTrue(res.getString("error").startsWith("Command 2 'setDeviceOnFor' of the batch failed"), res.toString());
+		assertEquals("yes", this.terrarium.getRuleset(1).getActive(), "Ruleset change not undone");
+		// The restored ruleset is executed again
+		this.terrarium.setSensors(21, 30);
+		this.terrarium.checkRules();
+		assertTrue(this.terrarium.isDeviceOn("fan_out"), "Rules of the restored ruleset not executed");
+		// The rule control of the devices is restored as well
+		this.terrarium.beginTransaction();
+		this.terrarium.setRuleActive("fan_out", 0);
+		this.terrarium.rollback();
+		assertEquals(1, this.terrarium.getRuleActive("fan_out"), "Rule control not restored");
+	}
+
+	@Test
+	public void testInvalidBatch() throws IOException {
+		assertEquals("Command 1 'batch' of the batch is not implemented.",
+				handle("{\"cmd\":\"batch\",\"terrarium\":71,\"data\":{\"commands\":[{\"cmd\":\"batch\"}]}}").getString("error"));
+		assertEquals("Command 2 'getState' of the batch is for another terrarium.",
+				handle("{\"cmd\":\"batch\",\"terrarium\":71,\"data\":{\"commands\":[{\"cmd\":\"getState\"},{\"cmd\":\"getState\",\"terrarium\":1}]}}").getString("error"));
+		assertEquals("JsonArray parameter 'commands' not found.", handle("{\"cmd\":\"batch\",\"terrarium\":71,\"data\":{}}").getString("error"));
+		assertEquals("Timer 1 of JsonArray parameter 'timers' has no device.",
+				handle("{\"cmd\":\"replaceTimers\",\"terrarium\":71,\"data\":{\"timers\":[{\"index\":1,\"hour_on\":9}]}}").getString("error"));
+	}
+
+	private static JsonObject handle(String command) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BTServer.handleCommand(command, bos);
+		String out = bos.toString();
+		return CommandRegistry.JSONB.fromJson(out.substring(0, out.length() - 1), Response.class).getResponse();
+	}
+}
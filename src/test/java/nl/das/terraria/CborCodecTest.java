@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.json.Json;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.BTServer;
+import nl.das.terraria.rest.CborCodec;
+import nl.das.terraria.rest.Command;
+import nl.das.terraria.rest.CommandRegistry;
+import nl.das.terraria.rest.Response;
+import nl.das.terraria.rest.Session;
+
+/**
+ *
+ */
+public class CborCodecTest {
+
+	@BeforeAll
+	public static void beforeAll() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		Terrarium terrarium = Terrarium.fromJson(json);
+		Terrarium.register(51, terrarium);
+		terrarium.setNow(LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors();
+		terrarium.initRules();
+	}
+
+	@Test
+	public void testEncoding() {
+		// Examples of RFC 8949 appendix A
+		assertArrayEquals(bytes(0x17), CborCodec.encode(Json.createValue(23)));
+		assertArrayEquals(bytes(0x1a, 0x00, 0x0f, 0x42, 0x40), CborCodec.encode(Json.createValue(1000000)));
+		assertArrayEquals(bytes(0x38, 0x63), CborCodec.encode(Json.createValue(-100)));
+		assertArrayEquals(bytes(0xfb, 0x3f, 0xf1, 0x99, 0x99, 0x99, 0x99, 0x99, 0x9a), CborCodec.encode(Json.createValue(1.1)));
+		assertArrayEquals(bytes(0x64, 0x49, 0x45, 0x54, 0x46), CborCodec.encode(Json.createValue("IETF")));
+		assertArrayEquals(bytes(0x82, 0x01, 0x82, 0x02, 0x03), CborCodec.encode(Json.createArrayBuilder().add(1).add(Json.createArrayBuilder().add(2).add(3)).build()));
+		assertArrayEquals(bytes(0xa1, 0x61, 0x61, 0xf5), CborCodec.encode(Json.createObjectBuilder().add("a", true).build()));
+		// Half and single precision floats are decoded
+		assertEquals(1.5, ((JsonNumber) CborCodec.decode(bytes(0xf9, 0x3e, 0x00), 0, 3)).doubleValue());
+		assertEquals(100000.0, ((JsonNumber) CborCodec.decode(bytes(0xfa, 0x47, 0xc3, 0x50, 0x00), 0, 5)).doubleValue());
+	}
+
+	@Test
+	public void testRoundTrip() {
+		JsonObject obj = Json.createObjectBuilder()
+				.add("device", "lämp 🦎")
+				.add("on", JsonValue.FALSE)
+				.add("none", JsonValue.NULL)
+				.add("numbers", Json.createArrayBuilder().add(0).add(-1).add(255).add(65536).add(Long.MAX_VALUE).add(Long.MIN_VALUE).add(21.5))
+				.add("nested", Json.createObjectBuilder().add("timers", Json.createArrayBuilder().add(Json.createObjectBuilder().add("hour_on", 9))))
+				.build();
+		byte[] b = CborCodec.encode(obj);
+		assertEquals(obj, CborCodec.decode(b, 0, b.length));
+		assertTrue(b.length < obj.toString().getBytes(StandardCharsets.UTF_8).length);
+		assertThrows(IllegalArgumentException.class, () -> CborCodec.decode(b, 0, b.length - 1));
+	}
+
+	@Test
+	public void testCommand() throws IOException {
+		Command cmd = new Command("setDeviceOn", Json.createObjectBuilder().add("device", "pump").build());
+		cmd.setTerrarium(51);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CborCodec.writeCommand(cmd, out);
+		byte[] b = out.toByteArray();
+		assertEquals(b.length - 4, ByteBuffer.wrap(b).getInt());
+		Command read = CborCodec.readCommand(b, 4, b.length - 4);
+		assertEquals(cmd.getMsgId(), read.getMsgId());
+		assertEquals("setDeviceOn", read.getCmd());
+		assertEquals(51, read.getTerrarium());
+		assertEquals(cmd.getData(), read.getData());
+	}
+
+	@Test
+	public void testMalformed() {
+		// {"data": [[[...]]]} nested far too deep, well within a frame
+		byte[] deep = new byte[200000];
+		deep[0] = (byte) 0xa1;
+		deep[1] = 0x64;
+		System.arraycopy("data".getBytes(StandardCharsets.UTF_8), 0, deep, 2, 4);
+		Arrays.fill(deep, 6, deep.length, (byte) 0x81);
+		assertThrows(IllegalArgumentException.class, () -> CborCodec.readCommand(deep, 0, deep.length));
+		// Nested as deep as allowed
+		byte[] nested = new byte[CborCodec.MAX_DEPTH + 1];
+		Arrays.fill(nested, 0, CborCodec.MAX_DEPTH, (byte) 0x81);
+		nested[CborCodec.MAX_DEPTH] = 0x00;
+		assertEquals(JsonValue.ValueType.ARRAY, CborCodec.decode(nested, 0, nested.length).getValueType());
+		// {"msgId": <nothing>}
+		byte[] msgId = bytes(0xa1, 0x65, 'm', 's', 'g', 'I', 'd');
+		assertThrows(IllegalArgumentException.class, () -> CborCodec.readCommand(msgId, 0, msgId.length));
+		// {"response": 1}
+		byte[] response = bytes(0xa1, 0x68, 'r', 'e', 's', 'p', 'o', 'n', 's', 'e', 0x01);
+		assertThrows(IllegalArgumentException.class, () -> CborCodec.readResponse(response, 0, response.length));
+	}
+
+	@Test
+	public void testNegotiation() throws IOException {
+		// The handshake and the binary commands after it in one go, as a pipelining client would send them
+		ByteArrayOutputStream in = new ByteArrayOutputStream();
+		in.write("{\"cmd\":\"getState\",\"terrarium\":51}\u0003".getBytes(StandardCharsets.UTF_8));
+		in.write("{\"cmd\":\"setEncoding\",\"data\":{\"encoding\":\"cbor\"}}\u0003".getBytes(StandardCharsets.UTF_8));
+		Command getState = new Command("getState", null);
+		getState.setTerrarium(51);
+		CborCodec.writeCommand(getState, in);
+		// A frame of 0x03 bytes is not mistaken for ETX terminated frames
+		in.write(bytes(0, 0, 0, 3, 3, 3, 3));
+		Command toJson = new Command(Session.SET_ENCODING, Json.createObjectBuilder().add("encoding", "json").build());
+		CborCodec.writeCommand(toJson, in);
+		in.write("{\"cmd\":\"getState\",\"terrarium\":51}\u0003".getBytes(StandardCharsets.UTF_8));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BTServer.serve(new ByteArrayInputStream(in.toByteArray()), out);
+		ByteBuffer res = ByteBuffer.wrap(out.toByteArray());
+
+		String jsonState = readJson(res);
+		assertTrue(jsonState.contains("\"state\""), jsonState);
+		assertTrue(readJson(res).contains("\"encoding\": \"cbor\""));
+		List<Response> cbor = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			int len = res.getInt();
+			cbor.add(CborCodec.readResponse(res.array(), res.position(), len));
+			res.position(res.position() + len);
+		}
+		// The first two are executed in parallel
+		Response state = cbor.get(0).getMsgId() != null ? cbor.get(0) : cbor.get(1);
+		Response invalid = cbor.get(0).getMsgId() != null ? cbor.get(1) : cbor.get(0);
+		assertEquals(getState.getMsgId(), state.getMsgId());
+		assertEquals(CommandRegistry.JSONB.fromJson(jsonState.substring(0, jsonState.length() - 1), Response.class).getResponse(), state.getResponse());
+		assertEquals("Command is not valid cbor.", invalid.getResponse().getString("error"));
+		assertNull(invalid.getMsgId());
+		assertEquals("json", cbor.get(2).getResponse().getString("encoding"));
+		String last = readJson(res);
+		assertTrue(last.contains("\"state\""), last);
+		assertFalse(res.hasRemaining());
+	}
+
+	@Test
+	public void testUnknownEncoding() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BTServer.serve(new ByteArrayInputStream("{\"cmd\":\"setEncoding\",\"data\":{\"encoding\":\"xml\"}}\u0003{\"cmd\":\"getState\",\"terrarium\":51}\u0003"
+				.getBytes(StandardCharsets.UTF_8)), out);
+		String[] res = out.toString(StandardCharsets.UTF_8).split("\u0003");
+		assertTrue(res[0].contains("String parameter 'encoding' must be 'json' or 'cbor'."), res[0]);
+		assertTrue(res[1].contains("\"state\""), res[1]);
+	}
+
+	private static String readJson(ByteBuffer bb) {
+		int start = bb.position();
+		while (bb.get() != 0x03) {
+		}
+		return new String(bb.array(), start, bb.position() - start, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] bytes(int... b) {
+		byte[] r = new byte[b.length];
+		for (int i = 0; i < b.length; i++) {
+			r[i] = (byte) b[i];
+		}
+		return r;
+	}
+}
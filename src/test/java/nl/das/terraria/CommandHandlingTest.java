@@ -19,6 +19,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringReader;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -39,6 +40,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.skyscreamer.jsonassert.JSONAssert;
 
 import nl.das.terraria.objects.Ruleset;
@@ -55,6 +57,9 @@ import nl.das.terraria.rest.Response;
  */
 public class CommandHandlingTest {
 
+	@TempDir
+	static Path folder;
+
 	private static Terrarium terrarium;
 	private static Jsonb jsonb;
 
@@ -63,6 +68,8 @@ public class CommandHandlingTest {
 		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
 		terrarium = Terrarium.getInstance(json);
 		assertNotNull(terrarium, "Terrarium object cannot be null");
+		terrarium.setSettingsFile(folder.resolve("settings.json").toString());
+		terrarium.setLifecycleFile(folder.resolve("lifecycle.txt").toString());
 		terrarium.setNow(LocalDateTime.now());
 		terrarium.initMockDevices();
 		terrarium.initDeviceState();
@@ -97,7 +104,7 @@ public class CommandHandlingTest {
 		try {
 			terrarium.setSensors(21, 26);
 			terrarium.setNow(LocalDateTime.of(LocalDate.of(2021, 1, 8), LocalTime.of(5, 0, 0)));
-			Terrarium.traceFolder = "src/test/resources/tracefiles";
+			terrarium.setTraceFolder("src/test/resources/tracefiles");
 			Command cmd = new Command();
 			cmd.setCmd("getSensors");
 			ByteArrayOutputStream bos = new ByteArrayOutputStream();
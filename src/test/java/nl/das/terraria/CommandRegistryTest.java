@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.BTServer;
+import nl.das.terraria.rest.CommandRegistry;
+import nl.das.terraria.rest.Response;
+
+/**
+ *
+ */
+public class CommandRegistryTest {
+
+	@BeforeAll
+	public static void beforeAll() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		Terrarium terrarium = Terrarium.fromJson(json);
+		Terrarium.register(41, terrarium);
+		terrarium.setNow(LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors();
+		terrarium.initRules();
+	}
+
+	@Test
+	public void testRegisteredCommand() throws IOException {
+		CommandRegistry.register("echo", (t, d) -> CommandRegistry.BUILDERS.createObjectBuilder()
+				.add("device", CommandRegistry.stringParam(d, "device")).build());
+		JsonObject res = handle("{\"cmd\":\"echo\",\"terrarium\":41,\"data\":{\"device\":\"pump\"}}");
+		assertEquals("pump", res.getString("device"));
+	}
+
+	@Test
+	public void testErrors() throws IOException {
+		assertEquals("Command 'unknown' is not implemented.", handle("{\"cmd\":\"unknown\",\"terrarium\":41}").getString("error"));
+		assertEquals("No data found.", handle("{\"cmd\":\"setDeviceOn\",\"terrarium\":41}").getString("error"));
+		assertEquals("String parameter 'device' not found.", handle("{\"cmd\":\"setDeviceOn\",\"terrarium\":41,\"data\":{}}").getString("error"));
+		assertEquals("Integer parameter 'period' must be > 0 and < 3600 seconds.",
+				handle("{\"cmd\":\"setDeviceOnFor\",\"terrarium\":41,\"data\":{\"device\":\"pump\",\"period\":4000}}").getString("error"));
+		assertEquals("JsonObject parameter 'ruleset' not found.", handle("{\"cmd\":\"saveRuleset\",\"terrarium\":41,\"data\":{\"rulesetnr\":1}}").getString("error"));
+	}
+
+	@Test
+	public void testAllCommandsRegistered() {
+		for (String cmd : new String[] {"getSensors", "setSensors", "setTestOff", "getState", "setDeviceOn", "setDeviceOff", "setDeviceOnFor",
+				"setDeviceManualOn", "setDeviceManualOff", "setLifecycleCounter", "getProperties", "setTraceOn", "setTraceOff",
+				"getTimersForDevice", "replaceTimers", "getRuleset", "saveRuleset", "getSprayerRule", "setSprayerRule",
+				"getTempTracefiles", "getStateTracefiles", "getTemperatureFile", "getStateFile",
+				"getTemperatureHistory"}) {
+			assertNotNull(CommandRegistry.get(cmd), "Command " + cmd + " is not registered");
+		}
+	}
+
+	private static JsonObject handle(String command) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BTServer.handleCommand(command, bos);
+		String out = bos.toString();
+		return CommandRegistry.JSONB.fromJson(out.substring(0, out.length() - 1), Response.class).getResponse();
+	}
+}
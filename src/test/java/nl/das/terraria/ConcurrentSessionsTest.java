@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.BTServer;
+
+/**
+ *
+ */
+public class ConcurrentSessionsTest {
+
+	private static final int NR_OF_SESSIONS = 4;
+	private static final int NR_OF_COMMANDS = 200;
+
+	@TempDir
+	Path folder;
+
+	@Test
+	public void testSessionsWithControlLoop() throws Exception {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		Terrarium terrarium = Terrarium.fromJson(json);
+		Terrarium.register(21, terrarium);
+		LocalDateTime start = LocalDateTime.of(2021, 8, 2, 12, 0, 0);
+		terrarium.setNow(start);
+		terrarium.setTraceFolder(this.folder.toString());
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors();
+		terrarium.setSensors(21, 26);
+		terrarium.initRules();
+
+		TerrariumController ctl = new TerrariumController();
+		ctl.add(terrarium);
+		AtomicBoolean running = new AtomicBoolean(true);
+		ExecutorService pool = Executors.newFixedThreadPool(NR_OF_SESSIONS + 1);
+		try {
+			// The control loop, as fast as possible
+			Future<?> loop = pool.submit(() -> {
+				LocalDateTime now = start;
+				while (running.get()) {
+					now = now.plusSeconds(1);
+					ctl.second(now);
+					if (now.getSecond() == 0) {
+						ctl.minute(now);
+					}
+				}
+			});
+			List<Future<String>> sessions = new ArrayList<>();
+			for (int s = 0; s < NR_OF_SESSIONS; s++) {
+				String device = s % 2 == 0 ? "pump" : "mist";
+				sessions.add(pool.submit(() -> {
+					StringBuilder in = new StringBuilder();
+					for (int i = 0; i < NR_OF_COMMANDS; i++) {
+						String cmd = (i % 3) == 0 ? "getState" : (i % 3) == 1 ? "setDeviceOn" : "setDeviceOff";
+						in.append("{\"cmd\":\"").append(cmd).append("\",\"terrarium\":21,\"data\":{\"device\":\"").append(device).append("\"}}\u0003");
+					}
+					ByteArrayOutputStream out = new ByteArrayOutputStream();
+					BTServer.serve(new ByteArrayInputStream(in.toString().getBytes()), out);
+					return out.toString();
+				}));
+			}
+			for (Future<String> f : sessions) {
+				String out = f.get();
+				assertEquals(NR_OF_COMMANDS, out.chars().filter(c -> c == 0x03).count(), "Not all commands have been answered");
+				assertFalse(out.contains("\"error\""), "Command failed: " + out);
+			}
+			running.set(false);
+			loop.get();
+		} finally {
+			running.set(false);
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testSessionEndsOnClose() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BTServer.serve(new ByteArrayInputStream(new byte[0]), out);
+		assertEquals(0, out.size());
+	}
+}
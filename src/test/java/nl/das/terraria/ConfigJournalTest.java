@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.objects.Timer;
+
+/**
+ *
+ */
+public class ConfigJournalTest {
+
+	@TempDir
+	Path folder;
+
+	private Path settings;
+	private Path journal;
+	private Terrarium terrarium;
+
+	@BeforeEach
+	public void before() throws IOException {
+		this.settings = this.folder.resolve("settings.json");
+		this.journal = this.folder.resolve("settings.json.journal");
+		Files.copy(Paths.get("src/test/resources/settings.json"), this.settings);
+		this.terrarium = load();
+	}
+
+	@AfterEach
+	public void after() {
+		ConfigJournal.setCompactSize(ConfigJournal.DEFAULT_COMPACT_SIZE);
+	}
+
+	@Test
+	public void testReplay() throws IOException {
+		String snapshot = Files.readString(this.settings);
+		changeTimer(9);
+		int from = this.terrarium.getRuleset(1).getFrom().equals("10:30") ? 1 : 2;
+		this.terrarium.getRuleset(1).setFrom(from == 1 ? "11:00" : "10:30");
+		this.terrarium.saveRuleset(1);
+		// Only the records have been written
+		assertEquals(snapshot, Files.readString(this.settings));
+		assertEquals(2, Files.readAllLines(this.journal).size());
+		Terrarium loaded = load();
+		assertEquals(9, loaded.getTimersForDevice("pump")[0].getHour_on());
+		assertEquals(this.terrarium.getRuleset(1).getFrom(), loaded.getRuleset(1).getFrom());
+		// A change after a replay goes after the records that have been replayed
+		changeTimer(10);
+		assertEquals(10, load().getTimersForDevice("pump")[0].getHour_on());
+	}
+
+	@Test
+	public void testTornRecord() throws IOException {
+		changeTimer(9);
+		long size = Files.size(this.journal);
+		changeTimer(10);
+		long full = Files.size(this.journal);
+		// The power fails while the next record is written
+		Files.write(this.journal, new byte[] { 'x', '1' }, StandardOpenOption.APPEND);
+		Terrarium loaded = load();
+		assertEquals(10, loaded.getTimersForDevice("pump")[0].getHour_on());
+		assertEquals(full, Files.size(this.journal), "Incomplete record not removed");
+		// A damaged record ends the replay
+		byte[] b = Files.readAllBytes(this.journal);
+		b[(int) size + 20] ^= 1;
+		Files.write(this.journal, b);
+		assertEquals(9, load().getTimersForDevice("pump")[0].getHour_on());
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		ConfigJournal.setCompactSize(1000);
+		for (int h = 1; h <= 10; h++) {
+			changeTimer(h);
+		}
+		this.terrarium.flushSettings();
+		// All changes are in the snapshot
+		assertFalse(Files.exists(this.journal));
+		try (var files = Files.list(this.folder)) {
+			assertTrue(files.noneMatch(p -> p.getFileName().toString().startsWith("settings.json.journal.")));
+		}
+		assertEquals(10, SettingsStore.load(this.settings.toString(), Terrarium::fromJson).getTimersForDevice("pump")[0].getHour_on());
+		assertEquals(10, load().getTimersForDevice("pump")[0].getHour_on());
+	}
+
+	private void changeTimer(int hourOn) {
+		Timer t = this.terrarium.getTimersForDevice("pump")[0];
+		t.setHour_on(hourOn);
+		Timer[] timers = new Timer[] { t };
+		this.terrarium.replaceTimers(timers);
+		this.terrarium.saveTimers(timers);
+	}
+
+	private Terrarium load() throws IOException {
+		Terrarium t = SettingsStore.load(this.settings.toString(), Terrarium::fromJson);
+		t.setSettingsFile(this.settings.toString());
+		t.setNow(LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		t.initMockDevices();
+		t.replayJournal();
+		return t;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.rest.BTServer;
+import nl.das.terraria.rest.FrameDecoder;
+
+/**
+ *
+ */
+public class FrameDecoderTest {
+
+	private static class Collector implements FrameDecoder.Handler {
+		List<String> frames = new ArrayList<>();
+		List<byte[]> buffers = new ArrayList<>();
+
+		@Override
+		public void frame(byte[] buf, int off, int len) {
+			this.frames.add(new String(buf, off, len, StandardCharsets.UTF_8));
+			this.buffers.add(buf);
+		}
+
+		@Override
+		public void oversized(int maxFrameSize) {
+			this.frames.add("<oversized>");
+			this.buffers.add(null);
+		}
+	}
+
+	@Test
+	public void testFramesInOneChunk() throws IOException {
+		byte[] in = "one\u0003two\u0003\u0003rest".getBytes(StandardCharsets.UTF_8);
+		FrameDecoder decoder = new FrameDecoder();
+		Collector c = new Collector();
+		decoder.decode(in, 0, in.length, c);
+		assertEquals(List.of("one", "two", ""), c.frames);
+		// Complete frames are not copied
+		assertSame(in, c.buffers.get(0));
+		c.frames.clear();
+		byte[] more = "-of-frame\u0003".getBytes(StandardCharsets.UTF_8);
+		decoder.decode(more, 0, more.length, c);
+		assertEquals(List.of("rest-of-frame"), c.frames);
+	}
+
+	@Test
+	public void testUtf8SplitOverChunks() throws IOException {
+		byte[] in = "{\"device\":\"lämp °C 🦎\"}\u0003".getBytes(StandardCharsets.UTF_8);
+		// Feed the bytes one at a time, so every multi-byte character is split
+		FrameDecoder decoder = new FrameDecoder();
+		Collector c = new Collector();
+		for (int i = 0; i < in.length; i++) {
+			decoder.decode(in, i, 1, c);
+		}
+		assertEquals(List.of("{\"device\":\"lämp °C 🦎\"}"), c.frames);
+	}
+
+	@Test
+	public void testOversized() throws IOException {
+		FrameDecoder decoder = new FrameDecoder(10);
+		Collector c = new Collector();
+		byte[] in = "0123456789\u000301234567890\u0003ok\u0003".getBytes(StandardCharsets.UTF_8);
+		decoder.decode(in, 0, in.length, c);
+		assertEquals(List.of("0123456789", "<oversized>", "ok"), c.frames);
+		// Oversized over several chunks
+		c.frames.clear();
+		byte[] part = "012345".getBytes(StandardCharsets.UTF_8);
+		decoder.decode(part, 0, part.length, c);
+		decoder.decode(part, 0, part.length, c);
+		in = "x\u0003ok\u0003".getBytes(StandardCharsets.UTF_8);
+		decoder.decode(in, 0, in.length, c);
+		assertEquals(List.of("<oversized>", "ok"), c.frames);
+	}
+
+	@Test
+	public void testReadStream() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append("frame ").append(i).append(" é\u0003");
+		}
+		Collector c = new Collector();
+		new FrameDecoder().read(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)), c);
+		assertEquals(1000, c.frames.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals("frame " + i + " é", c.frames.get(i));
+		}
+	}
+
+	@Test
+	public void testServeOversizedCommand() throws IOException {
+		StringBuilder sb = new StringBuilder("{\"cmd\":\"getState\",\"data\":{\"x\":\"");
+		while (sb.length() <= FrameDecoder.DEFAULT_MAX_FRAME_SIZE) {
+			sb.append("xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx");
+		}
+		sb.append("\"}}\u0003{\"cmd\":\"unknown\"}\u0003");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BTServer.serve(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)), out);
+		String[] responses = out.toString(StandardCharsets.UTF_8).split("\u0003");
+		assertEquals(2, responses.length);
+		assertTrue(responses[0].contains("Command is longer than " + FrameDecoder.DEFAULT_MAX_FRAME_SIZE + " bytes."), responses[0]);
+		// The next command is still answered
+		assertTrue(responses[1].contains("\"command\": \"unknown\""), responses[1]);
+	}
+}
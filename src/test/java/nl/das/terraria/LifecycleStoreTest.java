@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ */
+public class LifecycleStoreTest {
+
+	@TempDir
+	Path folder;
+
+	@Test
+	public void testUpdateInPlace() throws IOException {
+		Path file = this.folder.resolve("lifecycle.txt");
+		try (LifecycleStore store = LifecycleStore.open(file.toString(), counters(4400, 1000))) {
+			long size = Files.size(file);
+			for (int v = 4399; v > 4300; v--) {
+				store.set("uvlight", v);
+			}
+			store.set("light1", 999);
+			assertEquals(size, Files.size(file));
+			assertEquals(4301, store.get("uvlight"));
+		}
+		Map<String, Integer> read = LifecycleStore.read(file.toString());
+		assertEquals(4301, read.get("uvlight"));
+		assertEquals(999, read.get("light1"));
+		// The counters in the file are used, not the ones given
+		try (LifecycleStore store = LifecycleStore.open(file.toString(), counters(1, 1))) {
+			assertEquals(4301, store.get("uvlight"));
+			assertEquals(999, store.get("light1"));
+		}
+	}
+
+	@Test
+	public void testTextFile() throws IOException {
+		Path file = this.folder.resolve("lifecycle.txt");
+		Files.writeString(file, "uvlight=4400\nother=12\n");
+		try (LifecycleStore store = LifecycleStore.open(file.toString(), counters(1, 1000))) {
+			assertEquals(4400, store.get("uvlight"));
+			// Not in the text file
+			assertEquals(1000, store.get("light1"));
+		}
+		assertEquals(LifecycleStore.HEADER_SIZE + (2 * LifecycleStore.SLOT_SIZE), Files.size(file));
+		assertFalse(LifecycleStore.read(file.toString()).containsKey("other"));
+		// Another set of devices rebuilds the file and keeps the counters
+		Map<String, Integer> devices = new LinkedHashMap<>();
+		devices.put("uvlight", 1);
+		try (LifecycleStore store = LifecycleStore.open(file.toString(), devices)) {
+			assertEquals(4400, store.get("uvlight"));
+		}
+		assertEquals(LifecycleStore.HEADER_SIZE + LifecycleStore.SLOT_SIZE, Files.size(file));
+	}
+
+	@Test
+	public void testTornWrite() throws IOException {
+		Path file = this.folder.resolve("lifecycle.txt");
+		try (LifecycleStore store = LifecycleStore.open(file.toString(), counters(4400, 1000))) {
+			store.set("uvlight", 4399);
+			store.set("uvlight", 4398);
+		}
+		// The power fails while the copy with 4398 is written
+		byte[] b = Files.readAllBytes(file);
+		b[LifecycleStore.HEADER_SIZE + LifecycleStore.NAME_SIZE + 4 + 3] ^= 1;
+		Files.write(file, b);
+		try (LifecycleStore store = LifecycleStore.open(file.toString(), counters(1, 1))) {
+			assertEquals(4399, store.get("uvlight"));
+			assertEquals(1000, store.get("light1"));
+			store.set("uvlight", 4397);
+		}
+		assertEquals(4397, LifecycleStore.read(file.toString()).get("uvlight"));
+		// Both copies of a counter damaged while the file is rebuilt for other devices
+		b = Files.readAllBytes(file);
+		int light1 = LifecycleStore.HEADER_SIZE + LifecycleStore.SLOT_SIZE + LifecycleStore.NAME_SIZE;
+		b[light1 + 4] ^= 1;
+		b[light1 + LifecycleStore.COPY_SIZE + 4] ^= 1;
+		Files.write(file, b);
+		assertFalse(LifecycleStore.read(file.toString()).containsKey("light1"));
+		Map<String, Integer> devices = counters(1, 500);
+		devices.put("light2", 2);
+		try (LifecycleStore store = LifecycleStore.open(file.toString(), devices)) {
+			assertEquals(4397, store.get("uvlight"));
+			assertEquals(500, store.get("light1"));
+			assertEquals(2, store.get("light2"));
+		}
+	}
+
+	private static Map<String, Integer> counters(int uvlight, int light1) {
+		Map<String, Integer> counters = new LinkedHashMap<>();
+		counters.put("uvlight", uvlight);
+		counters.put("light1", light1);
+		return counters;
+	}
+}
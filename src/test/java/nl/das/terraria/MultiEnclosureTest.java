@@ -0,0 +1,127 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.Sensors;
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.BTServer;
+import nl.das.terraria.rest.Command;
+import nl.das.terraria.rest.Response;
+
+/**
+ *
+ */
+public class MultiEnclosureTest {
+
+	private static Terrarium terrarium1;
+	private static Terrarium terrarium2;
+	private static Jsonb jsonb;
+
+	@BeforeAll
+	public static void beforeAll () throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		terrarium1 = create(json, 11);
+		terrarium2 = create(json, 12);
+		jsonb = JsonbBuilder.create();
+	}
+
+	private static Terrarium create(String json, int id) {
+		Terrarium t = Terrarium.fromJson(json);
+		Terrarium.register(id, t);
+		t.setNow(LocalDateTime.of(2021, 8, 5, 10, 0, 0));
+		t.initMockDevices();
+		t.initDeviceState();
+		t.initSensors();
+		t.initRules();
+		return t;
+	}
+
+	@Test
+	public void testCommandRouting() throws IOException {
+		JsonObject data = Json.createObjectBuilder().add("device", "light1").build();
+		Command cmd = new Command("setDeviceOn", data);
+		cmd.setTerrarium(12);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BTServer.handleCommand(jsonb.toJson(cmd), bos);
+		assertNull(jsonb.fromJson(bos.toString(), Response.class).getResponse(), "Unexpected setDeviceOn response");
+		assertTrue(terrarium2.isDeviceOn("light1"), "Light1 of enclosure 12 is not on");
+		assertFalse(terrarium1.isDeviceOn("light1"), "Light1 of enclosure 11 is on");
+
+		cmd = new Command("setDeviceOff", data);
+		cmd.setTerrarium(12);
+		bos = new ByteArrayOutputStream();
+		BTServer.handleCommand(jsonb.toJson(cmd), bos);
+		assertFalse(terrarium2.isDeviceOn("light1"), "Light1 of enclosure 12 is not off");
+
+		cmd = new Command("setDeviceOn", data);
+		cmd.setTerrarium(99);
+		bos = new ByteArrayOutputStream();
+		BTServer.handleCommand(jsonb.toJson(cmd), bos);
+		assertEquals("Terrarium 99 does not exist.", jsonb.fromJson(bos.toString(), Response.class).getResponse().getString("error"));
+	}
+
+	@Test
+	public void testControllerTicks() {
+		TerrariumController ctl = new TerrariumController();
+		ctl.add(terrarium1);
+		ctl.add(terrarium2);
+		ctl.start(2);
+		try {
+			LocalDateTime now = LocalDateTime.of(2021, 8, 5, 10, 0, 0);
+			terrarium1.setDeviceOn("pump", Util.now(now) + 10);
+			terrarium2.setDeviceOn("pump", Util.now(now) + 20);
+			ctl.second(now.plusSeconds(10));
+			assertFalse(terrarium1.isDeviceOn("pump"), "Pump of enclosure 11 is not off");
+			assertTrue(terrarium2.isDeviceOn("pump"), "Pump of enclosure 12 is not on");
+			assertEquals(now.plusSeconds(10), terrarium2.getNow());
+			ctl.second(now.plusSeconds(20));
+			assertFalse(terrarium2.isDeviceOn("pump"), "Pump of enclosure 12 is not off");
+		} finally {
+			ctl.stop();
+		}
+	}
+
+	@Test
+	public void testSharedSensors() {
+		// Within the read interval the values of the last read are given, as a copy
+		int[] values = Sensors.readHardware();
+		int room = values[0];
+		values[0] = room + 1;
+		assertArrayEquals(Sensors.readHardware(), Sensors.readHardware());
+		assertEquals(room, Sensors.readHardware()[0]);
+		// The values read for all enclosures are handed to each of them
+		int[] read = new int[] { 22, 60, 27 };
+		terrarium1.readSensorValues(read);
+		terrarium2.readSensorValues(read);
+		assertEquals(22, terrarium1.getRoomTemperature());
+		assertEquals(27, terrarium2.getTerrariumTemperature());
+		assertEquals(60, terrarium2.getLastSensorValues().getSensors()[0].getHumidity());
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.BTServer;
+import nl.das.terraria.rest.CommandRegistry;
+import nl.das.terraria.rest.CommandRegistry.Mode;
+import nl.das.terraria.rest.Pipeline;
+import nl.das.terraria.rest.Response;
+import nl.das.terraria.rest.Session;
+
+/**
+ *
+ */
+public class PipelineTest {
+
+	@BeforeAll
+	public static void beforeAll() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		Terrarium terrarium = Terrarium.fromJson(json);
+		Terrarium.register(61, terrarium);
+		terrarium.setNow(LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors();
+		terrarium.initRules();
+	}
+
+	@Test
+	public void testOutOfOrder() throws Exception {
+		CountDownLatch fastDone = new CountDownLatch(1);
+		CommandRegistry.register("slowQuery", Mode.UNLOCKED_QUERY, (t, d) -> {
+			// Only finishes after the command sent after it has been answered
+			assertTrue(fastDone.await(10, TimeUnit.SECONDS), "The slow query blocks the next command");
+			return null;
+		});
+		List<Response> responses = Collections.synchronizedList(new ArrayList<>());
+		Pipeline pipeline = new Pipeline(r -> {
+			Response res = parse(r);
+			responses.add(res);
+			if (res.getCommand().equals("getState")) {
+				fastDone.countDown();
+			}
+		});
+		submit(pipeline, "{\"cmd\":\"slowQuery\",\"terrarium\":61}\u0003{\"cmd\":\"getState\",\"terrarium\":61}\u0003");
+		pipeline.await();
+		assertEquals(2, responses.size());
+		assertEquals("getState", responses.get(0).getCommand());
+		assertEquals("slowQuery", responses.get(1).getCommand());
+	}
+
+	@Test
+	public void testUpdatesInOrder() throws Exception {
+		AtomicInteger counter = new AtomicInteger();
+		CommandRegistry.register("increment", (t, d) -> {
+			// Give later commands the chance to overtake
+			Thread.sleep(d.getInt("delay"));
+			return CommandRegistry.BUILDERS.createObjectBuilder().add("value", counter.incrementAndGet()).build();
+		});
+		CommandRegistry.register("counter", Mode.QUERY, (t, d) -> CommandRegistry.BUILDERS.createObjectBuilder().add("value", counter.get()).build());
+		List<Response> responses = Collections.synchronizedList(new ArrayList<>());
+		Pipeline pipeline = new Pipeline(r -> responses.add(parse(r)));
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20; i++) {
+			sb.append("{\"cmd\":\"increment\",\"terrarium\":61,\"data\":{\"delay\":").append(i % 3).append("}}\u0003");
+			sb.append("{\"cmd\":\"counter\",\"terrarium\":61}\u0003");
+			sb.append("{\"cmd\":\"counter\",\"terrarium\":61}\u0003");
+		}
+		submit(pipeline, sb.toString());
+		pipeline.await();
+		assertEquals(60, responses.size());
+		int expected = 1;
+		for (Response res : responses) {
+			JsonObject obj = res.getResponse();
+			if (res.getCommand().equals("increment")) {
+				// The updates are done in order
+				assertEquals(expected++, obj.getInt("value"));
+			} else {
+				// A query sees the update sent before it, and not the one after it
+				assertEquals(expected - 1, obj.getInt("value"));
+			}
+		}
+	}
+
+	@Test
+	public void testClientThatDoesNotRead() throws Exception {
+		CountDownLatch reading = new CountDownLatch(1);
+		AtomicInteger written = new AtomicInteger();
+		// A client that does not read: the first write blocks until it reads again
+		OutputStream stalled = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				try {
+					reading.await();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				for (int i = off; i < (off + len); i++) {
+					if (b[i] == 0x03) {
+						written.incrementAndGet();
+					}
+				}
+			}
+		};
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append("{\"cmd\":\"getState\",\"terrarium\":61}\u0003");
+		}
+		Thread slow = new Thread(() -> {
+			try {
+				BTServer.serve(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)), stalled);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+		slow.setDaemon(true);
+		slow.start();
+		// The other clients are still served
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+			for (int i = 0; i < 50; i++) {
+				out.reset();
+				BTServer.serve(new ByteArrayInputStream("{\"cmd\":\"getState\",\"terrarium\":61}\u0003".getBytes(StandardCharsets.UTF_8)), out);
+				assertEquals("getState", parse(out.toByteArray()).getCommand());
+			}
+		});
+		reading.countDown();
+		slow.join(10000);
+		assertEquals(100, written.get());
+	}
+
+	private static void submit(Pipeline pipeline, String commands) throws IOException {
+		byte[] b = commands.getBytes(StandardCharsets.UTF_8);
+		new Session().decode(b, 0, b.length, pipeline::submit);
+	}
+
+	private static Response parse(byte[] response) {
+		return CommandRegistry.JSONB.fromJson(new String(response, 0, response.length - 1, StandardCharsets.UTF_8), Response.class);
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ */
+public class SensorSeriesTest {
+
+	@TempDir
+	Path folder;
+
+	private static final LocalDateTime START = LocalDateTime.of(2021, 8, 1, 0, 0, 0);
+
+	@Test
+	public void testMonth() throws IOException {
+		try (SensorSeries series = new SensorSeries(this.folder.toString())) {
+			for (int m = 0; m < (31 * 1440); m++) {
+				series.append(START.plusMinutes(m), values(m));
+			}
+		}
+		Path file = this.folder.resolve(SensorSeries.PREFIX + "202108");
+		assertTrue(Files.size(file) < (100 * 1024), "Month takes " + Files.size(file) + " bytes");
+		SensorSeries series = new SensorSeries(this.folder.toString());
+		List<SensorSeries.Sample> samples = new ArrayList<>();
+		series.scan(START.plusDays(9).plusHours(23), START.plusDays(10).plusHours(1), samples::add);
+		assertEquals(120, samples.size());
+		for (int i = 0; i < samples.size(); i++) {
+			int m = (9 * 1440) + (23 * 60) + i;
+			assertEquals(START.plusMinutes(m), samples.get(i).getTime());
+			assertEquals(values(m)[0], samples.get(i).getRoomTemperature());
+			assertEquals(values(m)[1], samples.get(i).getRoomHumidity());
+			assertEquals(values(m)[2], samples.get(i).getTerrariumTemperature());
+			assertEquals(values(m)[3], samples.get(i).getTerrariumHumidity());
+		}
+		// Across the end of the month there is only August
+		samples.clear();
+		series.scan(START.plusDays(30).plusHours(23), START.plusDays(31).plusHours(1), samples::add);
+		assertEquals(60, samples.size());
+	}
+
+	@Test
+	public void testExport() throws IOException {
+		try (SensorSeries series = new SensorSeries(this.folder.toString())) {
+			series.append(START.plusHours(10), new int[] { 21, 60, 26, 0 });
+			series.append(START.plusHours(10).plusMinutes(1), new int[] { 21, 61, 27, 0 });
+			series.append(START.plusHours(10).plusMinutes(2), new int[] { -2, 61, 27, 0 });
+			assertEquals("2021-08-01 10:00:00 r=21 t=26\n2021-08-01 10:01:00 r=21 t=27\n2021-08-01 10:02:00 r=-2 t=27\n",
+					series.export(START, START.plusDays(1)));
+		}
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		try (SensorSeries series = new SensorSeries(this.folder.toString())) {
+			for (int m = 0; m < 10; m++) {
+				series.append(START.plusMinutes(m), values(m));
+			}
+		}
+		Path file = this.folder.resolve(SensorSeries.PREFIX + "202108");
+		long size = Files.size(file);
+		// The power fails while a sample is written, and the header already has it
+		Files.write(file, new byte[] { 0x78, 0, 0 }, StandardOpenOption.APPEND);
+		byte[] b = Files.readAllBytes(file);
+		b[15] += 3;
+		Files.write(file, b);
+		try (SensorSeries series = new SensorSeries(this.folder.toString())) {
+			for (int m = 10; m < 20; m++) {
+				series.append(START.plusMinutes(m), values(m));
+			}
+			// An earlier day is ignored
+			series.append(START.minusDays(1), values(0));
+		}
+		assertTrue(Files.size(file) > size);
+		List<SensorSeries.Sample> samples = new ArrayList<>();
+		new SensorSeries(this.folder.toString()).scan(START, START.plusDays(1), samples::add);
+		assertEquals(20, samples.size());
+		for (int m = 0; m < 20; m++) {
+			assertEquals(START.plusMinutes(m), samples.get(m).getTime());
+			assertEquals(values(m)[2], samples.get(m).getTerrariumTemperature());
+		}
+	}
+
+	private static int[] values(int minute) {
+		// Slow changes, as in an enclosure
+		return new int[] { 20 + ((minute / 97) % 5), 55 + ((minute / 31) % 10), 25 + ((minute / 61) % 4), 0 };
+	}
+}
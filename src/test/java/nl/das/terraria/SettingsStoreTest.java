@@ -0,0 +1,99 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ *
+ */
+public class SettingsStoreTest {
+
+	@TempDir
+	Path folder;
+
+	@AfterEach
+	public void after() {
+		SettingsStore.setQuietPeriod(SettingsStore.DEFAULT_QUIET_PERIOD_MS);
+	}
+
+	@Test
+	public void testQuietPeriod() throws Exception {
+		SettingsStore.setQuietPeriod(300);
+		Path file = this.folder.resolve("settings.json");
+		for (int i = 0; i < 5; i++) {
+			SettingsStore.save(file.toString(), "{\"v\":" + i + "}");
+			Thread.sleep(50);
+		}
+		// Every save has started the quiet period again
+		assertFalse(Files.exists(file), "Written during the burst");
+		long end = System.currentTimeMillis() + 5000;
+		while (!Files.exists(file) && (System.currentTimeMillis() < end)) {
+			Thread.sleep(10);
+		}
+		assertEquals("{\"v\":4}", Files.readString(file));
+		// The first write has nothing to keep
+		assertFalse(Files.exists(SettingsStore.backup(file)));
+		assertFalse(Files.exists(this.folder.resolve("settings.json.tmp")));
+	}
+
+	@Test
+	public void testBackup() throws IOException {
+		Path file = this.folder.resolve("settings.json");
+		SettingsStore.save(file.toString(), "{\"v\":1}");
+		SettingsStore.flush(file.toString());
+		SettingsStore.save(file.toString(), "{\"v\":2}");
+		SettingsStore.flush(file.toString());
+		assertEquals("{\"v\":2}", Files.readString(file));
+		assertEquals("{\"v\":1}", Files.readString(SettingsStore.backup(file)));
+		// Nothing new to write
+		Files.delete(file);
+		SettingsStore.flush(file.toString());
+		assertFalse(Files.exists(file));
+	}
+
+	@Test
+	public void testRecovery() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		Terrarium terrarium = Terrarium.fromJson(json);
+		terrarium.setNow(LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		terrarium.initMockDevices();
+		Path file = this.folder.resolve("settings.json");
+		terrarium.setSettingsFile(file.toString());
+		terrarium.saveSettings();
+		terrarium.flushSettings();
+		terrarium.saveSettings();
+		terrarium.flushSettings();
+		// A write that has been cut off
+		Files.writeString(file, json.substring(0, json.length() / 2));
+		Terrarium loaded = SettingsStore.load(file.toString(), Terrarium::fromJson);
+		assertEquals(terrarium.getTimersForDevice("pump")[0].getHour_on(), loaded.getTimersForDevice("pump")[0].getHour_on());
+		assertThrows(NoSuchFileException.class, () -> SettingsStore.load(this.folder.resolve("none.json").toString(), Terrarium::fromJson));
+		Files.delete(SettingsStore.backup(file));
+		assertThrows(RuntimeException.class, () -> SettingsStore.load(file.toString(), Terrarium::fromJson));
+		assertTrue(Files.exists(file));
+	}
+}
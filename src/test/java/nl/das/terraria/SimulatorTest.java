@@ -0,0 +1,56 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.sim.SimpleTemperatureModel;
+import nl.das.terraria.sim.SimulationStats;
+import nl.das.terraria.sim.Simulator;
+
+/**
+ *
+ */
+public class SimulatorTest {
+
+	@Test
+	public void testWeek() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		Terrarium terrarium = Terrarium.fromJson(json);
+		Simulator sim = new Simulator(terrarium, new SimpleTemperatureModel(), LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		SimulationStats stats = sim.run(Duration.ofDays(7));
+		assertEquals(7 * 86400, stats.getSimulatedSeconds());
+		assertTrue(stats.toString().startsWith("Simulated 7 days in "), stats.toString());
+		// light1 09:00 - 21:00 is already on at the start
+		assertEquals(7, stats.getSwitchOns("light1"));
+		assertEquals(7 * 12 * 3600, stats.getOnSeconds("light1"));
+		assertEquals(0.5, stats.getDutyCycle("light1"), 0.0001);
+		// light6 22:15 - 09:00
+		assertEquals(7, stats.getSwitchOns("light6"));
+		assertEquals(7 * ((10 * 3600) + (45 * 60)), stats.getOnSeconds("light6"));
+		// sprayer 10:05 for 30 seconds
+		assertEquals(7, stats.getSwitchOns("sprayer"));
+		assertEquals(7 * 30, stats.getOnSeconds("sprayer"));
+		// the sprayer rule switches fan_in and fan_out on 15 minutes after spraying
+		assertTrue(stats.getRuleFirings("fan_in") >= 7, "Sprayer rule did not fire fan_in every day");
+		assertTrue(stats.getMaxTemperature() > stats.getMinTemperature());
+		assertEquals(LocalDateTime.of(2021, 8, 9, 12, 0, 0), terrarium.getNow());
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.BTServer;
+import nl.das.terraria.rest.CommandRegistry;
+import nl.das.terraria.rest.Response;
+
+/**
+ *
+ */
+public class StateVersionTest {
+
+	private Terrarium terrarium;
+
+	@BeforeEach
+	public void before() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		this.terrarium = Terrarium.fromJson(json);
+		Terrarium.register(91, this.terrarium);
+		this.terrarium.setNow(LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		this.terrarium.initMockDevices();
+		this.terrarium.initDeviceState();
+		this.terrarium.initSensors();
+		this.terrarium.initRules();
+	}
+
+	@Test
+	public void testDelta() throws IOException {
+		JsonObject full = handle("{\"cmd\":\"getState\",\"terrarium\":91}");
+		int nrOfDevices = this.terrarium.getConfig().getDeviceList().length;
+		assertEquals(nrOfDevices, full.getJsonArray("state").size());
+		long version = full.getJsonNumber("version").longValue();
+		// Nothing has changed
+		JsonObject delta = handle("{\"cmd\":\"getState\",\"terrarium\":91,\"data\":{\"since\":" + version + "}}");
+		assertEquals(version, delta.getJsonNumber("version").longValue());
+		assertEquals(0, delta.getJsonArray("state").size());
+		assertEquals("off", delta.getString("trace"));
+		// Only the changed devices
+		handle("{\"cmd\":\"setDeviceOn\",\"terrarium\":91,\"data\":{\"device\":\"pump\"}}");
+		handle("{\"cmd\":\"setDeviceManualOn\",\"terrarium\":91,\"data\":{\"device\":\"mist\"}}");
+		delta = handle("{\"cmd\":\"getState\",\"terrarium\":91,\"data\":{\"since\":" + version + "}}");
+		long next = delta.getJsonNumber("version").longValue();
+		assertTrue(next > version);
+		JsonArray state = delta.getJsonArray("state");
+		assertEquals(2, state.size());
+		assertEquals("pump", state.getJsonObject(0).getString("device"));
+		assertEquals("on", state.getJsonObject(0).getString("state"));
+		assertEquals("mist", state.getJsonObject(1).getString("device"));
+		assertEquals("yes", state.getJsonObject(1).getString("manual"));
+		assertEquals(0, handle("{\"cmd\":\"getState\",\"terrarium\":91,\"data\":{\"since\":" + next + "}}").getJsonArray("state").size());
+		// A version this terrarium has never given gets the full state
+		assertEquals(nrOfDevices, handle("{\"cmd\":\"getState\",\"terrarium\":91,\"data\":{\"since\":" + (next + 1000) + "}}").getJsonArray("state").size());
+	}
+
+	@Test
+	public void testInvalidSince() throws IOException {
+		assertEquals("Long parameter 'since' is not an integer number.", handle("{\"cmd\":\"getState\",\"terrarium\":91,\"data\":{\"since\":\"x\"}}").getString("error"));
+	}
+
+	private static JsonObject handle(String command) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BTServer.handleCommand(command, bos);
+		String out = bos.toString();
+		return CommandRegistry.JSONB.fromJson(out.substring(0, out.length() - 1), Response.class).getResponse();
+	}
+}
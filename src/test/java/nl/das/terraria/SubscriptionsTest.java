@@ -0,0 +1,189 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.CommandRegistry;
+import nl.das.terraria.rest.Pipeline;
+import nl.das.terraria.rest.Response;
+import nl.das.terraria.rest.Session;
+import nl.das.terraria.rest.Subscriptions;
+
+/**
+ *
+ */
+public class SubscriptionsTest {
+
+	private static final int INTERVAL = 300;
+
+	private Terrarium terrarium;
+	private List<Response> frames;
+	private Subscriptions subscriptions;
+	private Pipeline pipeline;
+	private final AtomicInteger refuse = new AtomicInteger();
+
+	@BeforeAll
+	public static void beforeAll() {
+		Subscriptions.setMinInterval(100);
+	}
+
+	@BeforeEach
+	public void before() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		this.terrarium = Terrarium.fromJson(json);
+		Terrarium.register(81, this.terrarium);
+		this.terrarium.setNow(LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		this.terrarium.initMockDevices();
+		this.terrarium.initDeviceState();
+		this.terrarium.initSensors();
+		this.terrarium.initRules();
+		this.frames = Collections.synchronizedList(new ArrayList<>());
+		Pipeline.Responder responder = r -> this.frames.add(CommandRegistry.JSONB.fromJson(new String(r, 0, r.length - 1, StandardCharsets.UTF_8), Response.class));
+		this.subscriptions = new Subscriptions(e -> {
+			if (this.refuse.get() > 0) {
+				// The connection has no room
+				this.refuse.decrementAndGet();
+				return false;
+			}
+			responder.respond(e);
+			return true;
+		});
+		this.pipeline = new Pipeline(responder, this.subscriptions);
+	}
+
+	@AfterEach
+	public void after() {
+		this.subscriptions.close();
+	}
+
+	@Test
+	public void testCoalescedEvents() throws Exception {
+		submit("{\"cmd\":\"subscribe\",\"terrarium\":81,\"data\":{\"topics\":[\"state\"],\"interval\":" + INTERVAL + "}}");
+		JsonObject res = response("subscribe");
+		assertEquals(INTERVAL, res.getInt("interval"));
+		// The first event has the current state
+		JsonObject event = waitForEvents(1).get(0);
+		assertEquals(81, event.getInt("terrarium"));
+		assertTrue(event.containsKey("state"));
+		assertFalse(event.containsKey("sensors"));
+		// A burst of changes within the interval gives one event with the last state
+		for (int i = 0; i < 5; i++) {
+			submit("{\"cmd\":\"setDeviceOn\",\"terrarium\":81,\"data\":{\"device\":\"pump\"}}");
+			submit("{\"cmd\":\"setDeviceOff\",\"terrarium\":81,\"data\":{\"device\":\"pump\"}}");
+		}
+		submit("{\"cmd\":\"setDeviceOn\",\"terrarium\":81,\"data\":{\"device\":\"mist\"}}");
+		event = waitForEvents(2).get(1);
+		assertTrue(event.getJsonObject("state").toString().contains("\"device\":\"mist\",\"state\":\"on\""), event.toString());
+		Thread.sleep(INTERVAL * 2);
+		assertEquals(2, events().size());
+		// Sensors are not subscribed to
+		submit("{\"cmd\":\"setSensors\",\"terrarium\":81,\"data\":{\"roomtemp\":18,\"terrtemp\":31}}");
+		Thread.sleep(INTERVAL * 2);
+		assertEquals(2, events().size());
+	}
+
+	@Test
+	public void testSensorsAndUnsubscribe() throws Exception {
+		submit("{\"cmd\":\"subscribe\",\"terrarium\":81,\"data\":{\"topics\":[\"sensors\"],\"interval\":" + INTERVAL + "}}");
+		waitForEvents(1);
+		submit("{\"cmd\":\"setSensors\",\"terrarium\":81,\"data\":{\"roomtemp\":19,\"terrtemp\":32}}");
+		JsonObject event = waitForEvents(2).get(1);
+		assertEquals(32, event.getJsonObject("sensors").getJsonArray("sensors").getJsonObject(1).getInt("temperature"));
+		submit("{\"cmd\":\"unsubscribe\",\"terrarium\":81}");
+		assertNull(response("unsubscribe"));
+		submit("{\"cmd\":\"setSensors\",\"terrarium\":81,\"data\":{\"roomtemp\":20,\"terrtemp\":33}}");
+		Thread.sleep(INTERVAL * 2);
+		assertEquals(2, events().size());
+		submit("{\"cmd\":\"unsubscribe\",\"terrarium\":81}");
+		assertEquals("Terrarium 81 is not subscribed to.", response("unsubscribe").getString("error"));
+	}
+
+	@Test
+	public void testNoRoom() throws Exception {
+		this.refuse.set(3);
+		submit("{\"cmd\":\"subscribe\",\"terrarium\":81,\"data\":{\"topics\":[\"state\"],\"interval\":" + INTERVAL + "}}");
+		// The event is sent when there is room again
+		JsonObject event = waitForEvents(1).get(0);
+		assertTrue(event.containsKey("state"));
+		assertEquals(0, this.refuse.get());
+		Thread.sleep(INTERVAL * 2);
+		assertEquals(1, events().size());
+	}
+
+	@Test
+	public void testInvalidSubscribe() throws Exception {
+		submit("{\"cmd\":\"subscribe\",\"terrarium\":81,\"data\":{\"topics\":[\"lights\"]}}");
+		assertEquals("Topic 'lights' does not exist; use 'state' or 'sensors'.", response("subscribe").getString("error"));
+		// The interval is at least the minimum interval
+		submit("{\"cmd\":\"subscribe\",\"terrarium\":81,\"data\":{\"interval\":1}}");
+		assertEquals(Subscriptions.getMinInterval(), response("subscribe").getInt("interval"));
+		submit("{\"cmd\":\"subscribe\",\"terrarium\":81,\"data\":{\"interval\":\"fast\"}}");
+		assertEquals("Long parameter 'interval' is not an integer number.", response("subscribe").getString("error"));
+	}
+
+	private void submit(String command) throws IOException {
+		byte[] b = (command + "\u0003").getBytes(StandardCharsets.UTF_8);
+		new Session().decode(b, 0, b.length, this.pipeline::submit);
+		this.pipeline.await();
+	}
+
+	/**
+	 * @return the response of the last command with this name
+	 */
+	private JsonObject response(String cmd) {
+		synchronized (this.frames) {
+			for (int i = this.frames.size() - 1; i >= 0; i--) {
+				if (cmd.equals(this.frames.get(i).getCommand())) {
+					return this.frames.get(i).getResponse();
+				}
+			}
+		}
+		throw new AssertionError("No response to " + cmd);
+	}
+
+	private List<JsonObject> events() {
+		synchronized (this.frames) {
+			return this.frames.stream().filter(f -> Subscriptions.EVENT.equals(f.getCommand())).map(Response::getResponse).collect(Collectors.toList());
+		}
+	}
+
+	private List<JsonObject> waitForEvents(int n) throws InterruptedException {
+		long end = System.currentTimeMillis() + 5000;
+		while ((events().size() < n) && (System.currentTimeMillis() < end)) {
+			Thread.sleep(10);
+		}
+		List<JsonObject> events = events();
+		assertEquals(n, events.size(), events.toString());
+		return events;
+	}
+}
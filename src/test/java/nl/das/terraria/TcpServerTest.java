@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.CommandRegistry;
+import nl.das.terraria.rest.CommandRegistry.Mode;
+import nl.das.terraria.rest.TcpServer;
+
+/**
+ *
+ */
+public class TcpServerTest {
+
+	private static final int MAX_SESSIONS = 3;
+	private static final int NR_OF_COMMANDS = 50;
+
+	private static TcpServer server;
+	private static Thread serverThread;
+
+	@BeforeAll
+	public static void beforeAll() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		Terrarium terrarium = Terrarium.fromJson(json);
+		Terrarium.register(31, terrarium);
+		terrarium.setNow(LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		terrarium.initSensors();
+		terrarium.setSensors(21, 26);
+		terrarium.initRules();
+
+		server = new TcpServer("127.0.0.1", 0, MAX_SESSIONS);
+		serverThread = new Thread(() -> {
+			try {
+				server.start();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		});
+		serverThread.start();
+	}
+
+	@AfterAll
+	public static void afterAll() throws InterruptedException {
+		server.stop();
+		serverThread.join(5000);
+	}
+
+	@Test
+	public void testSessions() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(MAX_SESSIONS);
+		try {
+			List<Future<String>> sessions = new ArrayList<>();
+			for (int s = 0; s < MAX_SESSIONS; s++) {
+				String device = s % 2 == 0 ? "pump" : "mist";
+				sessions.add(pool.submit(() -> {
+					StringBuilder in = new StringBuilder();
+					for (int i = 0; i < NR_OF_COMMANDS; i++) {
+						String cmd = (i % 3) == 0 ? "getState" : (i % 3) == 1 ? "setDeviceOn" : "setDeviceOff";
+						in.append("{\"cmd\":\"").append(cmd).append("\",\"terrarium\":31,\"data\":{\"device\":\"").append(device).append("\"}}\u0003");
+					}
+					try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+						socket.getOutputStream().write(in.toString().getBytes());
+						return readResponses(socket.getInputStream(), NR_OF_COMMANDS);
+					}
+				}));
+			}
+			for (Future<String> f : sessions) {
+				String out = f.get();
+				assertEquals(NR_OF_COMMANDS, out.chars().filter(c -> c == 0x03).count(), "Not all commands have been answered");
+				assertFalse(out.contains("\"error\""), "Command failed: " + out);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testAnsweredBeforeClose() throws IOException {
+		try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+			socket.getOutputStream().write("{\"cmd\":\"getState\",\"terrarium\":31}\u0003".getBytes());
+			socket.shutdownOutput();
+			String out = readAll(socket.getInputStream());
+			assertEquals(1, out.chars().filter(c -> c == 0x03).count());
+			assertFalse(out.contains("\"error\""), "Command failed: " + out);
+		}
+	}
+
+	@Test
+	public void testClientThatDoesNotRead() throws Exception {
+		CommandRegistry.register("bigQuery", Mode.UNLOCKED_QUERY, (t, d) -> CommandRegistry.BUILDERS.createObjectBuilder()
+				.add("data", "x".repeat(4096)).build());
+		byte[] cmd = "{\"cmd\":\"bigQuery\",\"terrarium\":31}\u0003".getBytes();
+		awaitSessionsClosed();
+		Socket socket = new Socket("127.0.0.1", server.getPort());
+		Thread sender = new Thread(() -> {
+			try {
+				OutputStream os = socket.getOutputStream();
+				// More than the socket buffers can take
+				for (int i = 0; i < 1000000; i++) {
+					os.write(cmd);
+				}
+			} catch (IOException e) {
+				// Closed by the test
+			}
+		});
+		sender.setDaemon(true);
+		try {
+			sender.start();
+			// The server stops reading, so the client cannot send everything
+			sender.join(3000);
+			assertTrue(sender.isAlive(), "The server has read all commands of a client that does not read");
+		} finally {
+			socket.close();
+			sender.join(5000);
+		}
+		awaitSessionsClosed();
+	}
+
+	@Test
+	public void testMaxSessions() throws IOException {
+		List<Socket> open = new ArrayList<>();
+		try {
+			for (int s = 0; s < MAX_SESSIONS; s++) {
+				Socket socket = new Socket("127.0.0.1", server.getPort());
+				open.add(socket);
+				// Make sure the session has been accepted before opening the next one
+				OutputStream os = socket.getOutputStream();
+				os.write("{\"cmd\":\"getState\",\"terrarium\":31}\u0003".getBytes());
+				readResponses(socket.getInputStream(), 1);
+			}
+			try (Socket refused = new Socket("127.0.0.1", server.getPort())) {
+				refused.setSoTimeout(5000);
+				assertEquals(-1, refused.getInputStream().read(), "Connection above the maximum should be closed");
+			}
+		} finally {
+			for (Socket s : open) {
+				s.close();
+			}
+		}
+	}
+
+	/**
+	 * Wait until the server has closed the sessions of the tests before.
+	 */
+	private static void awaitSessionsClosed() throws InterruptedException {
+		for (int i = 0; (i < 50) && (server.getSessionCount() > 0); i++) {
+			Thread.sleep(100);
+		}
+	}
+
+	private static String readResponses(InputStream is, int n) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int count = 0;
+		while (count < n) {
+			int b = is.read();
+			if (b == -1) {
+				break;
+			}
+			out.write(b);
+			if (b == 0x03) {
+				count++;
+			}
+		}
+		return out.toString();
+	}
+
+	private static String readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		is.transferTo(out);
+		return out.toString();
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.BTServer;
+import nl.das.terraria.rest.CommandRegistry;
+import nl.das.terraria.rest.Response;
+
+/**
+ *
+ */
+public class TemperatureRollupsTest {
+
+	@TempDir
+	Path folder;
+
+	private static final LocalDateTime START = LocalDateTime.of(2021, 8, 2, 10, 0, 0);
+
+	private Terrarium terrarium;
+
+	@BeforeEach
+	public void before() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		this.terrarium = Terrarium.fromJson(json);
+		Terrarium.register(111, this.terrarium);
+		this.terrarium.setTraceFolder(this.folder.toString());
+		this.terrarium.setNow(START);
+		this.terrarium.initMockDevices();
+		this.terrarium.initDeviceState();
+		this.terrarium.initSensors();
+		this.terrarium.initRules();
+		// Two hours of minute ticks; ruleset 1 (ideal 26) is active from 10:30
+		for (int m = 0; m < 120; m++) {
+			this.terrarium.setNow(START.plusMinutes(m));
+			this.terrarium.setSensors(20 + (m / 60), (m % 60) < 45 ? 25 : 27);
+			this.terrarium.recordSensors();
+		}
+	}
+
+	@Test
+	public void testRollups() throws IOException {
+		List<TemperatureRollups.Rollup> hours = this.terrarium.getTemperatureRollups().getHours(START.plusHours(1), 24);
+		assertEquals(2, hours.size());
+		assertEquals(START, hours.get(0).getStart());
+		TemperatureRollups.Stats t = hours.get(0).getTerrarium();
+		assertEquals(25, t.getMin());
+		assertEquals(27, t.getMax());
+		assertEquals(25.5, t.getAvg());
+		assertEquals(60, t.getCount());
+		assertEquals(15, t.getAbove());
+		assertEquals(15, t.getBelow());
+		t = hours.get(1).getTerrarium();
+		assertEquals(15, t.getAbove());
+		assertEquals(45, t.getBelow());
+		assertEquals(21, hours.get(1).getRoom().getMin());
+		List<TemperatureRollups.Rollup> days = this.terrarium.getTemperatureRollups().getDays(START, 7);
+		assertEquals(1, days.size());
+		assertEquals(START.toLocalDate().atStartOfDay(), days.get(0).getStart());
+		assertEquals(120, days.get(0).getTerrarium().getCount());
+		assertEquals(30, days.get(0).getTerrarium().getAbove());
+		assertEquals(60, days.get(0).getTerrarium().getBelow());
+		assertEquals(20.5, days.get(0).getRoom().getAvg());
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		// Kept over a restart
+		this.terrarium.setTraceFolder(this.folder.toString());
+		assertEquals(2, this.terrarium.getTemperatureRollups().getHours(START.plusHours(1), 24).size());
+		this.terrarium.setTraceFolder(this.folder.toString());
+		// The power fails while the slot of 11:00 is written
+		Path file = this.folder.resolve("rollups");
+		byte[] b = Files.readAllBytes(file);
+		int hour = (int) (START.plusHours(1).toEpochSecond(ZoneOffset.UTC) / 3600);
+		b[TemperatureRollups.HEADER_SIZE + ((hour % TemperatureRollups.HOURS) * TemperatureRollups.SLOT_SIZE) + 8] ^= 1;
+		Files.write(file, b);
+		List<TemperatureRollups.Rollup> hours = this.terrarium.getTemperatureRollups().getHours(START.plusHours(1), 24);
+		assertEquals(1, hours.size());
+		assertEquals(START, hours.get(0).getStart());
+		// The hour is started again
+		this.terrarium.setNow(START.plusMinutes(120 + 5));
+		this.terrarium.recordSensors();
+		hours = this.terrarium.getTemperatureRollups().getHours(START.plusHours(2), 24);
+		assertEquals(2, hours.size());
+		assertEquals(1, hours.get(1).getTerrarium().getCount());
+	}
+
+	@Test
+	public void testCommand() throws IOException {
+		JsonObject res = handle("{\"cmd\":\"getTemperatureHistory\",\"terrarium\":111}");
+		assertEquals("hour", res.getString("period"));
+		JsonArray history = res.getJsonArray("history");
+		assertEquals(2, history.size());
+		JsonObject first = history.getJsonObject(0);
+		assertEquals("2021-08-02 10:00", first.getString("start"));
+		assertEquals(20, first.getJsonObject("room").getInt("min"));
+		assertEquals(25.5, first.getJsonObject("terrarium").getJsonNumber("avg").doubleValue());
+		assertEquals(15, first.getJsonObject("terrarium").getInt("above"));
+		res = handle("{\"cmd\":\"getTemperatureHistory\",\"terrarium\":111,\"data\":{\"period\":\"day\",\"count\":30}}");
+		assertEquals(1, res.getJsonArray("history").size());
+		assertEquals("2021-08-02 00:00", res.getJsonArray("history").getJsonObject(0).getString("start"));
+		assertEquals("String parameter 'period' must be 'hour' or 'day'.",
+				handle("{\"cmd\":\"getTemperatureHistory\",\"terrarium\":111,\"data\":{\"period\":\"week\"}}").getString("error"));
+		assertEquals("Parameter 'count' must be at least 1 and at most " + TemperatureRollups.HOURS + ".",
+				handle("{\"cmd\":\"getTemperatureHistory\",\"terrarium\":111,\"data\":{\"count\":1000}}").getString("error"));
+	}
+
+	private static JsonObject handle(String command) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BTServer.handleCommand(command, bos);
+		String out = bos.toString(StandardCharsets.UTF_8);
+		return CommandRegistry.JSONB.fromJson(out.substring(0, out.length() - 1), Response.class).getResponse();
+	}
+}
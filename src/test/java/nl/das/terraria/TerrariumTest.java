@@ -17,7 +17,7 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
@@ -34,6 +34,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.skyscreamer.jsonassert.JSONAssert;
 
 import nl.das.terraria.objects.Terrarium;
@@ -45,6 +46,9 @@ public class TerrariumTest {
 
 	private static Terrarium terrarium;
 
+	@TempDir
+	Path folder;
+
 	@BeforeAll
 	public static void start () {
 	}
@@ -65,14 +69,17 @@ public class TerrariumTest {
 	public void testSettings() throws IOException {
 		// Get an empty instance
 		Terrarium t = Terrarium.getInstance();
+		Path settings = this.folder.resolve("settings.json");
+		t.setSettingsFile(settings.toString());
 		// fill it with empty values
 		t.init();
 		// and persist it
 		t.saveSettings();
+		t.flushSettings();
 		Jsonb jsonb = JsonbBuilder.create(new JsonbConfig().withFormatting(true).withNullValues(true));
-		String json = jsonb.toJson(Terrarium.cfg);
+		String json = jsonb.toJson(t.getConfig());
 		// now read the persisted data
-		String jsonr = Files.readString(Paths.get("settings.json"));
+		String jsonr = Files.readString(settings);
 		try {
 			JSONAssert.assertEquals(json, jsonr, false);
 		} catch (JSONException e) {
@@ -94,41 +101,23 @@ public class TerrariumTest {
 		terrarium.setSensors(21, 26); // Ideal temperature, so rules will not be activated
 
 		// Initialize file content
-		Files.deleteIfExists(Paths.get("lifecycle.txt"));
-		Files.writeString(Paths.get("lifecycle.txt"), "uvlight=4400", StandardOpenOption.CREATE_NEW);
+		String lifecycle = this.folder.resolve("lifecycle.txt").toString();
+		Files.writeString(Paths.get(lifecycle), "uvlight=4400", StandardOpenOption.CREATE_NEW);
 
-		// Retrieve the lifecycle values from disk
-		try {
-			String lcdata = Files.readString(Paths.get("lifecycle.txt"));
-			String lns[] = lcdata.split("\n");
-			assertEquals(lns.length, 1);
-			assertEquals(lns[0], "uvlight=4400");
-			for (String ln : lns) {
-				String lp[] = ln.split("=");
-				terrarium.setDeviceLifecycle(lp[0], Integer.parseInt(lp[1]));
-			}
-		} catch (NoSuchFileException e) {
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		// Retrieve the lifecycle values from disk; the text file is converted
+		terrarium.setLifecycleFile(lifecycle);
+		terrarium.loadLifecycleCounters();
 		assertEquals(terrarium.getDevStates()[terrarium.getDeviceIndex("uvlight")].getLifetime(), 4400);
+		assertEquals(4400, LifecycleStore.read(lifecycle).get("uvlight"));
 
 		terrarium.decreaseLifetime(2);
 		assertEquals(terrarium.getDevStates()[terrarium.getDeviceIndex("uvlight")].getLifetime(), 4398);
 		// Retrieve the lifecycle values again from disk
-		try {
-			String lcdata = Files.readString(Paths.get("lifecycle.txt"));
-			String lns[] = lcdata.split("\n");
-			assertEquals(lns.length, 1);
-			assertEquals(lns[0], "uvlight=4398");
-			for (String ln : lns) {
-				String lp[] = ln.split("=");
-				terrarium.setDeviceLifecycle(lp[0], Integer.parseInt(lp[1]));
-			}
-		} catch (NoSuchFileException e) {
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		assertEquals(4398, LifecycleStore.read(lifecycle).get("uvlight"));
+		terrarium.setDeviceLifecycle("uvlight", 0);
+		terrarium.setLifecycleFile(lifecycle);
+		terrarium.loadLifecycleCounters();
+		assertEquals(terrarium.getDevStates()[terrarium.getDeviceIndex("uvlight")].getLifetime(), 4398);
 
 	}
 
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class TickSchedulerTest {
+
+	private List<LocalDateTime> seconds;
+	private List<LocalDateTime> minutes;
+	private List<LocalDateTime> hours;
+	private TickScheduler scheduler;
+
+	@BeforeEach
+	public void before () {
+		this.seconds = new ArrayList<>();
+		this.minutes = new ArrayList<>();
+		this.hours = new ArrayList<>();
+		Clock clock = Clock.fixed(Instant.EPOCH, ZoneOffset.UTC);
+		this.scheduler = new TickScheduler(new TickScheduler.TickListener() {
+			@Override
+			public void second(LocalDateTime now) { TickSchedulerTest.this.seconds.add(now); }
+			@Override
+			public void minute(LocalDateTime now) { TickSchedulerTest.this.minutes.add(now); }
+			@Override
+			public void hour(LocalDateTime now) { TickSchedulerTest.this.hours.add(now); }
+		}, clock);
+	}
+
+	@Test
+	public void testBoundaries() {
+		// 2021-08-01 05:59:58 UTC
+		long t = LocalDateTime.of(2021, 8, 1, 5, 59, 58).toEpochSecond(ZoneOffset.UTC);
+		this.scheduler.start(t);
+		this.scheduler.advance(t + 1);
+		this.scheduler.advance(t + 2);
+		this.scheduler.advance(t + 3);
+		assertEquals(3, this.seconds.size(), "Nr of second ticks");
+		assertEquals(1, this.minutes.size(), "Nr of minute ticks");
+		assertEquals(1, this.hours.size(), "Nr of hour ticks");
+		assertEquals(LocalDateTime.of(2021, 8, 1, 6, 0, 0), this.minutes.get(0));
+		assertEquals(LocalDateTime.of(2021, 8, 1, 6, 0, 0), this.hours.get(0));
+	}
+
+	@Test
+	public void testCatchUp() {
+		long t = LocalDateTime.of(2021, 8, 1, 5, 58, 30).toEpochSecond(ZoneOffset.UTC);
+		this.scheduler.start(t);
+		// Woke up 2 minutes late
+		this.scheduler.advance(t + 120);
+		assertEquals(120, this.seconds.size(), "Nr of second ticks");
+		assertEquals(2, this.minutes.size(), "Nr of minute ticks");
+		assertEquals(LocalDateTime.of(2021, 8, 1, 5, 59, 0), this.minutes.get(0));
+		assertEquals(LocalDateTime.of(2021, 8, 1, 6, 0, 0), this.minutes.get(1));
+		assertEquals(1, this.hours.size(), "Nr of hour ticks");
+		assertEquals(t + 120, this.scheduler.getLastSecond());
+	}
+
+	@Test
+	public void testClockSteps() {
+		long t = LocalDateTime.of(2021, 8, 1, 5, 0, 10).toEpochSecond(ZoneOffset.UTC);
+		this.scheduler.start(t);
+		// Small step back: nothing fires until the clock has passed the last tick again
+		this.scheduler.advance(t - 5);
+		this.scheduler.advance(t);
+		assertEquals(0, this.seconds.size(), "Nr of second ticks");
+		this.scheduler.advance(t + 1);
+		assertEquals(1, this.seconds.size(), "Nr of second ticks");
+		// Big step forward in the first minute of the hour: rebase and fire one tick of each kind
+		this.scheduler.advance(t + 86400);
+		assertEquals(2, this.seconds.size(), "Nr of second ticks");
+		assertEquals(1, this.minutes.size(), "Nr of minute ticks");
+		assertEquals(1, this.hours.size(), "Nr of hour ticks");
+		assertEquals(t + 86400, this.scheduler.getLastSecond());
+		// Big step forward within the hour: no hour tick
+		this.scheduler.advance(t + 86400 + 5000);
+		assertEquals(3, this.seconds.size(), "Nr of second ticks");
+		assertEquals(2, this.minutes.size(), "Nr of minute ticks");
+		assertEquals(LocalDateTime.of(2021, 8, 2, 6, 23, 30), this.minutes.get(1));
+		assertEquals(1, this.hours.size(), "Nr of hour ticks");
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.Timer;
+import nl.das.terraria.objects.TimerEngine;
+
+/**
+ *
+ */
+public class TimerEngineTest {
+
+	private TimerEngine engine;
+
+	@BeforeEach
+	public void before() {
+		this.engine = new TimerEngine();
+		this.engine.rebuild(new Timer[] {
+			new Timer("light1", 1, "09:00", "21:00", 1, 0),
+			new Timer("pump", 1, "10:30", "10:30", 1, 0),    // off == on: no OFF event
+			new Timer("pump", 2, "10:30", "11:00", 1, 0),
+			new Timer("mist", 1, "08:00", "00:00", 1, 3600), // period: no OFF event
+			new Timer("sprayer", 1, "10:05", "00:00", 0, 30), // not active
+			new Timer("light1", 1, "12:00", "13:00", 1, 0)   // duplicate of the first
+		});
+	}
+
+	@Test
+	public void testEvents() {
+		assertArrayEquals(new int[] { on(0) }, this.engine.getEvents(9 * 60));
+		assertArrayEquals(new int[] { off(0) }, this.engine.getEvents(21 * 60));
+		// Same minute in timer order
+		assertArrayEquals(new int[] { on(1), on(2) }, this.engine.getEvents((10 * 60) + 30));
+		assertArrayEquals(new int[] { off(2) }, this.engine.getEvents(11 * 60));
+		assertArrayEquals(new int[] { on(3) }, this.engine.getEvents(8 * 60));
+		assertEquals(0, this.engine.getEvents((10 * 60) + 5).length);
+		// The duplicate is still executed
+		assertArrayEquals(new int[] { on(5) }, this.engine.getEvents(12 * 60));
+		assertArrayEquals(new int[] { off(5) }, this.engine.getEvents(13 * 60));
+		assertEquals(0, this.engine.getEvents(-1).length);
+		assertEquals(0, this.engine.getEvents(TimerEngine.MINUTES_PER_DAY).length);
+		for (int m = 0; m < TimerEngine.MINUTES_PER_DAY; m++) {
+			for (int ev : this.engine.getEvents(m)) {
+				assertFalse((TimerEngine.slot(ev) == 1) && (TimerEngine.type(ev) == TimerEngine.EVENT_OFF), "OFF event of pump 1");
+				assertFalse((TimerEngine.slot(ev) == 3) && (TimerEngine.type(ev) == TimerEngine.EVENT_OFF), "OFF event of mist 1");
+				assertFalse(TimerEngine.slot(ev) == 4, "Event of inactive sprayer 1");
+			}
+		}
+		assertEquals((10 * 60) + 30, this.engine.nextEventMinute((9 * 60) + 1));
+		// Wraps around midnight
+		assertEquals(8 * 60, this.engine.nextEventMinute((21 * 60) + 1));
+	}
+
+	@Test
+	public void testSlots() {
+		assertEquals(0, this.engine.getSlot("light1", 1));
+		assertEquals(1, this.engine.getSlot("pump", 1));
+		assertEquals(2, this.engine.getSlot("PUMP", 2));
+		assertEquals(4, this.engine.getSlot("sprayer", 1));
+		assertEquals(-1, this.engine.getSlot("pump", 3));
+		assertEquals(-1, this.engine.getSlot("fan_in", 1));
+		assertEquals(-1, this.engine.getSlot(null, 1));
+
+		this.engine.update(this.engine.getSlot("pump", 2), new Timer("pump", 2, "11:15", "11:45", 1, 0));
+		assertArrayEquals(new int[] { on(1) }, this.engine.getEvents((10 * 60) + 30));
+		assertEquals(0, this.engine.getEvents(11 * 60).length);
+		assertArrayEquals(new int[] { on(2) }, this.engine.getEvents((11 * 60) + 15));
+		assertArrayEquals(new int[] { off(2) }, this.engine.getEvents((11 * 60) + 45));
+	}
+
+	private static int on(int slot) {
+		return (slot << 1) | TimerEngine.EVENT_ON;
+	}
+
+	private static int off(int slot) {
+		return (slot << 1) | TimerEngine.EVENT_OFF;
+	}
+}
@@ -40,9 +40,9 @@ public class TimersIdealTemperatureTest {
 
 	@BeforeAll
 	public static void beforeAll () throws IOException {
-		Terrarium.traceFolder = "src/test/resources/tracefiles";
 		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
 		terrarium = Terrarium.getInstance(json);
+		terrarium.setTraceFolder("src/test/resources/tracefiles");
 		assertNotNull(terrarium, "Terrarium object cannot be null");
 		terrarium.setNow(LocalDateTime.now());
 		terrarium.initMockDevices();
@@ -67,7 +67,7 @@ public class TimersIdealTemperatureTest {
 
 	@Test
 	public void test1 () {
-		Timer[] timers = Terrarium.cfg.getTimers();
+		Timer[] timers = terrarium.getConfig().getTimers();
 		assertNotNull(timers, "Timer array cannot be null");
 		assertEquals(23, timers.length, "Nr of timers");
 		// Change the second timer for the pump
@@ -509,7 +509,7 @@ public class TimersIdealTemperatureTest {
 
 	private void traceTemperature() {
 		if (terrarium.isTraceOn()) {
-			Util.traceTemperature(Terrarium.traceFolder + "/" + Terrarium.traceTempFilename, terrarium.getNow(), "r=%d t=%d", terrarium.getRoomTemperature(), terrarium.getTerrariumTemperature());
+			terrarium.traceTemperature("r=%d t=%d", terrarium.getRoomTemperature(), terrarium.getTerrariumTemperature());
 		}
 
 	}
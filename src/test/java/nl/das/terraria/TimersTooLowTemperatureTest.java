@@ -38,9 +38,9 @@ public class TimersTooLowTemperatureTest {
 
 	@BeforeAll
 	public static void beforeAll () throws IOException {
-		Terrarium.traceFolder = "src/test/resources/tracefiles";
 		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
 		terrarium = Terrarium.getInstance(json);
+		terrarium.setTraceFolder("src/test/resources/tracefiles");
 		assertNotNull(terrarium, "Terrarium object cannot be null");
 		terrarium.setNow(LocalDateTime.now());
 		terrarium.initMockDevices();
@@ -493,7 +493,7 @@ public class TimersTooLowTemperatureTest {
 
 	private void traceTemperature() {
 		if (terrarium.isTraceOn()) {
-			Util.traceTemperature(Terrarium.traceFolder + "/" + Terrarium.traceTempFilename, terrarium.getNow(), "r=%d t=%d", terrarium.getRoomTemperature(), terrarium.getTerrariumTemperature());
+			terrarium.traceTemperature("r=%d t=%d", terrarium.getRoomTemperature(), terrarium.getTerrariumTemperature());
 		}
 
 	}
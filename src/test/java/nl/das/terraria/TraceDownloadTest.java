@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+
+import javax.json.JsonObject;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import nl.das.terraria.objects.Terrarium;
+import nl.das.terraria.rest.BTServer;
+import nl.das.terraria.rest.CommandRegistry;
+import nl.das.terraria.rest.Response;
+
+/**
+ *
+ */
+public class TraceDownloadTest {
+
+	@TempDir
+	Path folder;
+
+	private String content;
+
+	@BeforeEach
+	public void before() throws IOException {
+		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
+		Terrarium terrarium = Terrarium.fromJson(json);
+		Terrarium.register(101, terrarium);
+		terrarium.setTraceFolder(this.folder.toString());
+		terrarium.setNow(LocalDateTime.of(2021, 8, 2, 12, 0, 0));
+		terrarium.initMockDevices();
+		terrarium.initDeviceState();
+		// A day of temperature lines, larger than one part
+		StringBuilder sb = new StringBuilder();
+		for (int m = 0; m < 1440; m++) {
+			sb.append(String.format("2021-08-02 %02d:%02d:00 r=%d t=%d°%n", m / 60, m % 60, 20 + (m % 5), 25 + (m % 7)));
+		}
+		this.content = sb.toString();
+		Files.writeString(this.folder.resolve("temp_20210802"), this.content);
+	}
+
+	@Test
+	public void testWholeFile() throws IOException {
+		assertEquals(this.content, handle("{\"fname\":\"temp_20210802\"}").getString("content"));
+	}
+
+	@Test
+	public void testParts() throws IOException {
+		ByteArrayOutputStream received = new ByteArrayOutputStream();
+		long offset = 0;
+		int parts = 0;
+		boolean eof = false;
+		while (!eof) {
+			JsonObject res = handle("{\"fname\":\"temp_20210802\",\"offset\":" + offset + ",\"length\":10000}");
+			assertEquals(offset, res.getJsonNumber("offset").longValue());
+			String part = res.getString("content");
+			assertTrue(res.getBoolean("eof") || part.endsWith("\n"), "A part ends with a line end");
+			assertEquals(res.getInt("length"), part.getBytes(StandardCharsets.UTF_8).length);
+			received.write(part.getBytes(StandardCharsets.UTF_8));
+			offset += res.getInt("length");
+			eof = res.getBoolean("eof");
+			parts++;
+		}
+		assertEquals(this.content, received.toString(StandardCharsets.UTF_8));
+		// Every part has as many whole lines as fit in the length
+		int lineLength = this.content.getBytes(StandardCharsets.UTF_8).length / 1440;
+		int linesPerPart = 10000 / lineLength;
+		assertEquals((1440 + linesPerPart - 1) / linesPerPart, parts);
+		// Past the end
+		JsonObject res = handle("{\"fname\":\"temp_20210802\",\"offset\":" + offset + "}");
+		assertEquals(0, res.getInt("length"));
+		assertTrue(res.getBoolean("eof"));
+	}
+
+	@Test
+	public void testCompressedResume() throws IOException {
+		// The first part, and then the download is continued where it stopped
+		JsonObject first = handle("{\"fname\":\"temp_20210802\",\"offset\":0,\"compression\":\"gzip\"}");
+		assertEquals(CommandRegistry.MAX_CHUNK_SIZE, first.getInt("length"), 60);
+		assertFalse(first.getBoolean("eof"));
+		JsonObject rest = handle("{\"fname\":\"temp_20210802\",\"offset\":" + first.getInt("length") + ",\"length\":1000000,\"compression\":\"gzip\"}");
+		String part1 = gunzip(first.getString("content"));
+		String part2 = gunzip(rest.getString("content"));
+		assertEquals(this.content, part1 + part2);
+		assertTrue(first.getString("content").length() < (first.getInt("length") / 2), "Not compressed");
+	}
+
+	@Test
+	public void testInvalid() throws IOException {
+		assertEquals("Tracefile '../settings.json' does not exist.", handle("{\"fname\":\"../settings.json\",\"offset\":0}").getString("error"));
+		assertEquals("Tracefile 'temp_20000101' does not exist.", handle("{\"fname\":\"temp_20000101\",\"offset\":0}").getString("error"));
+		assertEquals("Parameters 'offset' and 'length' must be at least 0 and 1.", handle("{\"fname\":\"temp_20210802\",\"offset\":-1}").getString("error"));
+		assertEquals("String parameter 'compression' must be 'none' or 'gzip'.", handle("{\"fname\":\"temp_20210802\",\"offset\":0,\"compression\":\"zip\"}").getString("error"));
+	}
+
+	private static String gunzip(String base64) throws IOException {
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(base64)))) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static JsonObject handle(String data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		BTServer.handleCommand("{\"cmd\":\"getTemperatureFile\",\"terrarium\":101,\"data\":" + data + "}", bos);
+		String out = bos.toString(StandardCharsets.UTF_8);
+		return CommandRegistry.JSONB.fromJson(out.substring(0, out.length() - 1), Response.class).getResponse();
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import nl.das.terraria.objects.Terrarium;
+
+/**
+ *
+ */
+public class TraceRolloverTest {
+
+	@Test
+	public void testPreparedFileIsSwappedIn() throws IOException {
+		Path dir = Files.createTempDirectory("trace");
+		String folder = dir.toString();
+		LocalDateTime day1 = LocalDateTime.of(2021, 8, 1, 5, 0, 0);
+		assertEquals("state_20210801", TraceRollover.create(folder, "state_", day1));
+		TraceRollover.awaitHousekeeping();
+		assertTrue(Files.exists(dir.resolve(".state_20210802")), "Next day has not been prepared");
+		// The prepared file is not a tracefile
+		assertEquals(List.of("state_20210801"), Util.listTraceFiles(folder, "state_"));
+
+		assertEquals("state_20210802", TraceRollover.create(folder, "state_", day1.plusDays(1)));
+		TraceRollover.awaitHousekeeping();
+		assertFalse(Files.exists(dir.resolve(".state_20210802")), "Prepared file has not been used");
+		assertEquals(List.of("state_20210801", "state_20210802"), Util.listTraceFiles(folder, "state_"));
+		assertTrue(Files.exists(dir.resolve(".state_20210803")), "Next day has not been prepared");
+	}
+
+	@Test
+	public void testRemoveOldFiles() throws IOException {
+		Path dir = Files.createTempDirectory("trace");
+		String folder = dir.toString();
+		for (int d = 1; d <= 6; d++) {
+			Files.createFile(dir.resolve(String.format("temp_2021080%d", d)));
+		}
+		// Prepared files that have not been used
+		Files.createFile(dir.resolve(".temp_20210803"));
+		Files.createFile(dir.resolve(".temp_20210809"));
+		Files.createFile(dir.resolve(".temp_20210807"));
+		TraceRollover.removeOldFiles(folder, "temp_", 4, "temp_20210806", LocalDate.of(2021, 8, 7));
+		assertEquals(List.of("temp_20210803", "temp_20210804", "temp_20210805", "temp_20210806"), Util.listTraceFiles(folder, "temp_"));
+		assertFalse(Files.exists(dir.resolve(".temp_20210803")), "Stale prepared file has not been removed");
+		assertFalse(Files.exists(dir.resolve(".temp_20210809")), "Stale prepared file has not been removed");
+		assertTrue(Files.exists(dir.resolve(".temp_20210807")), "Prepared file of the next day has been removed");
+	}
+
+	@Test
+	public void testClockSetBack() throws IOException {
+		Path dir = Files.createTempDirectory("trace");
+		String folder = dir.toString();
+		LocalDate first = LocalDate.of(2021, 8, 10);
+		for (int d = 0; d < Terrarium.maxNrOfTraceDays; d++) {
+			Files.createFile(dir.resolve("state_" + first.plusDays(d).format(DateTimeFormatter.BASIC_ISO_DATE)));
+		}
+		Files.createFile(dir.resolve(".state_20210830"));
+		// The current day sorts before all files that are kept
+		LocalDateTime day = LocalDateTime.of(2021, 8, 3, 5, 0, 0);
+		assertEquals("state_20210803", TraceRollover.create(folder, "state_", day));
+		TraceRollover.awaitHousekeeping();
+		List<String> files = Util.listTraceFiles(folder, "state_");
+		assertTrue(files.contains("state_20210803"), "Current tracefile has been removed");
+		assertEquals(Terrarium.maxNrOfTraceDays, files.size());
+		assertFalse(files.contains("state_20210810"), "Oldest other tracefile has not been removed");
+		assertFalse(Files.exists(dir.resolve(".state_20210830")), "Stale prepared file has not been removed");
+		assertTrue(Files.exists(dir.resolve(".state_20210804")), "Next day has not been prepared");
+	}
+}
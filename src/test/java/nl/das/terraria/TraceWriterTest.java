@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2026 Dutch Arrow Software - All Rights Reserved
+ * You may use, distribute and modify this code under the
+ * terms of the Apache Software License 2.0.
+ *
+ * Created 18 Oct 2026.
+ */
+
+
+package nl.das.terraria;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ */
+public class TraceWriterTest {
+
+	@Test
+	public void testWriteInOrder() throws IOException {
+		Path dir = Files.createTempDirectory("trace");
+		Path state = Files.createFile(dir.resolve("state_20210801"));
+		Path temp = Files.createFile(dir.resolve("temp_20210801"));
+		TraceWriter tw = new TraceWriter();
+		LocalDateTime now = LocalDateTime.of(2021, 8, 1, 5, 0, 0);
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(tw.append(state.toString(), now, "%s %d", "light1", i));
+			assertTrue(tw.append(temp.toString(), now, "r=%d t=%d", 21, i));
+		}
+		tw.flush();
+		List<String> lines = Files.readAllLines(state);
+		assertEquals(1000, lines.size());
+		assertEquals("2021-08-01 05:00:00 light1 0", lines.get(0));
+		assertEquals("2021-08-01 05:00:00 light1 999", lines.get(999));
+		lines = Files.readAllLines(temp);
+		assertEquals(1000, lines.size());
+		assertEquals("2021-08-01 05:00:00 r=21 t=999", lines.get(999));
+
+		// The file is replaced after it is closed, the next line opens the new one
+		tw.close(state.toString(), () -> {
+			try {
+				Files.delete(state);
+				Files.createFile(state);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+		tw.append(state.toString(), now, "start");
+		tw.shutdown();
+		assertEquals(List.of("2021-08-01 05:00:00 start"), Files.readAllLines(state));
+
+		// After shutdown lines are written directly
+		tw.append(state.toString(), now, "stop");
+		assertEquals(List.of("2021-08-01 05:00:00 start", "2021-08-01 05:00:00 stop"), Files.readAllLines(state));
+	}
+
+	@Test
+	public void testShutdownWhileTracing() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("trace");
+		TraceWriter tw = new TraceWriter(100000);
+		LocalDateTime now = LocalDateTime.of(2021, 8, 1, 5, 0, 0);
+		Thread[] threads = new Thread[4];
+		Path[] files = new Path[threads.length];
+		for (int t = 0; t < threads.length; t++) {
+			Path file = Files.createFile(dir.resolve("state_" + t));
+			files[t] = file;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 2000; i++) {
+					tw.append(file.toString(), now, "%d", i);
+				}
+			});
+			threads[t].start();
+		}
+		tw.shutdown();
+		for (Thread t : threads) {
+			t.join();
+		}
+		// No line is lost, whether it was queued before, during or after the shutdown
+		for (Path file : files) {
+			assertEquals(2000, Files.readAllLines(file).size(), file.toString());
+		}
+	}
+
+	@Test
+	public void testQueueFull() throws IOException {
+		Path dir = Files.createTempDirectory("trace");
+		Path state = Files.createFile(dir.resolve("state_20210801"));
+		TraceWriter tw = new TraceWriter(4);
+		LocalDateTime now = LocalDateTime.of(2021, 8, 1, 5, 0, 0);
+		int written = 0;
+		for (int i = 0; i < 100000; i++) {
+			if (tw.append(state.toString(), now, "%d", i)) {
+				written++;
+			}
+		}
+		tw.shutdown();
+		assertEquals(written, Files.readAllLines(state).size());
+		assertEquals(100000 - written, tw.getDropped());
+	}
+
+	@Test
+	public void testCloseDoesNotWait() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("trace");
+		Path state = Files.createFile(dir.resolve("state_20210801"));
+		TraceWriter tw = new TraceWriter();
+		LocalDateTime now = LocalDateTime.of(2021, 8, 1, 5, 0, 0);
+		tw.append(state.toString(), now, "old");
+		CountDownLatch closing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		tw.close(state.toString(), () -> {
+			closing.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		// The caller is not held up while the writer thread is busy with the close
+		tw.append(state.toString(), now, "new");
+		assertTrue(closing.await(5, TimeUnit.SECONDS), "Close has not been executed");
+		assertEquals(List.of("2021-08-01 05:00:00 old"), Files.readAllLines(state));
+		release.countDown();
+		tw.shutdown();
+		assertEquals(List.of("2021-08-01 05:00:00 old", "2021-08-01 05:00:00 new"), Files.readAllLines(state));
+	}
+
+	@Test
+	public void testMissingFile() throws IOException {
+		Path dir = Files.createTempDirectory("trace");
+		Path missing = dir.resolve("nodir").resolve("state_20210801");
+		TraceWriter tw = new TraceWriter();
+		LocalDateTime now = LocalDateTime.of(2021, 8, 1, 5, 0, 0);
+		for (int i = 0; i < 10; i++) {
+			tw.append(missing.toString(), now, "%d", i);
+		}
+		tw.shutdown();
+		assertFalse(Files.exists(missing));
+	}
+}
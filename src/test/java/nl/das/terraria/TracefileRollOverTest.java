@@ -40,10 +40,10 @@ public class TracefileRollOverTest {
 
 	@BeforeAll
 	public static void beforeAll () throws IOException {
-		Terrarium.traceFolder = "src/test/resources/tracefiles";
 		Terrarium.maxNrOfTraceDays = 5;
 		String json = Files.readString(Paths.get("src/test/resources/settings.json"));
 		terrarium = Terrarium.getInstance(json);
+		terrarium.setTraceFolder("src/test/resources/tracefiles");
 		assertNotNull(terrarium, "Terrarium object cannot be null");
 		terrarium.initMockDevices();
 		terrarium.initDeviceState();
@@ -52,13 +52,13 @@ public class TracefileRollOverTest {
 		terrarium.setSensors(21, 26); // Ideal temperature, so rules will not be activated
 		// Remove all tracefiles
 		try {
-			List<String> files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			List<String> files = Util.listTraceFiles(terrarium.getTraceFolder(), "state_");
 			for (String file : files) {
-				Files.deleteIfExists(Paths.get(Terrarium.traceFolder + "/" + file));
+				Files.deleteIfExists(Paths.get(terrarium.getTraceFolder() + "/" + file));
 			}
-			files = Util.listTraceFiles(Terrarium.traceFolder, "temp_");
+			files = Util.listTraceFiles(terrarium.getTraceFolder(), "temp_");
 			for (String file : files) {
-				Files.deleteIfExists(Paths.get(Terrarium.traceFolder + "/" + file));
+				Files.deleteIfExists(Paths.get(terrarium.getTraceFolder() + "/" + file));
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -80,7 +80,7 @@ public class TracefileRollOverTest {
 	@Test
 	public void testCreateTraceFiles() {
 		try {
-			Path p = Paths.get(Terrarium.traceFolder);
+			Path p = Paths.get(terrarium.getTraceFolder());
 			if (!Files.exists(p)) {
 				Files.createDirectory(p);
 				System.out.println("Directory created: " + p.toAbsolutePath());
@@ -89,37 +89,37 @@ public class TracefileRollOverTest {
 			LocalDateTime now = LocalDateTime.of(LocalDate.of(2021, 8, 1), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.setTrace(true);
-			List<String> files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			List<String> files = Util.listTraceFiles(terrarium.getTraceFolder(), "state_");
 			assertEquals("Unexpected # of state files", 1, files.size());
 
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 2), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = Util.listTraceFiles(terrarium.getTraceFolder(), "state_");
 			assertEquals("Unexpected # of state files", 2, files.size());
 
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 3), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = Util.listTraceFiles(terrarium.getTraceFolder(), "state_");
 			assertEquals("Unexpected # of state files", 3, files.size());
 
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 4), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = Util.listTraceFiles(terrarium.getTraceFolder(), "state_");
 			assertEquals("Unexpected # of state files", 4, files.size());
 
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 5), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = Util.listTraceFiles(terrarium.getTraceFolder(), "state_");
 			assertEquals("Unexpected # of state files", 5, files.size());
 
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 6), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = Util.listTraceFiles(terrarium.getTraceFolder(), "state_");
 			assertEquals("Unexpected # of state files", 5, files.size());
 			assertEquals("Unexpected filename", "state_20210802", files.get(0));
 			assertEquals("Unexpected filename", "state_20210803", files.get(1));
@@ -130,7 +130,7 @@ public class TracefileRollOverTest {
 			now = LocalDateTime.of(LocalDate.of(2021, 8, 7), LocalTime.of(5, 0, 0));
 			terrarium.setNow(now);
 			terrarium.checkTrace();
-			files = Util.listTraceFiles(Terrarium.traceFolder, "state_");
+			files = Util.listTraceFiles(terrarium.getTraceFolder(), "state_");
 			assertEquals("Unexpected # of state files", 5, files.size());
 			assertEquals("Unexpected filename", "state_20210803", files.get(0));
 			assertEquals("Unexpected filename", "state_20210804", files.get(1));
@@ -153,7 +153,7 @@ public class TracefileRollOverTest {
 	private String getContent(String file) {
 		String content = "<no content>";
 		try {
-			content = Files.readString(Paths.get(Terrarium.traceFolder + "/" + file));
+			content = Files.readString(Paths.get(terrarium.getTraceFolder() + "/" + file));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}